@@ -0,0 +1,83 @@
+package com.okode.mobileforms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading form definitions and custom files from the assets, and escaping them for the page.
+ * The custom CSS is as big as the definition of the same number of fields. legacyReadCustomCss is the readLine() and
+ * String.replace() implementation AssetText replaced, the gc profiler of the jmh task reports what each allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssetTextBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    private byte[] definition;
+    private byte[] css;
+    private String definitionText;
+
+    @Setup
+    public void setUp() {
+        definitionText = FormPayloads.definition(fields);
+        definition = definitionText.getBytes(FormPayloads.UTF8);
+        css = FormPayloads.css(definition.length);
+    }
+
+    @Benchmark
+    public String readDefinition() throws IOException {
+        return AssetText.read(new ByteArrayInputStream(definition));
+    }
+
+    @Benchmark
+    public String readCustomCss() throws IOException {
+        return AssetText.readJsCall(new ByteArrayInputStream(css), FormScripts.JS_FUNC_ADD_CSS_FILE_PREFIX,
+                FormScripts.addCSSFileSuffix(false));
+    }
+
+    @Benchmark
+    public String legacyReadCustomCss() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(css)));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            sb.append(line);
+        }
+        reader.close();
+        String result = sb.toString();
+        result = result.replace("\\", "\\\\");
+        result = result.replace("\"", "\\\"");
+        result = result.replace("\'", "\\\'");
+        result = result.replace("\n", "\\n");
+        result = result.replace("\r", "\\r");
+        result = result.replace("\f", "\\f");
+        return String.format("addCSS(\"%s\", %s)", result, false);
+    }
+
+    @Benchmark
+    public String escapeDefinition() {
+        return AssetText.escapeJs(definitionText);
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON reports, a baseline and the current results, benchmark by benchmark.
+ * A benchmark regresses when its time, or its allocation per operation when the gc profiler was used, is worse than
+ * the baseline by more than the threshold, even taking the error of both measurements in its favour.
+ *
+ * Usage: BenchmarkComparison baseline.json results.json [threshold percent]
+ * It exits with 1 if any benchmark regressed and with 2 if a report cannot be read.
+ */
+public class BenchmarkComparison {
+
+    private static final String ALLOCATION_METRIC = "\u00b7gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison baseline.json results.json [threshold percent]");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File resultsFile = new File(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        if (!baselineFile.isFile() || !resultsFile.isFile()) {
+            System.err.println("Missing report. Run the jmh task, then jmhBaseline to create the baseline: "
+                    + (baselineFile.isFile() ? resultsFile : baselineFile));
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = read(baselineFile);
+        Map<String, JSONObject> results = read(resultsFile);
+        int regressions = 0;
+        System.out.println(String.format(Locale.US, "%-70s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+            JSONObject previous = baseline.get(entry.getKey());
+            if (previous == null) {
+                System.out.println(String.format(Locale.US, "%-70s %14s", entry.getKey(), "new"));
+                continue;
+            }
+            JSONObject current = entry.getValue();
+            if (compare(entry.getKey(), previous.getJSONObject("primaryMetric"),
+                    current.getJSONObject("primaryMetric"), threshold)) {
+                regressions++;
+            }
+            JSONObject previousAllocation = allocation(previous);
+            JSONObject currentAllocation = allocation(current);
+            if (previousAllocation != null && currentAllocation != null
+                    && compare(entry.getKey() + " (alloc)", previousAllocation, currentAllocation, threshold)) {
+                regressions++;
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(String.format(Locale.US, "%d regression(s) over %.1f%%", regressions, threshold));
+            System.exit(1);
+        }
+        System.out.println(String.format(Locale.US, "No regressions over %.1f%%", threshold));
+    }
+
+    /**
+     * Prints a row of the comparison.
+     *
+     * @return true if the metric regressed.
+     */
+    private static boolean compare(String name, JSONObject previous, JSONObject current, double threshold) {
+        double previousScore = previous.getDouble("score");
+        double currentScore = current.getDouble("score");
+        double change = previousScore == 0 ? 0 : (currentScore - previousScore) * 100 / previousScore;
+        boolean regressed = best(current, -1) > best(previous, 1) * (1 + threshold / 100);
+        System.out.println(String.format(Locale.US, "%-70s %14.3f %14.3f %+8.1f%% %s %s", name, previousScore,
+                currentScore, change, current.optString("scoreUnit"), regressed ? "REGRESSION" : ""));
+        return regressed;
+    }
+
+    /**
+     * @return the score moved by its error in the given direction. Errors are NaN with a single measurement.
+     */
+    private static double best(JSONObject metric, int direction) {
+        double error = metric.optDouble("scoreError", 0);
+        return metric.getDouble("score") + direction * (Double.isNaN(error) ? 0 : error);
+    }
+
+    private static JSONObject allocation(JSONObject benchmark) {
+        JSONObject secondary = benchmark.optJSONObject("secondaryMetrics");
+        return secondary != null ? secondary.optJSONObject(ALLOCATION_METRIC) : null;
+    }
+
+    /**
+     * @return the benchmarks of a report by name and parameters.
+     */
+    private static Map<String, JSONObject> read(File file) throws IOException {
+        JSONArray report = new JSONArray(new String(Files.readAllBytes(file.toPath()), FormPayloads.UTF8));
+        Map<String, JSONObject> benchmarks = new LinkedHashMap<>();
+        for (int i = 0; i < report.length(); i++) {
+            JSONObject benchmark = report.getJSONObject(i);
+            StringBuilder name = new StringBuilder(benchmark.getString("benchmark"));
+            JSONObject params = benchmark.optJSONObject("params");
+            if (params != null) {
+                Iterator<String> keys = params.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    name.append(' ').append(key).append('=').append(params.get(key));
+                }
+            }
+            benchmarks.put(name.toString().replace("com.okode.mobileforms.", ""), benchmark);
+        }
+        return benchmarks;
+    }
+
+}
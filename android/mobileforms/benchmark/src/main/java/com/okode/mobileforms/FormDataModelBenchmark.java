@@ -0,0 +1,58 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The form data kept by Form for getFormData() and onSaveInstanceState(): the full sync after the form is populated,
+ * and the delta sync of a change followed by saving the state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormDataModelBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    private String data;
+    private String delta;
+    private FormDataModel model;
+
+    @Setup
+    public void setUp() throws JSONException {
+        data = FormPayloads.data(fields);
+        delta = FormPayloads.delta(fields / 2);
+        model = new FormDataModel();
+        model.replace(data);
+    }
+
+    @Benchmark
+    public FormDataModel fullSync() throws JSONException {
+        FormDataModel fullModel = new FormDataModel();
+        fullModel.replace(data);
+        return fullModel;
+    }
+
+    @Benchmark
+    public String deltaSyncAndSaveState() throws JSONException {
+        model.merge(delta);
+        return model.toJson();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling a definition read from the assets, without the cache and through each of its levels. Every operation
+ * compiles a new copy of the definition, as every read of the asset gives one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormDefinitionCacheBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    private String definition;
+    private File directory;
+    private FormDefinitionCache cache;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        definition = FormPayloads.definition(fields);
+        directory = Files.createTempDirectory("forms").toFile();
+        cache = new FormDefinitionCache(directory);
+        cache.compile(definition);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+        directory.delete();
+    }
+
+    @Benchmark
+    public String compact() throws JSONException {
+        return FormDefinition.parse(new String(definition)).toJson();
+    }
+
+    @Benchmark
+    public String memoryHit() throws JSONException {
+        return cache.compile(new String(definition));
+    }
+
+    /**
+     * A new cache has the memory level empty, as after a launch.
+     */
+    @Benchmark
+    public String diskHit() throws JSONException {
+        return new FormDefinitionCache(directory).compile(new String(definition));
+    }
+
+}
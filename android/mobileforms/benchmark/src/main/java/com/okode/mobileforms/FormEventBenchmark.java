@@ -0,0 +1,58 @@
+package com.okode.mobileforms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the event urls the page sends while the user fills in a field: focus, change, validation error, focus out
+ * and submit. A benchmark operation parses the five of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormEventBenchmark {
+
+    private String[] urls;
+    private String[] types;
+    private String[] values;
+
+    @Setup
+    public void setUp() {
+        urls = FormPayloads.eventUrls(42);
+        types = new String[urls.length];
+        values = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            types[i] = FormEvent.getQueryParameter(urls[i], "type");
+            values[i] = FormEvent.getQueryParameter(urls[i], "value");
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String url : urls) {
+            blackhole.consume(FormEvent.parse(url));
+        }
+    }
+
+    @Benchmark
+    public void eventType(Blackhole blackhole) {
+        for (int i = 0; i < types.length; i++) {
+            blackhole.consume(FormEvent.getFormEventType(types[i], values[i]));
+        }
+    }
+
+}
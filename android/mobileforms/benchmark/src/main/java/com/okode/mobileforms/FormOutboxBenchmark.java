@@ -0,0 +1,128 @@
+package com.okode.mobileforms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queueing submitted form results in the outbox and draining them to a stub uploader, on the calling thread.
+ * A benchmark operation queues a full batch of results: queue() writes them to the log and records their upload by an
+ * uploader that does nothing, drain() also builds the body of the batch, compressed or not, as a real uploader does.
+ * Only drain() is measured with and without compression, see Body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormOutboxBenchmark {
+
+    private static final int BATCH_RESULTS = 50;
+
+    @Param({"10", "100"})
+    public int fields;
+
+    private String result;
+    private File directory;
+    private FormOutbox outbox;
+    private boolean buildBody;
+    private long uploadedBytes;
+    private final List<Runnable> scheduledTasks = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        result = FormPayloads.data(fields);
+        directory = Files.createTempDirectory("outbox").toFile();
+        outbox = new FormOutbox(directory, new FormOutbox.Uploader() {
+            @Override
+            public void upload(FormOutbox.Batch batch) throws IOException {
+                uploadedBytes += buildBody ? batch.getBody().length : batch.size();
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new FormOutbox.Scheduler() {
+            @Override
+            public long now() {
+                return 0;
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduledTasks.add(task);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        });
+        outbox.setMaxBatchSize(BATCH_RESULTS, Integer.MAX_VALUE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        outbox.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long queue() {
+        buildBody = false;
+        return queueBatch();
+    }
+
+    @Benchmark
+    public long drain(Body body) {
+        buildBody = true;
+        outbox.setCompressed(body.compressed);
+        return queueBatch();
+    }
+
+    private long queueBatch() {
+        for (int i = 0; i < BATCH_RESULTS; i++) {
+            outbox.enqueue(result);
+        }
+        //The batch is full, its send task uploads it right away
+        while (!scheduledTasks.isEmpty()) {
+            scheduledTasks.remove(0).run();
+        }
+        return uploadedBytes;
+    }
+
+    /**
+     * Body of the batches built by drain().
+     */
+    @State(Scope.Benchmark)
+    public static class Body {
+
+        @Param({"false", "true"})
+        public boolean compressed;
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.okode.mobileforms;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Realistic form definitions, form data and events for the benchmarks. Forms have sections of 10 fields of the
+ * types supported by the builder, with the same attributes apps use (labels, placeholders, options, limits).
+ */
+final class FormPayloads {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int FIELDS_PER_SECTION = 10;
+
+    private static final String[] FIELD_TYPES = {
+            "text", "email", "number", "date", "select", "tel", "textarea", "checkbox", "time", "phoneitem"
+    };
+
+    private FormPayloads() {
+    }
+
+    /**
+     * @param fields number of fields of the form.
+     * @return a form definition as json String serialized, pretty printed as the definitions bundled in the assets.
+     */
+    static String definition(int fields) {
+        StringBuilder sb = new StringBuilder(fields * 220);
+        sb.append("{\n  \"id\": \"benchmarkForm\",\n  \"sections\": [\n");
+        for (int i = 0; i < fields; i++) {
+            if (i % FIELDS_PER_SECTION == 0) {
+                if (i > 0) {
+                    sb.append("\n      ]\n    },\n");
+                }
+                sb.append("    {\n      \"title\": \"Section ").append(i / FIELDS_PER_SECTION + 1)
+                        .append("\",\n      \"fields\": [\n");
+            } else {
+                sb.append(",\n");
+            }
+            field(sb, i);
+        }
+        sb.append("\n      ]\n    }\n  ],\n  \"submit\": \"Accept\"\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @param fields number of fields of the form.
+     * @return the form data of definition(fields), as sent by the page.
+     */
+    static String data(int fields) {
+        StringBuilder sb = new StringBuilder(fields * 40);
+        sb.append('{');
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String type = FIELD_TYPES[i % FIELD_TYPES.length];
+            sb.append('"').append(name(i)).append("\":");
+            if ("phoneitem".equals(type)) {
+                sb.append("[{\"phonetype\":\"work\",\"phonenumber\":\"+34 600 000 ").append(i).append("\"}]");
+            } else {
+                sb.append('"').append(value(type, i)).append('"');
+            }
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * @return the delta sent by the page after a change of one field.
+     */
+    static String delta(int field) {
+        return "{\"" + name(field) + "\":\"" + value("text", field) + " changed\"}";
+    }
+
+    /**
+     * @return the urls of the events sent by the page while the user fills in a field.
+     */
+    static String[] eventUrls(int field) {
+        String name = name(field);
+        return new String[]{
+                "mobileforms://event/?type=focus&element=" + name + "&value=",
+                "mobileforms://event/?type=change&element=" + name + "&value=Jos%C3%A9+Garc%C3%ADa",
+                "mobileforms://event/?type=validateerror&element=" + name + "&value=Invalid%20value",
+                "mobileforms://event/?type=focusout&element=" + name + "&value=Jos%C3%A9+Garc%C3%ADa",
+                "mobileforms://event/?type=submit&element=benchmarkForm&value=valid"
+        };
+    }
+
+    /**
+     * @return a stylesheet of about the given size, like the themes apps add with addCSSFile().
+     */
+    static byte[] css(int size) {
+        StringBuilder sb = new StringBuilder(size + 100);
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append(String.format(Locale.US,
+                    "/* field %d */\n.field-%d input[type=\"text\"] { color: #333; font-family: 'Roboto'; }\n", i, i));
+            i++;
+        }
+        sb.setLength(size);
+        return sb.toString().getBytes(UTF8);
+    }
+
+    static String name(int field) {
+        return "field" + field;
+    }
+
+    private static void field(StringBuilder sb, int i) {
+        String type = FIELD_TYPES[i % FIELD_TYPES.length];
+        sb.append("        {\n");
+        sb.append("          \"label\": \"Field ").append(i).append(" label\",\n");
+        sb.append("          \"type\": \"").append(type).append("\",\n");
+        if ("phoneitem".equals(type)) {
+            sb.append("          \"nametype\": \"phonetype\",\n");
+            sb.append("          \"namephone\": \"phonenumber\",\n");
+            sb.append("          \"phonetypevalues\": \"home|work|mobile\",\n");
+            sb.append("          \"phonetypelabels\": \"Home|Work|Mobile\",\n");
+            sb.append("          \"name\": \"").append(name(i)).append("[]\"\n");
+        } else {
+            if ("select".equals(type)) {
+                sb.append("          \"optionvalues\": \"a|b|c|d|e\",\n");
+                sb.append("          \"optionlabels\": \"Option A|Option B|Option C|Option D|Option E\",\n");
+            } else if ("number".equals(type)) {
+                sb.append("          \"min\": \"0\",\n          \"max\": \"1000\",\n          \"step\": \"1\",\n");
+            } else if ("email".equals(type)) {
+                sb.append("          \"filter\": \"^[^@\\\\s]+@[^@\\\\s]+\\\\.[a-z]+$\",\n");
+                sb.append("          \"error\": \"Write a valid email\",\n");
+            } else if ("text".equals(type) || "textarea".equals(type)) {
+                sb.append("          \"placeholder\": \"Write here the value of field ").append(i).append("\",\n");
+                sb.append("          \"maxlength\": \"120\",\n");
+            }
+            sb.append("          \"required\": \"").append(i % 3 == 0).append("\",\n");
+            sb.append("          \"name\": \"").append(name(i)).append("\"\n");
+        }
+        sb.append("        }");
+    }
+
+    private static String value(String type, int i) {
+        switch (type) {
+            case "email":
+                return "user" + i + "@example.com";
+            case "number":
+                return Integer.toString(i);
+            case "date":
+                return "2016-06-" + (10 + i % 20);
+            case "time":
+                return "10:" + (10 + i % 50);
+            case "select":
+                return "c";
+            case "checkbox":
+                return "on";
+            default:
+                return "Value of field " + i;
+        }
+    }
+
+}
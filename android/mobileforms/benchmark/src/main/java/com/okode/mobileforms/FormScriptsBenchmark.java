@@ -0,0 +1,84 @@
+package com.okode.mobileforms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the JavaScript sent to the page: the initialisation script of a form with its data, and the small
+ * commands sent while the form is in use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormScriptsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    private String jsonForm;
+    private String jsonData;
+
+    @Setup
+    public void setUp() {
+        //Definitions are sent compiled, as compact JSON
+        jsonForm = new JSONObject(FormPayloads.definition(fields)).toString();
+        jsonData = FormPayloads.data(fields);
+    }
+
+    @Benchmark
+    public String initScript() {
+        List<String> commands = new ArrayList<>();
+        commands.add(FormScripts.setJsonForm(jsonForm));
+        commands.add(FormScripts.setJsonPopulateData(jsonData));
+        commands.add(FormScripts.setDataSync(1));
+        commands.add(FormScripts.JS_FUNC_INIT);
+        commands.add(FormScripts.JS_FUNC_SET_EDITABLE_FORM);
+        return FormScripts.join(commands);
+    }
+
+    /**
+     * The definition sent in chunks, as long definitions are: only one chunk is built at a time.
+     */
+    @Benchmark
+    public int chunkedJsonForm() {
+        int length = 0;
+        int start = 0;
+        do {
+            int end = FormScripts.chunkEnd(jsonForm, start, FormScripts.MAX_COMMAND_LENGTH);
+            length += FormScripts.appendPayload(0, start == 0 ? FormScripts.JS_FUNC_SET_JSON_FORM : "", jsonForm, start, end,
+                    end == jsonForm.length() ? ")" : "").length();
+            start = end;
+        } while (start < jsonForm.length());
+        return length;
+    }
+
+    @Benchmark
+    public String populateWithData() {
+        return FormScripts.populateWithData(jsonData);
+    }
+
+    @Benchmark
+    public String requestFormData() {
+        List<String> commands = new ArrayList<>();
+        commands.add(FormScripts.postResult(fields, FormScripts.JS_EXPR_FORM_DATA));
+        return FormScripts.join(commands);
+    }
+
+}
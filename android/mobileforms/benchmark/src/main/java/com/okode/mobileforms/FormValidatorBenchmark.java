@@ -0,0 +1,62 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of queued submissions without a WebView: creating a validator for a definition, and validating the data
+ * of a submission, parsed or as sent by the page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormValidatorBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int fields;
+
+    private String definition;
+    private String data;
+    private JSONObject parsedData;
+    private FormValidator validator;
+
+    @Setup
+    public void setUp() throws JSONException {
+        definition = FormPayloads.definition(fields);
+        data = FormPayloads.data(fields);
+        parsedData = new JSONObject(data);
+        validator = new FormValidator(definition);
+    }
+
+    @Benchmark
+    public FormValidator create() throws JSONException {
+        return new FormValidator(definition);
+    }
+
+    @Benchmark
+    public FormValidator.Result validateParsed() {
+        return validator.validate(parsedData);
+    }
+
+    @Benchmark
+    public FormValidator.Result validateJson() throws JSONException {
+        return validator.validate(data);
+    }
+
+}
@@ -9,9 +9,7 @@
 
 # Add any project specific keep options here:
 
-# If your project uses WebView with JS, uncomment the following
-# and specify the fully qualified class name to the JavaScript interface
-# class:
-#-keepclassmembers class fqcn.of.javascript.interface.for.webview {
-#   public *;
-#}
+# Methods called from the form page through window.MobileFormsBridge
+-keepclassmembers class com.okode.mobileforms.FormJsInterface {
+   @android.webkit.JavascriptInterface <methods>;
+}
@@ -0,0 +1,31 @@
+package com.okode.mobileforms;
+
+import android.app.Activity;
+
+/**
+ * Hosts the forms of FormSoakTest in its content view. Forms are added by the test, and restored by the framework
+ * when the activity is recreated.
+ */
+public class FormSoakActivity extends Activity implements Form.Listener {
+
+    @Override
+    public void onSubmit(String formResult) {
+    }
+
+    @Override
+    public void onGetFormValues(String formValues) {
+    }
+
+    @Override
+    public void onEvent(Form.FormEventType eventType, String element, String value) {
+    }
+
+    @Override
+    public void onGetFormErrors(String formErrors) {
+    }
+
+    @Override
+    public void onFormValid(boolean formValid) {
+    }
+
+}
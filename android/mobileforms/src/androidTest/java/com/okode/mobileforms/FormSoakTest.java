@@ -0,0 +1,335 @@
+package com.okode.mobileforms;
+
+import android.app.Activity;
+import android.app.FragmentManager;
+import android.app.Instrumentation;
+import android.os.Debug;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Soak test of the life of a form. Every iteration adds a Form with one of the sample definitions, loads and
+ * populates it, rotates the activity, checks the data survived, and removes the form. The heap, the native memory and
+ * the load time of every iteration are logged. Past the warm-up iterations, the test fails if memory keeps growing,
+ * if loads get slower, or if removed forms, replaced activities or their WebViews are not released.
+ */
+@LargeTest
+public class FormSoakTest extends ActivityInstrumentationTestCase2<FormSoakActivity> {
+
+    private static final String FORM_TAG = "soakForm";
+
+    //Sample definitions, by number of fields
+    private static final int[] SAMPLE_FIELDS = {10, 100, 500};
+
+    //Iterations per sample, the first ones are left out of the analysis while the caches and the pool warm up
+    private static final int ITERATIONS = 20;
+    private static final int WARM_UP_ITERATIONS = 5;
+
+    //Growth tolerated per iteration past the warm-up, in bytes
+    private static final long MAX_HEAP_GROWTH = 32 * 1024;
+    private static final long MAX_NATIVE_GROWTH = 256 * 1024;
+
+    //Loads of the last iterations may be this much slower than the first ones, plus the jitter, in milliseconds
+    private static final double MAX_LOAD_SLOWDOWN = 1.5;
+    private static final double LOAD_JITTER = 20;
+
+    //Removed forms and replaced activities still reachable at the end, the last ones may wait for a WebView callback
+    private static final int MAX_RETAINED = 2;
+
+    private static final long TIMEOUT_MILLIS = 30000;
+    private static final long RESULT_POLL_MILLIS = 250;
+
+    //Activity launched by the test case, which keeps it, and activity the forms are added to
+    private Activity launched;
+    private Activity activity;
+
+    public FormSoakTest() {
+        super(FormSoakActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        launched = getActivity();
+        activity = launched;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (activity != launched) {
+            activity.finish();
+        }
+        activity = null;
+        launched = null;
+        super.tearDown();
+    }
+
+    public void testFormLifecycle() throws Exception {
+        List<WeakReference<Object>> released = new ArrayList<>();
+        for (int fields : SAMPLE_FIELDS) {
+            String definition = definition(fields);
+            List<Sample> samples = new ArrayList<>();
+            for (int i = 0; i < ITERATIONS; i++) {
+                samples.add(runIteration(fields, i, definition, released));
+            }
+            assertNoGrowth(fields, samples);
+        }
+        collectGarbage();
+        int retained = 0;
+        for (WeakReference<Object> reference : released) {
+            if (reference.get() != null) {
+                retained++;
+            }
+        }
+        assertTrue(retained + " removed forms or replaced activities are still reachable", retained <= MAX_RETAINED);
+        FormWebViewPool pool = FormWebViewPool.getInstance();
+        assertTrue(pool.getWebViewCount() + " WebViews are alive without forms, the pool keeps "
+                + pool.getMaxSize(), pool.getWebViewCount() <= pool.getMaxSize());
+    }
+
+    /**
+     * Adds, loads, populates, rotates and removes a form.
+     */
+    private Sample runIteration(final int fields, int iteration, final String definition,
+                                List<WeakReference<Object>> released) throws Exception {
+        final Form[] form = new Form[1];
+        final CountDownLatch painted = new CountDownLatch(1);
+        final long[] loadStart = new long[1];
+        final double[] loadMillis = new double[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                form[0] = new Form();
+                FragmentManager fragments = activity.getFragmentManager();
+                fragments.beginTransaction().add(android.R.id.content, form[0], FORM_TAG).commit();
+                fragments.executePendingTransactions();
+                form[0].setMetrics(new FormMetrics() {
+                    @Override
+                    public void onMetric(Event event) {
+                        if (event.getPhase() == Phase.FIRST_PAINT && painted.getCount() > 0) {
+                            loadMillis[0] = (System.nanoTime() - loadStart[0]) / 1000000.0;
+                            painted.countDown();
+                        }
+                    }
+                });
+                form[0].setForm(definition);
+                form[0].setPopulateData(data(fields, "Value"));
+                loadStart[0] = System.nanoTime();
+                form[0].load();
+            }
+        });
+        assertTrue("Form of " + fields + " fields not shown", painted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        final String changed = data(fields, "Changed");
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                form[0].setPopulateDataAsync(changed);
+            }
+        });
+        assertTrue(awaitFormData(form[0]).contains("Changed value of field 0"));
+
+        //The restored form loads itself, and must have kept the data set before the rotation
+        released.add(new WeakReference<Object>(form[0]));
+        rotate(released);
+        Form restored = (Form) activity.getFragmentManager().findFragmentByTag(FORM_TAG);
+        assertNotNull(restored);
+        assertTrue(awaitFormData(restored).contains("Changed value of field 0"));
+
+        released.add(new WeakReference<Object>(restored));
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                FragmentManager fragments = activity.getFragmentManager();
+                fragments.beginTransaction().remove(fragments.findFragmentByTag(FORM_TAG)).commit();
+                fragments.executePendingTransactions();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        collectGarbage();
+        Runtime runtime = Runtime.getRuntime();
+        Debug.MemoryInfo memory = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(memory);
+        Sample sample = new Sample(runtime.totalMemory() - runtime.freeMemory(), Debug.getNativeHeapAllocatedSize(),
+                memory.getTotalPss() * 1024L, loadMillis[0]);
+        Log.i("MobileForms", String.format(Locale.US, "Soak %d fields, iteration %d: %s", fields, iteration, sample));
+        return sample;
+    }
+
+    /**
+     * Recreates the activity as a rotation does, and waits for the new one to be resumed.
+     */
+    private void rotate(List<WeakReference<Object>> released) {
+        Instrumentation.ActivityMonitor monitor = getInstrumentation()
+                .addMonitor(FormSoakActivity.class.getName(), null, false);
+        final Activity previous = activity;
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                previous.recreate();
+            }
+        });
+        Activity recreated = getInstrumentation().waitForMonitorWithTimeout(monitor, TIMEOUT_MILLIS);
+        getInstrumentation().removeMonitor(monitor);
+        assertNotNull("Activity not recreated", recreated);
+        getInstrumentation().waitForIdleSync();
+        if (previous != launched) {
+            released.add(new WeakReference<Object>(previous));
+        }
+        activity = recreated;
+    }
+
+    /**
+     * Asks the form data until the page answers, since a restored form may still be loading.
+     */
+    private String awaitFormData(final Form form) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            final CountDownLatch answered = new CountDownLatch(1);
+            final String[] result = new String[1];
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    form.getFormData().setCallback(new FormRequest.Callback<String>() {
+                        @Override
+                        public void onResult(String formData) {
+                            result[0] = formData;
+                            answered.countDown();
+                        }
+                    });
+                }
+            });
+            if (answered.await(RESULT_POLL_MILLIS, TimeUnit.MILLISECONDS) && result[0] != null) {
+                return result[0];
+            }
+        }
+        fail("Form data not received");
+        return null;
+    }
+
+    private static void assertNoGrowth(int fields, List<Sample> samples) {
+        List<Sample> measured = samples.subList(WARM_UP_ITERATIONS, samples.size());
+        double[] heap = new double[measured.size()];
+        double[] nativeHeap = new double[measured.size()];
+        double[] loads = new double[measured.size()];
+        for (int i = 0; i < measured.size(); i++) {
+            heap[i] = measured.get(i).heapBytes;
+            nativeHeap[i] = measured.get(i).nativeBytes;
+            loads[i] = measured.get(i).loadMillis;
+        }
+        double heapGrowth = slope(heap);
+        double nativeGrowth = slope(nativeHeap);
+        assertTrue(String.format(Locale.US, "Heap grows %.0f bytes per form of %d fields", heapGrowth, fields),
+                heapGrowth <= MAX_HEAP_GROWTH);
+        assertTrue(String.format(Locale.US, "Native heap grows %.0f bytes per form of %d fields", nativeGrowth, fields),
+                nativeGrowth <= MAX_NATIVE_GROWTH);
+        int half = loads.length / 2;
+        double first = median(Arrays.copyOfRange(loads, 0, half));
+        double last = median(Arrays.copyOfRange(loads, loads.length - half, loads.length));
+        assertTrue(String.format(Locale.US, "Loads of %d fields went from %.1f ms to %.1f ms", fields, first, last),
+                last <= first * MAX_LOAD_SLOWDOWN + LOAD_JITTER);
+    }
+
+    /**
+     * @return the least squares slope of the values by iteration.
+     */
+    private static double slope(double[] values) {
+        double meanX = (values.length - 1) / 2.0;
+        double meanY = 0;
+        for (double value : values) {
+            meanY += value / values.length;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < values.length; i++) {
+            covariance += (i - meanX) * (values[i] - meanY);
+            variance += (i - meanX) * (i - meanX);
+        }
+        return variance > 0 ? covariance / variance : 0;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static void collectGarbage() {
+        //Finalizers release the native side of destroyed WebViews, so the heap is collected again after them
+        for (int i = 0; i < 3; i++) {
+            Runtime.getRuntime().gc();
+            System.runFinalization();
+        }
+    }
+
+    /**
+     * @return a definition of a single section, with the field types apps use most.
+     */
+    private static String definition(int fields) {
+        StringBuilder sb = new StringBuilder(fields * 120);
+        sb.append("{\"id\":\"soakForm\",\"sections\":[{\"title\":\"Soak\",\"fields\":[");
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"label\":\"Field ").append(i).append("\",\"name\":\"field").append(i).append('"');
+            if (i % 3 == 1) {
+                sb.append(",\"type\":\"select\",\"optionvalues\":\"a|b|c\",\"optionlabels\":\"A|B|C\"");
+            } else {
+                sb.append(",\"type\":\"text\",\"required\":\"").append(i % 2 == 0).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append("]}],\"submit\":\"Accept\"}");
+        return sb.toString();
+    }
+
+    /**
+     * @return the data of the text fields of definition(fields), with values starting with the prefix.
+     */
+    private static String data(int fields, String prefix) {
+        StringBuilder sb = new StringBuilder(fields * 40);
+        sb.append('{');
+        for (int i = 0; i < fields; i += 3) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"field").append(i).append("\":\"").append(prefix).append(" value of field ").append(i)
+                    .append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static final class Sample {
+
+        final long heapBytes;
+        final long nativeBytes;
+        final long pssBytes;
+        final double loadMillis;
+
+        Sample(long heapBytes, long nativeBytes, long pssBytes, double loadMillis) {
+            this.heapBytes = heapBytes;
+            this.nativeBytes = nativeBytes;
+            this.pssBytes = pssBytes;
+            this.loadMillis = loadMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "heap %d KB, native %d KB, pss %d KB, load %.1f ms",
+                    heapBytes / 1024, nativeBytes / 1024, pssBytes / 1024, loadMillis);
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.okode.mobileforms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads text assets and turns them into JavaScript string literals with as few copies of the text as possible.
+ * Assets are decoded straight into a char buffer sized from the stream, and escaped in a single pass into a
+ * StringBuilder. Both buffers are kept by the calling thread and reused, so besides the stream decoder a call only
+ * allocates its resulting String.
+ * Line breaks are kept, escaped, so a // comment in an injected script does not swallow the code that follows it.
+ */
+final class AssetText {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //Initial size of the buffers, and biggest size kept between calls, in chars
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    //Room for the escapes made in a text, as a fraction of its length, so the builder seldom grows while escaping
+    private static final int ESCAPE_ROOM_DIVISOR = 8;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private AssetText() {
+    }
+
+    /**
+     * Reads a UTF-8 text stream and closes it.
+     *
+     * @param inputStream stream to read.
+     * @return the whole text, line breaks included.
+     * @throws IOException if the stream cannot be read.
+     */
+    static String read(InputStream inputStream) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        int length = buffers.fill(inputStream);
+        String text = new String(buffers.chars, 0, length);
+        buffers.release();
+        return text;
+    }
+
+    /**
+     * Reads a UTF-8 text stream, closes it, and returns a JavaScript snippet with the text as the contents of a string
+     * literal. The caller provides the code around it, including the quotes, e.g. prefix addJS(" and suffix ").
+     *
+     * @param inputStream stream to read.
+     * @param prefix      code before the escaped text.
+     * @param suffix      code after the escaped text.
+     * @return prefix + escaped text + suffix, or null if the stream is empty.
+     * @throws IOException if the stream cannot be read.
+     */
+    static String readJsCall(InputStream inputStream, String prefix, String suffix) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        int length = buffers.fill(inputStream);
+        if (length == 0) {
+            buffers.release();
+            return null;
+        }
+        StringBuilder sb = buffers.builder(prefix.length() + length + length / ESCAPE_ROOM_DIVISOR + suffix.length());
+        sb.append(prefix);
+        escapeJs(buffers.chars, 0, length, sb);
+        sb.append(suffix);
+        String js = sb.toString();
+        buffers.release();
+        return js;
+    }
+
+    /**
+     * Escapes a text to be used as the contents of a JavaScript string literal, either single or double quoted.
+     *
+     * @param text text to escape.
+     * @return the escaped text.
+     */
+    static String escapeJs(String text) {
+        Buffers buffers = BUFFERS.get();
+        StringBuilder sb = buffers.builder(text.length() + text.length() / ESCAPE_ROOM_DIVISOR);
+        escapeJs(text, 0, text.length(), sb);
+        String escaped = sb.toString();
+        buffers.release();
+        return escaped;
+    }
+
+    /**
+     * Appends the escaped chars of a range of a text to out, without copying the range first.
+     *
+     * @param text  text to escape.
+     * @param start index of the first char of the range.
+     * @param end   index after the last char of the range.
+     * @param out   builder the escaped range is appended to.
+     */
+    static void escapeJs(String text, int start, int end, StringBuilder out) {
+        int runStart = start;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (needsEscape(c)) {
+                out.append(text, runStart, i);
+                appendEscaped(c, out);
+                runStart = i + 1;
+            }
+        }
+        out.append(text, runStart, end);
+    }
+
+    /**
+     * Appends the escaped chars to out, in a single pass. Runs of chars that need no escaping are copied at once.
+     */
+    static void escapeJs(char[] text, int offset, int length, StringBuilder out) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            char c = text[i];
+            if (needsEscape(c)) {
+                out.append(text, start, i - start);
+                appendEscaped(c, out);
+                start = i + 1;
+            }
+        }
+        out.append(text, start, end - start);
+    }
+
+    private static boolean needsEscape(char c) {
+        switch (c) {
+            case '\\':
+            case '"':
+            case '\'':
+            case '\n':
+            case '\r':
+            case '\f':
+            case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void appendEscaped(char c, StringBuilder out) {
+        switch (c) {
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\f':
+                out.append("\\f");
+                break;
+            case '\u2028':
+            case '\u2029':
+                //Line terminators inside string literals in JavaScript
+                out.append("\\u")
+                        .append(HEX_DIGITS[(c >> 12) & 0xf])
+                        .append(HEX_DIGITS[(c >> 8) & 0xf])
+                        .append(HEX_DIGITS[(c >> 4) & 0xf])
+                        .append(HEX_DIGITS[c & 0xf]);
+                break;
+            default:
+                out.append('\\').append(c);
+                break;
+        }
+    }
+
+    /**
+     * Char buffer and StringBuilder of a thread. Buffers that grew over MAX_RETAINED_CAPACITY for a big asset are not
+     * kept after the call.
+     */
+    private static final class Buffers {
+
+        char[] chars = new char[INITIAL_CAPACITY];
+        private StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+
+        /**
+         * Decodes the whole stream into chars and closes it.
+         *
+         * @return the number of chars read.
+         */
+        int fill(InputStream inputStream) throws IOException {
+            try (Reader reader = new InputStreamReader(inputStream, UTF8)) {
+                //UTF-8 never has more chars than bytes, so the bytes available are enough when they are the whole asset
+                int expected = inputStream.available();
+                if (expected + 1 > chars.length) {
+                    chars = new char[expected + 1];
+                }
+                int length = 0;
+                int read;
+                while ((read = reader.read(chars, length, chars.length - length)) != -1) {
+                    length += read;
+                    if (length == chars.length) {
+                        chars = Arrays.copyOf(chars, chars.length * 2);
+                    }
+                }
+                return length;
+            }
+        }
+
+        StringBuilder builder(int capacity) {
+            builder.setLength(0);
+            builder.ensureCapacity(capacity);
+            return builder;
+        }
+
+        void release() {
+            if (chars.length > MAX_RETAINED_CAPACITY) {
+                chars = new char[INITIAL_CAPACITY];
+            }
+            if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+                builder = new StringBuilder(INITIAL_CAPACITY);
+            } else {
+                builder.setLength(0);
+            }
+        }
+    }
+
+}
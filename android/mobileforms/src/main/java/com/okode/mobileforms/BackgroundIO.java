@@ -0,0 +1,74 @@
+package com.okode.mobileforms;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the I/O of the forms (assets, caches, state files) on a background thread and delivers the results on the UI
+ * thread. Tasks run one at a time in submission order, and so their callbacks, which keeps the order of calls like
+ * addCSSFile() without any extra bookkeeping. A task that throws is logged and its callback gets a null result, so the
+ * thread and the bookkeeping of the callers (e.g. pending assets) outlive it.
+ */
+final class BackgroundIO {
+
+    /**
+     * Work done on the background thread.
+     *
+     * @param <T> type of the result.
+     */
+    interface Task<T> {
+        T run();
+    }
+
+    /**
+     * Receives the result of a Task on the UI thread.
+     *
+     * @param <T> type of the result.
+     */
+    interface Callback<T> {
+        void onDone(T result);
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MobileForms-IO");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private BackgroundIO() {
+    }
+
+    static <T> void execute(final Task<T> task, final Callback<T> callback) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                T value;
+                try {
+                    value = task.run();
+                } catch (Throwable t) {
+                    Log.e("MobileForms", "Background task failed. Exception: " + t);
+                    value = null;
+                }
+                final T result = value;
+                if (callback != null) {
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onDone(result);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.okode.mobileforms;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * App-private, append-only journal of the changes of a form draft, see Form.setDraftKey().
+ * Every record is a line: 'S' and the whole form data, or 'D' and the changed values by root key, as FormDataModel
+ * merges them. A snapshot starts a new journal. Appending a batch of changes writes one line with the keys changed
+ * since the last batch, so the cost of a write grows with what was edited, not with the size of the form. Once the
+ * changes written after the snapshot outgrow it, the journal is compacted into a single snapshot.
+ * A record is only complete with its line end: a line cut by the death of the process is dropped when the journal is
+ * read, with everything after it. Methods do blocking I/O, they must be called on the BackgroundIO thread.
+ */
+final class DraftJournal {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String DIRECTORY = "mobileforms/drafts";
+    private static final String EXTENSION = ".journal";
+
+    //Record types
+    private static final char SNAPSHOT = 'S';
+    private static final char DELTA = 'D';
+
+    //Size of the changes written after the last snapshot that triggers a compaction, in bytes, at least
+    private static final long COMPACT_MIN_SIZE = 64 * 1024;
+
+    private final File file;
+    //Sizes of the last snapshot and of the records after it in bytes, -1 until the journal is read or written
+    private long snapshotSize = -1;
+    private long deltaSize = -1;
+
+    DraftJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param context  any context, the journal is in the app files directory.
+     * @param draftKey key of the draft, as given to Form.setDraftKey().
+     * @return the journal of the draft, which may not exist yet.
+     */
+    static DraftJournal open(Context context, String draftKey) {
+        File directory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY);
+        return new DraftJournal(new File(directory, FormDefinitionCache.hash(draftKey) + EXTENSION));
+    }
+
+    /**
+     * @return true if there is a draft to restore.
+     */
+    boolean exists() {
+        return file.length() > 0;
+    }
+
+    /**
+     * @return the size of the journal, in bytes.
+     */
+    long length() {
+        return file.length();
+    }
+
+    /**
+     * Replaces the journal with the whole form data. The snapshot is written aside and then moved over the journal,
+     * so the death of the process leaves either the old journal or the new one.
+     *
+     * @param formData form data as json String serialized.
+     */
+    void writeSnapshot(String formData) throws IOException {
+        File snapshot = new File(file.getPath() + ".tmp");
+        long size = write(snapshot, toRecord(SNAPSHOT, formData), false);
+        if (!snapshot.renameTo(file)) {
+            snapshot.delete();
+            throw new IOException("Draft journal " + file.getName() + " could not be replaced");
+        }
+        snapshotSize = size;
+        deltaSize = 0;
+    }
+
+    /**
+     * Appends a batch of changes as a single record, compacting the journal if it has grown enough.
+     *
+     * @param deltas changed values by root key as json String serialized, in the order they were made.
+     */
+    void writeChanges(List<String> deltas) throws IOException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        //Values of a key changed several times in the batch are written once, the last one
+        JSONObject changes = new JSONObject();
+        for (String delta : deltas) {
+            try {
+                JSONObject values = toObject(delta);
+                Iterator<String> keys = values.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    changes.put(key, values.get(key));
+                }
+            } catch (JSONException e) {
+                Log.w("MobileForms", "Draft change dropped, it is not a JSON object: " + delta);
+            }
+        }
+        if (changes.length() == 0) {
+            return;
+        }
+        if (deltaSize < 0) {
+            //Written by another run and not read: all of it counts as changes
+            snapshotSize = 0;
+            deltaSize = file.length();
+        }
+        deltaSize += write(file, DELTA + changes.toString() + "\n", true);
+        if (deltaSize > Math.max(COMPACT_MIN_SIZE, snapshotSize)) {
+            compact();
+        }
+    }
+
+    /**
+     * Replays the journal. A record cut by the death of the process, and anything after it, is removed.
+     *
+     * @return the form data of the draft as json String serialized, or null if there is no draft.
+     */
+    String read() throws IOException {
+        if (!file.exists()) {
+            snapshotSize = 0;
+            deltaSize = 0;
+            return null;
+        }
+        String journal = AssetText.read(new FileInputStream(file));
+        FormDataModel model = new FormDataModel();
+        boolean empty = true;
+        long validSize = 0;
+        snapshotSize = 0;
+        deltaSize = 0;
+        int start = 0;
+        int end;
+        while ((end = journal.indexOf('\n', start)) > start) {
+            String payload = journal.substring(start + 1, end);
+            try {
+                if (journal.charAt(start) == SNAPSHOT) {
+                    model.replace(payload);
+                } else if (journal.charAt(start) == DELTA) {
+                    model.merge(payload);
+                } else {
+                    break;
+                }
+            } catch (JSONException e) {
+                break;
+            }
+            long size = journal.substring(start, end + 1).getBytes(UTF8).length;
+            if (journal.charAt(start) == SNAPSHOT) {
+                snapshotSize = size;
+                deltaSize = 0;
+            } else {
+                deltaSize += size;
+            }
+            validSize += size;
+            empty = false;
+            start = end + 1;
+        }
+        if (start < journal.length()) {
+            Log.w("MobileForms", "Draft journal " + file.getName() + " ends with a broken record, it is dropped");
+            truncate(validSize);
+        }
+        return empty ? null : model.toJson();
+    }
+
+    /**
+     * Rewrites the journal as a single snapshot of the draft.
+     */
+    void compact() throws IOException {
+        String formData = read();
+        if (formData != null) {
+            writeSnapshot(formData);
+        }
+    }
+
+    /**
+     * Deletes the draft.
+     */
+    void delete() {
+        file.delete();
+        snapshotSize = 0;
+        deltaSize = 0;
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    private static int write(File file, String text, boolean append) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Directory " + directory + " could not be created");
+        }
+        byte[] bytes = text.getBytes(UTF8);
+        OutputStream out = new FileOutputStream(file, append);
+        try {
+            //The whole record in one write, so a record is cut only if the process dies in the middle of it
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return bytes.length;
+    }
+
+    private void truncate(long size) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        try {
+            journal.setLength(size);
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * @return the record of a type for a JSON object, on a single line.
+     */
+    private static String toRecord(char type, String json) throws IOException {
+        String line = json;
+        if (line.indexOf('\n') >= 0 || line.indexOf('\r') >= 0) {
+            //Line breaks can only be whitespace between the tokens, strings have them escaped
+            try {
+                line = toObject(json).toString();
+            } catch (JSONException e) {
+                throw new IOException("Draft data is not a JSON object: " + e);
+            }
+        }
+        return type + line + "\n";
+    }
+
+    private static JSONObject toObject(String json) throws JSONException {
+        Object parsed = new JSONTokener(json).nextValue();
+        if (!(parsed instanceof JSONObject)) {
+            throw new JSONException("Form data is not a JSON object: " + json);
+        }
+        return (JSONObject) parsed;
+    }
+
+}
@@ -1,27 +1,39 @@
 package com.okode.mobileforms;
 
-import android.annotation.SuppressLint;
+import android.app.Activity;
 import android.app.Fragment;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.AssetManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.AlphaAnimation;
-import android.webkit.JsResult;
-import android.webkit.WebChromeClient;
+import android.util.SparseArray;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
-import java.io.BufferedReader;
+import org.json.JSONException;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * You use the Form class to embed webform in your application. Form allows to create forms dynamically, through a form definition in JSON.
@@ -47,11 +59,11 @@ public class Form extends Fragment {
 
 
     //Forms directory and file extension
-    private static final String FORMJSON_EXTENSION = "json";
-    private static final String FORMJSON_DIRECTORY = "forms";
+    static final String FORMJSON_EXTENSION = "json";
+    static final String FORMJSON_DIRECTORY = "forms";
 
     //Path of index.mobileforms.html
-    private static final String FORMHTML_URL = "file:///android_asset/mobileforms/index.mobileforms.html";
+    static final String FORMHTML_URL = "file:///android_asset/mobileforms/index.mobileforms.html";
 
     //Save and restore state
     private static final String TAG_JSON_DATA = "jsonData";
@@ -59,63 +71,144 @@ public class Form extends Fragment {
     private static final String TAG_PENDING_JS = "pendingJs";
     private static final String TAG_RESTORABLE_JS = "restorableJs";
     private static final String TAG_READ_ONLY = "readOnly";
+    private static final String TAG_CUSTOM_JS_ADDED = "customJsAdded";
+    private static final String TAG_STATE_KEY = "stateKey";
+    private static final String TAG_STEPS = "steps";
+    private static final String TAG_STEP_DATA = "stepData";
+    private static final String TAG_CURRENT_STEP = "currentStep";
+    private static final String TAG_DRAFT_KEY = "draftKey";
 
-    //JavaScript functions needed to initialise the form
-    private static final String JS_FUNC_SET_JSON_FORM = "javascript:setJsonForm(%s)";
-    private static final String JS_FUNC_SET_JSON_POPULATE_DATA = "javascript:setJsonPopulateData(%s)";
-    private static final String JS_FUNC_INIT = "javascript:init()";
-
-    //Headers used to difference the origin in onJsAlert
-    private static final String ALERT_FORM_DATA_VALIDATED = "formDataValidated:";
-    private static final String ALERT_FORM_DATA = "formData:";
-    private static final String ALERT_UPDATE_FORM_DATA = "updateFormData:";
-    private static final String ALERT_GET_FORM_ERRORS = "formErrors:";
-    private static final String ALERT_IS_FORM_VALID = "isFormValid:";
-
-    //Other JavaScript functions
-    private static final String JS_FUNC_SET_READONLY_FORM = "javascript:setReadOnly(true)";
-    private static final String JS_FUNC_SET_EDITABLE_FORM = "javascript:setReadOnly(false)";
-    private static final String JS_FUNC_GET_FORM_DATA = "javascript:alert(\"" + ALERT_FORM_DATA + "\" +getFormData())";
-    private static final String JS_FUNC_GET_FORM_DATA_VALIDATED = "javascript:alert(\"" + ALERT_FORM_DATA_VALIDATED + "\" + getFormDataValidated())";
-    private static final String JS_FUNC_UPDATE_FORMDATA = "javascript:alert(\"" + ALERT_UPDATE_FORM_DATA + "\" + getFormData());";
-    private static final String JS_FUNC_SET_POPULATEDATA = "javascript:populateWithData(%s)";
-    private static final String JS_FUNC_ADD_CSS_FILE = "javascript:addCSS(\"%s\", %s)";
-    private static final String JS_FUNC_ADD_JS_FILE = "javascript:addJS(\"%s\")";
-    private static final String JS_FUNC_GET_FORM_ERRORS = "javascript:alert(\"" + ALERT_GET_FORM_ERRORS + "\" + getFormErrors())";
-    private static final String JS_FUNC_IS_FORM_VALID = "javascript:alert(\"" + ALERT_IS_FORM_VALID + "\" + isFormValid())";
-
-    //Strings that must be identified when redirecting a url
-    private static final String URL_SCHEME = "mobileforms";
-    private static final String URL_HOST = "event";
-    private static final String URL_TEL = "tel:";
-    private static final String URL_MAIL = "mailto:";
+    //Time without changes after which the pending changes of the draft are written
+    private static final long DRAFT_WRITE_DELAY = 1000;
 
-    //Query parameters of mmobile:// urls
-    private static final String QUERY_ELEMENT = "element";
-    private static final String QUERY_VALUE = "value";
-    private static final String QUERY_TYPE = "type";
+    //Options sent to the page in one answer, whatever it asks for
+    private static final int MAX_OPTION_PAGE = 500;
 
-    //Types and values of query parameters
-    private static final String TYPE_SUBMIT = "submit";
-    private static final String TYPE_FOCUS_IN = "focus";
-    private static final String TYPE_FOCUS_OUT = "focusout";
-    private static final String TYPE_CHANGE = "change";
-    private static final String TYPE_VALIDATE_ERROR = "validateerror";
-    private static final String TYPE_LINK = "link";
-    private static final String VALUE_VALID = "valid";
-    private static final String VALUE_INVALID = "invalid";
+    //Urls opened with other apps
+    private static final String URL_TEL = "tel:";
+    private static final String URL_MAIL = "mailto:";
 
 
     private WebView webView;
-    private Listener listener;
+    private JsCommandQueue jsQueue;
+    private BridgeFlushPolicy bridgeFlushPolicy = BridgeFlushPolicy.NEXT_FRAME;
+    //Set on the UI thread, read by onEvent() on the event executor too
+    private volatile Listener listener;
 
     private boolean loadCalled;
+    private boolean loadWhenAssetsLoaded;
+    private boolean formPageRequested;
+    private int pendingAssets;
+    private int formGeneration;
     private boolean webViewLoaded;
     private boolean readOnly;
+    private boolean customJsAdded;
     private List<String> pendingJs;
     private List<String> restorableJs;
     private String jsonForm;
+    private FormDefinition formDefinition;
+    private Map<String, String> fieldScripts = Collections.emptyMap();
     private String jsonPopulateData;
+    private final SparseArray<ResultHandler> pendingResults = new SparseArray<>();
+    private boolean deltaSyncEnabled = true;
+    private FormDataModel formData = new FormDataModel();
+    private int dataSyncToken;
+    private boolean formDataSynced;
+    private StatePersistence statePersistence = StatePersistence.FILES;
+    private String stateKey;
+    private Bundle restoringState;
+    private FormMetrics metrics;
+    private int metricsToken;
+    private long loadStartTime;
+    private long initStartTime;
+    private boolean pageLoadedForForm;
+    private int fieldCount = -1;
+    private Boolean formValid;
+    private int renderSections;
+    //Steps of a multi-step form, the state of the step shown is in the fields above
+    private FormSteps steps;
+    private final FormSteps.Host stepsHost = new FormSteps.Host() {
+        @Override
+        public void store(FormSteps.Step step) {
+            step.jsonForm = jsonForm;
+            step.jsonPopulateData = jsonPopulateData;
+            step.formData = formData;
+            step.formDataSynced = formDataSynced;
+            step.formValid = formValid;
+            step.dataSyncToken = dataSyncToken;
+        }
+
+        @Override
+        public void restore(FormSteps.Step step) {
+            jsonForm = step.jsonForm;
+            formDefinition = null;
+            jsonPopulateData = step.jsonPopulateData;
+            formData = step.formData;
+            formDataSynced = step.formDataSynced;
+            formValid = step.formValid;
+            dataSyncToken = step.dataSyncToken;
+        }
+
+        @Override
+        public void leave(int index, FormSteps.Step step) {
+            //Without delta sync the data of the step left is read before it is hidden
+            if (!deltaSyncEnabled) {
+                readStepData(step);
+            }
+        }
+
+        @Override
+        public void show(int index) {
+            jsQueue.enqueue(FormScripts.showStep(index));
+        }
+
+        @Override
+        public void build(int index, int previous, FormSteps.Step step) {
+            buildStep(index, previous, step);
+        }
+    };
+    //Draft autosave: the journal is only touched on the BackgroundIO thread, the pending changes on the UI thread
+    private String draftKey;
+    private DraftJournal draftJournal;
+    private boolean draftRead;
+    private String pendingDraftSnapshot;
+    private List<String> pendingDraftChanges = new ArrayList<>();
+    private final Runnable draftWriteTask = new Runnable() {
+        @Override
+        public void run() {
+            writeDraft();
+        }
+    };
+    //Sources of the fields with an 'optionsource' attribute, read from the JavaBridge thread
+    private final Map<String, OptionSource> optionSources = new ConcurrentHashMap<>();
+    private final Handler eventHandler = new Handler(Looper.getMainLooper());
+    private final FormEventStream eventStream = new FormEventStream(new FormEventStream.Sink() {
+        @Override
+        public void onEvent(FormEvent event) {
+            Listener current = listener;
+            if (current != null) {
+                current.onEvent(event.type, event.element, event.value);
+            }
+        }
+    }, new FormEventStream.Timer() {
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            eventHandler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            eventHandler.removeCallbacks(task);
+        }
+    });
+
+    //Request ids are unique in the process, so a late result from a previous user of a pooled WebView is never misrouted
+    private static int nextRequestId = 1;
 
 
     /**
@@ -154,7 +247,8 @@ public class Form extends Fragment {
         void onGetFormErrors(String formErrors);
 
         /**
-         * Tells the listener if the current form is valid.
+         * Tells the listener if the current form is valid, when asked with isFormValid() and every time the validity
+         * of the form changes.
          *
          * @param formValid true if the form is valid, false otherwise.
          */
@@ -165,7 +259,51 @@ public class Form extends Fragment {
      * Types of events that can occur in the form.
      */
     public enum FormEventType {
-        SUBMIT, SUBMIT_INVALID, FOCUS_IN, FOCUS_OUT, CHANGE, VALIDATE_ERROR, LINK, OTHER
+        SUBMIT, SUBMIT_INVALID, FOCUS_IN, FOCUS_OUT, CHANGE, VALIDATE_ERROR, LINK,
+        /**
+         * The whole form became valid or invalid. The value is "valid" or "invalid", onFormValid() is also called.
+         */
+        VALIDITY_CHANGE,
+        /**
+         * The page shows another step, see setSteps(). The value is the index of the step. The events before it belong
+         * to the step shown before, the ones after it to the new one.
+         */
+        STEP_CHANGE,
+        OTHER
+    }
+
+    /**
+     * When the JavaScript commands queued by the form are sent to the WebView.
+     */
+    public enum BridgeFlushPolicy {
+        /**
+         * Every command is sent as soon as it is issued.
+         */
+        IMMEDIATE,
+        /**
+         * Commands issued during the same UI frame are joined and sent together on the next frame. This is the default.
+         */
+        NEXT_FRAME,
+        /**
+         * Commands are kept until flushBridge() is called. Form initialisation is always flushed.
+         */
+        MANUAL
+    }
+
+    /**
+     * Where the form definition, the form data and the custom CSS and JS are kept when the state is saved.
+     */
+    public enum StatePersistence {
+        /**
+         * Everything is put in the saved state Bundle. Big forms or custom files can exceed the binder transaction
+         * limit and crash the app when it goes to the background.
+         */
+        BUNDLE,
+        /**
+         * Big values are written to app-private files and the Bundle only keeps references to them. Custom files and
+         * definitions used by several forms are stored once. This is the default.
+         */
+        FILES
     }
 
     @Override
@@ -202,56 +340,174 @@ public class Form extends Fragment {
     @Override
     public void onDetach() {
         super.onDetach();
+        eventStream.flush();
+        //Nothing posted by the form outlives it, the handler is bound to the main looper for the life of the process
+        eventHandler.removeCallbacksAndMessages(null);
         listener = null;
     }
 
-    @SuppressLint("SetJavaScriptEnabled")
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        webView = new WebView(getActivity());
+        webView = FormWebViewPool.getInstance().acquire(getActivity());
         webView.setVisibility(View.INVISIBLE);
-        webView.getSettings().setJavaScriptEnabled(true);
+        jsQueue = new JsCommandQueue(webView);
+        jsQueue.setFlushPolicy(bridgeFlushPolicy);
+        FormWebViewPool.getInstance().getJsInterface(webView).setReceiver(new FormJsInterface.Receiver() {
+            @Override
+            public void onResult(int requestId, String value) {
+                ResultHandler handler = pendingResults.get(requestId);
+                if (handler != null) {
+                    pendingResults.remove(requestId);
+                    reportMetric(FormMetrics.Phase.BRIDGE_ROUND_TRIP, handler.expression,
+                            elapsedMillis(handler.startTime), value != null ? value.length() : 0);
+                    handler.onResult(value);
+                }
+            }
+
+            @Override
+            public void onFormData(int token, String data, boolean full) {
+                //The last changes of a step may come once another step is shown
+                FormSteps.Step step = token != dataSyncToken && steps != null ? steps.find(token) : null;
+                if (token != dataSyncToken && step == null) {
+                    return;
+                }
+                FormDataModel model = step != null ? step.formData : formData;
+                if (step == null) {
+                    saveDraft(data, full);
+                }
+                try {
+                    if (full) {
+                        model.replace(data);
+                        if (step != null) {
+                            step.formDataSynced = true;
+                        } else {
+                            formDataSynced = true;
+                        }
+                    } else {
+                        model.merge(data);
+                    }
+                } catch (JSONException e) {
+                    Log.e("MobileForms", "Could not sync form data. Exception: " + e);
+                }
+            }
+
+            @Override
+            public void onMetric(int token, String phase, double durationMillis, int count, int payloadSize) {
+                if (token != metricsToken) {
+                    return;
+                }
+                if (count >= 0) {
+                    fieldCount = count;
+                }
+                int definitionSize = jsonForm != null ? jsonForm.length() : 0;
+                switch (phase) {
+                    case "libraryParse":
+                        //A pooled page was parsed before this form used it
+                        if (pageLoadedForForm) {
+                            reportMetric(FormMetrics.Phase.LIBRARY_PARSE, null, durationMillis, 0);
+                        }
+                        break;
+                    case "build":
+                        reportMetric(FormMetrics.Phase.FORM_BUILD, null, durationMillis, definitionSize);
+                        break;
+                    case "populate":
+                        reportMetric(FormMetrics.Phase.POPULATE, null, durationMillis, payloadSize);
+                        break;
+                    case "ready":
+                        reportMetric(FormMetrics.Phase.FORM_INIT, null, elapsedMillis(initStartTime), definitionSize);
+                        break;
+                }
+            }
+
+            @Override
+            public String onQueryOptions(String source, String prefix, int offset, int limit) {
+                OptionSource optionSource = source != null ? optionSources.get(source) : null;
+                if (optionSource == null) {
+                    Log.w("MobileForms", "No option source named " + source);
+                    return null;
+                }
+                return optionSource.query(prefix != null ? prefix : "", Math.max(0, offset),
+                        Math.max(0, Math.min(limit, MAX_OPTION_PAGE))).toJson();
+            }
+
+            @Override
+            public String onGetOptionLabel(String source, String value) {
+                OptionSource optionSource = source != null ? optionSources.get(source) : null;
+                return optionSource != null && value != null ? optionSource.getLabel(value) : null;
+            }
+        });
         if (savedInstanceState != null) {
-            jsonForm = savedInstanceState.getString(TAG_JSON_FORM);
-            jsonPopulateData = savedInstanceState.getString(TAG_JSON_DATA);
-            pendingJs = savedInstanceState.getStringArrayList(TAG_PENDING_JS);
-            restorableJs = savedInstanceState.getStringArrayList(TAG_RESTORABLE_JS);
+            stateKey = savedInstanceState.getString(TAG_STATE_KEY);
+            if (stateKey != null) {
+                restoreFromStore(savedInstanceState);
+            } else {
+                jsonForm = savedInstanceState.getString(TAG_JSON_FORM);
+                jsonPopulateData = savedInstanceState.getString(TAG_JSON_DATA);
+                pendingJs = savedInstanceState.getStringArrayList(TAG_PENDING_JS);
+                restorableJs = savedInstanceState.getStringArrayList(TAG_RESTORABLE_JS);
+                steps = FormSteps.restore(stepsHost, savedInstanceState.getStringArrayList(TAG_STEPS),
+                        savedInstanceState.getStringArrayList(TAG_STEP_DATA),
+                        savedInstanceState.getInt(TAG_CURRENT_STEP));
+            }
             readOnly = savedInstanceState.getBoolean(TAG_READ_ONLY);
+            customJsAdded = savedInstanceState.getBoolean(TAG_CUSTOM_JS_ADDED);
+            //The saved data is as recent as the draft, it is not read again
+            String savedDraftKey = savedInstanceState.getString(TAG_DRAFT_KEY);
+            if (savedDraftKey != null) {
+                setDraftKey(savedDraftKey);
+                draftRead = true;
+            }
             setReadOnlyMode(readOnly);
             load();
         }
+        final FormAssetServer assetServer = FormAssetServer.getInstance(getActivity());
         webView.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                return assetServer.serve(request.getUrl().toString());
+            }
+
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
-                initForm();
-                AlphaAnimation animation1 = new AlphaAnimation(0.0f, 1.0f);
-                animation1.setDuration(250);
-                animation1.setFillAfter(true);
-                webView.setVisibility(View.VISIBLE);
-                webView.startAnimation(animation1);
-
-
+                FormWebViewPool.getInstance().onPageLoaded(view);
+                if (formPageRequested) {
+                    formPageRequested = false;
+                    showForm();
+                }
             }
 
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, String url) {
-                Uri uri = Uri.parse(url);
-                boolean eventUrl = uri.getScheme().equals(URL_SCHEME) && uri.getHost().equals(URL_HOST);
-                if (eventUrl) {
-                    String element = uri.getQueryParameter(QUERY_ELEMENT);
-                    String value = uri.getQueryParameter(QUERY_VALUE);
-                    FormEventType eventType = getFormEventType(uri.getQueryParameter(QUERY_TYPE), value);
-                    if(eventType == FormEventType.FOCUS_IN){
+                FormEvent event = FormEvent.parse(url);
+                if (event != null) {
+                    FormEventType eventType = event.type;
+                    if(eventType == FormEventType.FOCUS_IN && !deltaSyncEnabled){
                         updateFormData();
                     }
-                    if (listener != null) {
-                        if (eventType == FormEventType.SUBMIT) {
-                            webView.loadUrl(JS_FUNC_GET_FORM_DATA_VALIDATED);
+                    //The events after it belong to the step shown, so its state is swapped in right now
+                    if (eventType == FormEventType.STEP_CHANGE) {
+                        onStepShown(event.value);
+                    }
+                    //The page pushes the validity when it flips, so isFormValid() does not need to ask for it
+                    if (eventType == FormEventType.VALIDITY_CHANGE) {
+                        formValid = FormEvent.VALUE_VALID.equals(event.value);
+                        if (listener != null) {
+                            listener.onFormValid(formValid);
                         }
-
-                        listener.onEvent(eventType, element, value);
                     }
+                    if (listener != null && eventType == FormEventType.SUBMIT) {
+                        requestResult(FormScripts.JS_EXPR_FORM_DATA_VALIDATED, new ResultHandler() {
+                            @Override
+                            void onResult(String value) {
+                                if (listener != null) {
+                                    listener.onSubmit(value);
+                                }
+                            }
+                        });
+                    }
+                    //The listener gets the event through the stream, which may coalesce it or deliver it later
+                    eventStream.post(event);
                     return true;
                 } else if (url.startsWith(URL_TEL)) {
                     Intent intent = new Intent(Intent.ACTION_DIAL,
@@ -267,67 +523,155 @@ public class Form extends Fragment {
                 return super.shouldOverrideUrlLoading(view, url);
             }
         });
-        /*
-        There are some issues reported with JavaScript interface in 2.3 versions. In order to avoid these problems, the JS calls that return a result are going to be thrown through alerts, with an identifier
-        and captured in this callback. The identifier will be removed and the result processed.
-         */
-        webView.setWebChromeClient(
-                new WebChromeClient() {
-                    @Override
-                    public boolean onJsAlert(WebView view, String url, String message, JsResult result) {
-                        if (message.startsWith(ALERT_FORM_DATA_VALIDATED)) {
-                            message = message.replace(ALERT_FORM_DATA_VALIDATED, "");
-                            if (listener != null) {
-                                listener.onSubmit(message);
-                            }
-                            result.confirm();
-                            return true;
-                        } else if (message.startsWith(ALERT_FORM_DATA)) {
-                            message = message.replace(ALERT_FORM_DATA, "");
-                            if (listener != null) {
-                                listener.onGetFormValues(message);
-                            }
-                            result.confirm();
-                            return true;
-                        } else if (message.startsWith(ALERT_UPDATE_FORM_DATA)) {
-                            message = message.replace(ALERT_UPDATE_FORM_DATA, "");
-                            jsonPopulateData = message;
-                            result.confirm();
-                            return true;
-                        } else if (message.startsWith(ALERT_GET_FORM_ERRORS)) {
-                            message = message.replace(ALERT_GET_FORM_ERRORS, "");
-                            if (listener != null) {
-                                listener.onGetFormErrors(message);
-                            }
-                            result.confirm();
-                            return true;
-
-                        } else if (message.startsWith(ALERT_IS_FORM_VALID)) {
-                            message = message.replace(ALERT_IS_FORM_VALID, "");
-                            boolean formValid = Boolean.parseBoolean(message);
-                            if (listener != null) {
-                                listener.onFormValid(formValid);
-                            }
-                            result.confirm();
-                            return true;
-                        }
-                        return super.onJsAlert(view, url, message, result);
-
-
-                    }
-                }
-        );
         return webView;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        writeDraft();
+        jsQueue.clear();
+        jsQueue = null;
+        for (int i = 0; i < pendingResults.size(); i++) {
+            pendingResults.valueAt(i).cancel();
+        }
+        pendingResults.clear();
+        //Custom scripts may leave globals behind that resetForm() cannot undo, so that page is not reused
+        FormWebViewPool.getInstance().release(webView, !customJsAdded);
+        webView = null;
+        webViewLoaded = false;
+        formPageRequested = false;
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString(TAG_JSON_DATA, jsonPopulateData);
-        outState.putString(TAG_JSON_FORM, jsonForm);
-        outState.putStringArrayList(TAG_PENDING_JS, (ArrayList<String>) pendingJs);
-        outState.putStringArrayList(TAG_RESTORABLE_JS, (ArrayList<String>) restorableJs);
+        if (deltaSyncEnabled && formDataSynced) {
+            jsonPopulateData = formData.toJson();
+        }
+        ArrayList<String> stepForms = null;
+        ArrayList<String> stepData = null;
+        if (steps != null) {
+            stepForms = steps.getForms();
+            stepData = steps.getData();
+            outState.putInt(TAG_CURRENT_STEP, steps.getCurrent());
+        }
+        if (statePersistence == StatePersistence.FILES) {
+            if (stateKey == null) {
+                stateKey = UUID.randomUUID().toString();
+            }
+            if (restoringState != null) {
+                //The previous state has not been read back yet, it is saved again as it is
+                outState.putAll(restoringState);
+            } else {
+                FormStateStore.Editor editor = FormStateStore.getInstance(getActivity()).edit(stateKey);
+                outState.putString(TAG_STATE_KEY, stateKey);
+                outState.putString(TAG_JSON_DATA, editor.put(TAG_JSON_DATA, jsonPopulateData));
+                outState.putString(TAG_JSON_FORM, editor.put(TAG_JSON_FORM, jsonForm));
+                outState.putStringArrayList(TAG_PENDING_JS, editor.putAll(TAG_PENDING_JS, pendingJs));
+                outState.putStringArrayList(TAG_RESTORABLE_JS, editor.putAll(TAG_RESTORABLE_JS, restorableJs));
+                if (steps != null) {
+                    outState.putStringArrayList(TAG_STEPS, editor.putAll(TAG_STEPS, stepForms));
+                    outState.putStringArrayList(TAG_STEP_DATA, editor.putAll(TAG_STEP_DATA, stepData));
+                }
+                editor.commit();
+            }
+        } else {
+            outState.putString(TAG_JSON_DATA, jsonPopulateData);
+            outState.putString(TAG_JSON_FORM, jsonForm);
+            outState.putStringArrayList(TAG_PENDING_JS, (ArrayList<String>) pendingJs);
+            outState.putStringArrayList(TAG_RESTORABLE_JS, (ArrayList<String>) restorableJs);
+            outState.putStringArrayList(TAG_STEPS, stepForms);
+            outState.putStringArrayList(TAG_STEP_DATA, stepData);
+        }
         outState.putBoolean(TAG_READ_ONLY, readOnly);
+        outState.putBoolean(TAG_CUSTOM_JS_ADDED, customJsAdded);
+        outState.putString(TAG_DRAFT_KEY, draftKey);
+        //The process may be killed from now on
+        writeDraft();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        //The saved state files are only needed while the form can still be restored
+        Activity activity = getActivity();
+        if (stateKey != null && activity != null && (isRemoving() || activity.isFinishing())) {
+            FormStateStore.getInstance(activity).remove(stateKey);
+            stateKey = null;
+        }
+    }
+
+    /**
+     * Reads the state saved with StatePersistence.FILES in background, load() waits for it.
+     */
+    private void restoreFromStore(Bundle savedInstanceState) {
+        final FormStateStore store = FormStateStore.getInstance(getActivity());
+        final String formReference = savedInstanceState.getString(TAG_JSON_FORM);
+        final String dataReference = savedInstanceState.getString(TAG_JSON_DATA);
+        final List<String> pendingReferences = savedInstanceState.getStringArrayList(TAG_PENDING_JS);
+        final List<String> restorableReferences = savedInstanceState.getStringArrayList(TAG_RESTORABLE_JS);
+        final List<String> stepFormReferences = savedInstanceState.getStringArrayList(TAG_STEPS);
+        final List<String> stepDataReferences = savedInstanceState.getStringArrayList(TAG_STEP_DATA);
+        final int savedStep = savedInstanceState.getInt(TAG_CURRENT_STEP);
+        restoringState = savedInstanceState;
+        pendingAssets++;
+        BackgroundIO.execute(new BackgroundIO.Task<List<List<String>>>() {
+            @Override
+            public List<List<String>> run() {
+                List<List<String>> state = new ArrayList<>();
+                state.add(Arrays.asList(store.read(formReference), store.read(dataReference)));
+                state.add(readAll(store, pendingReferences));
+                state.add(readAll(store, restorableReferences));
+                state.add(readEach(store, stepFormReferences));
+                state.add(readEach(store, stepDataReferences));
+                return state;
+            }
+        }, new BackgroundIO.Callback<List<List<String>>>() {
+            @Override
+            public void onDone(List<List<String>> state) {
+                restoringState = null;
+                jsonForm = state.get(0).get(0);
+                jsonPopulateData = state.get(0).get(1);
+                //Commands issued while the state was being read go after the restored ones, custom files added
+                //again by the app are only kept once
+                restorableJs.removeAll(state.get(2));
+                pendingJs.addAll(0, state.get(1));
+                restorableJs.addAll(0, state.get(2));
+                steps = FormSteps.restore(stepsHost, stepFormReferences != null ? state.get(3) : null, state.get(4),
+                        savedStep);
+                onAssetLoaded();
+            }
+        });
+    }
+
+    /**
+     * Reads the blobs of a list, skipping the ones that are lost.
+     */
+    private static List<String> readAll(FormStateStore store, List<String> references) {
+        List<String> blobs = new ArrayList<>();
+        if (references != null) {
+            for (String reference : references) {
+                String blob = store.read(reference);
+                if (blob != null) {
+                    blobs.add(blob);
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Reads the blobs of a list keeping their positions, with null for the ones that are lost.
+     */
+    private static List<String> readEach(FormStateStore store, List<String> references) {
+        List<String> blobs = new ArrayList<>();
+        if (references != null) {
+            for (String reference : references) {
+                blobs.add(store.read(reference));
+            }
+        }
+        return blobs;
     }
 
     /**
@@ -344,28 +688,56 @@ public class Form extends Fragment {
     /**
      * Sets form model loading json by name. The json file must be in the assets folder following this convention: assets/forms/{formName}.json.
      * This method or setForm method must be called before load().
+     * Definitions prefetched by FormRegistry are taken from memory, the rest are read in background.
      *
      * @param name The name of the file located in assets/forms folder, without including .json extension.
      */
     public void setFormNamed(String name) {
+        //Definitions prefetched by FormRegistry are already compiled in memory
+        String definition = FormRegistry.getInstance(getActivity()).get(name);
+        if (definition != null) {
+            setForm(definition);
+            return;
+        }
         setFormFilename(String.format("%s/%s.%s", FORMJSON_DIRECTORY, name, FORMJSON_EXTENSION));
     }
 
     /**
      * Sets form model loading json by full filename relative to assets folder.
      * This method or setForm method must be called before load().
+     * The file is read in background, load() waits for it.
      *
      * @param filename The name of the file relative to assets folder.
      */
-    public void setFormFilename(String filename) {
+    public void setFormFilename(final String filename) {
         if (loadCalled) {
             Log.w("MobileForms", "setFormFilename must be called before load");
         }
-        try {
-            jsonForm = readText(getActivity().getAssets().open(filename));
-        } catch (IOException e) {
-            Log.w("MobileForms", String.format("Form filename %s could not be opened", filename));
-        }
+        final AssetManager assets = getActivity().getAssets();
+        final int generation = ++formGeneration;
+        steps = null;
+        pendingAssets++;
+        BackgroundIO.execute(new BackgroundIO.Task<String>() {
+            @Override
+            public String run() {
+                try {
+                    return AssetText.read(assets.open(filename));
+                } catch (IOException e) {
+                    Log.w("MobileForms", String.format("Form filename %s could not be opened", filename));
+                    return null;
+                }
+            }
+        }, new BackgroundIO.Callback<String>() {
+            @Override
+            public void onDone(String text) {
+                //A later setForm() or setFormFilename() call wins
+                if (text != null && generation == formGeneration) {
+                    jsonForm = text;
+                    formDefinition = null;
+                }
+                onAssetLoaded();
+            }
+        });
     }
 
     /**
@@ -378,7 +750,203 @@ public class Form extends Fragment {
         if (loadCalled) {
             Log.w("MobileForms", "setForm must be called before load");
         }
+        formGeneration++;
         jsonForm = jsonString;
+        formDefinition = null;
+        steps = null;
+    }
+
+    /**
+     * Sets form model from a parsed definition, which can be shared by several forms.
+     * This method, setForm or setFormNamed method must be called before load().
+     *
+     * @param definition parsed form definition.
+     */
+    public void setForm(FormDefinition definition) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setForm must be called before load");
+        }
+        formGeneration++;
+        jsonForm = definition.toJson();
+        formDefinition = definition;
+        steps = null;
+    }
+
+    /**
+     * Sets the steps of a multi-step form, form definitions shown one at a time in the same page. The first step is
+     * shown on load(), then nextStep(), previousStep() and goToStep() switch steps without loading the page again:
+     * a step is built the first time it is shown, and keeps its data and validity while the other steps are shown.
+     * getFormData(), isFormValid(), setPopulateDataAsync() and the rest of the methods work on the step shown, and a
+     * STEP_CHANGE event tells when it changes.
+     * This method, setForm or setFormNamed method must be called before load().
+     *
+     * @param jsonForms form definitions of the steps as json Strings serialized, in order.
+     */
+    public void setSteps(List<String> jsonForms) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setSteps must be called before load");
+        }
+        if (jsonForms == null || jsonForms.isEmpty()) {
+            Log.e("MobileForms", "Steps are not defined, please set at least one");
+            return;
+        }
+        formGeneration++;
+        steps = new FormSteps(stepsHost, jsonForms);
+        jsonForm = jsonForms.get(0);
+        formDefinition = null;
+    }
+
+    /**
+     * Sets the data a step is populated with when it is built. For the step shown, or a step already shown, use
+     * setPopulateDataAsync() while it is shown.
+     *
+     * @param step       index of the step.
+     * @param jsonString Json form data String serialized.
+     */
+    public void setStepPopulateData(int step, String jsonString) {
+        if (steps == null || !steps.contains(step)) {
+            Log.w("MobileForms", "Step " + step + " does not exist, please use setSteps before");
+            return;
+        }
+        if (step == steps.getCurrent()) {
+            setPopulateData(jsonString);
+        } else if (!steps.setPopulateData(step, jsonString)) {
+            Log.w("MobileForms", "Step " + step + " is already built, use setPopulateDataAsync while it is shown");
+        }
+    }
+
+    /**
+     * Shows the next step. See setSteps().
+     *
+     * @return false if the last step is already shown.
+     */
+    public boolean nextStep() {
+        return steps != null && steps.hasNext() && goToStep(steps.getRequested() + 1);
+    }
+
+    /**
+     * Shows the previous step. See setSteps().
+     *
+     * @return false if the first step is already shown.
+     */
+    public boolean previousStep() {
+        return steps != null && steps.hasPrevious() && goToStep(steps.getRequested() - 1);
+    }
+
+    /**
+     * Shows a step. The page leaves the step shown with all its changes synced, and hides it. A step shown before is
+     * shown again as it was left; a new step is built once its definition has been compiled, in background.
+     * Before load() it sets the step shown on load.
+     *
+     * @param step index of the step, see setSteps().
+     * @return false if the step does not exist or the form is still loading.
+     */
+    public boolean goToStep(int step) {
+        if (steps == null || !steps.contains(step)) {
+            Log.w("MobileForms", "Step " + step + " does not exist, please use setSteps before");
+            return false;
+        }
+        if (!webViewLoaded && loadCalled) {
+            Log.w("MobileForms", "goToStep must be called before load or once the form is shown");
+            return false;
+        }
+        steps.goTo(step, webViewLoaded);
+        return true;
+    }
+
+    /**
+     * Returns the step shown. It changes when the page shows the step, right before the STEP_CHANGE event.
+     *
+     * @return index of the step shown, 0 if the form has no steps.
+     */
+    public int getCurrentStep() {
+        return steps != null ? steps.getCurrent() : 0;
+    }
+
+    /**
+     * @return the number of steps, 1 if the form has no steps.
+     */
+    public int getStepCount() {
+        return steps != null ? steps.size() : 1;
+    }
+
+    /**
+     * Compiles the definition of a step not built yet and sends it to the page, if the step is still the one asked for.
+     */
+    private void buildStep(final int index, final int previous, final FormSteps.Step step) {
+        final FormSteps stepsOfForm = steps;
+        BackgroundIO.execute(compileTask(step.jsonForm, false), new BackgroundIO.Callback<CompiledForm>() {
+            @Override
+            public void onDone(CompiledForm compiled) {
+                if (!stepsOfForm.onCompiled(index, previous, compiled != null) || steps != stepsOfForm
+                        || !webViewLoaded || jsQueue == null) {
+                    return;
+                }
+                step.jsonForm = compiled.json;
+                enqueueFieldScripts(compiled.fieldScripts);
+                jsQueue.enqueueCall(FormScripts.JS_FUNC_SET_JSON_FORM, compiled.json);
+                String data = step.getData();
+                if (data != null) {
+                    jsQueue.enqueueCall(FormScripts.JS_FUNC_SET_JSON_POPULATE_DATA, data);
+                }
+                if (deltaSyncEnabled) {
+                    step.dataSyncToken = nextRequestId++;
+                    jsQueue.enqueue(FormScripts.setDataSync(step.dataSyncToken));
+                }
+                jsQueue.enqueue(FormScripts.showStep(index));
+                jsQueue.flush();
+            }
+        });
+    }
+
+    private void readStepData(final FormSteps.Step step) {
+        final FormSteps stepsOfForm = steps;
+        requestResult(FormScripts.JS_EXPR_FORM_DATA, new ResultHandler() {
+            @Override
+            void onResult(String value) {
+                if (steps == stepsOfForm && stepsOfForm.isCurrent(step)) {
+                    jsonPopulateData = value;
+                } else {
+                    step.jsonPopulateData = value;
+                }
+            }
+        });
+    }
+
+    private void onStepShown(String value) {
+        int index;
+        try {
+            index = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Log.w("MobileForms", "Step " + value + " is not valid");
+            return;
+        }
+        if (steps == null || !steps.contains(index) || index == steps.getCurrent()) {
+            return;
+        }
+        steps.select(index);
+        //A step shown again does not send its validity, it has not changed since it was left
+        if (formValid != null && listener != null) {
+            listener.onFormValid(formValid);
+        }
+    }
+
+    /**
+     * Returns the parsed form definition, to inspect its sections and fields. Definitions are parsed once and shared by
+     * the forms that use them, but parsing a big definition for the first time takes a while, call it once the form is
+     * loaded or use setForm(FormDefinition).
+     *
+     * @return the parsed definition, or null if the form has no definition yet or it is not valid.
+     */
+    public FormDefinition getFormDefinition() {
+        if (formDefinition == null && jsonForm != null && getActivity() != null) {
+            try {
+                formDefinition = FormDefinitionCache.getInstance(getActivity()).parse(jsonForm);
+            } catch (JSONException e) {
+                Log.e("MobileForms", "JSON form is not valid. Exception: " + e);
+            }
+        }
+        return formDefinition;
     }
 
     /**
@@ -394,49 +962,361 @@ public class Form extends Fragment {
         jsonPopulateData = jsonString;
     }
 
+    /**
+     * Autosaves the data of the form as a draft, in an app-private journal named after draftKey (e.g. the id of the
+     * task the form belongs to), so the data survives the death of the process. Only the changed values are written,
+     * in background, once the user stops editing for a moment, and when the fragment saves its state.
+     * If a previous run left a draft with that key, load() reads it in background and populates the form with it
+     * instead of the data given to setPopulateData(). Call discardDraft() once the data is submitted.
+     * Without delta sync, see setDeltaSyncEnabled(), the whole data is written every time it is read from the page.
+     * Drafts are not saved for multi-step forms. It must be called before load().
+     *
+     * @param draftKey key of the draft, unique among the drafts of the app, or null to stop saving drafts.
+     */
+    public void setDraftKey(String draftKey) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setDraftKey must be called before load");
+        }
+        clearDraft();
+        this.draftKey = draftKey;
+        draftJournal = draftKey != null ? DraftJournal.open(getActivity(), draftKey) : null;
+    }
+
+    /**
+     * Stops saving the draft, dropping the changes not written yet.
+     */
+    private void clearDraft() {
+        eventHandler.removeCallbacks(draftWriteTask);
+        draftKey = null;
+        draftJournal = null;
+        draftRead = false;
+        pendingDraftSnapshot = null;
+        pendingDraftChanges = new ArrayList<>();
+    }
+
+    /**
+     * Deletes the draft of the form and stops saving it, see setDraftKey().
+     */
+    public void discardDraft() {
+        final DraftJournal journal = draftJournal;
+        //It can be called at any time, unlike setDraftKey()
+        clearDraft();
+        if (journal != null) {
+            BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+                @Override
+                public Void run() {
+                    journal.delete();
+                    return null;
+                }
+            }, null);
+        }
+    }
+
+    /**
+     * Tells whether a draft was left with a key, e.g. to offer resuming it. It only checks its file.
+     *
+     * @param context  any context.
+     * @param draftKey key of the draft, see setDraftKey().
+     * @return true if there is a draft to restore.
+     */
+    public static boolean hasDraft(Context context, String draftKey) {
+        return DraftJournal.open(context, draftKey).exists();
+    }
+
+    /**
+     * Reads the draft in background, load() waits for it.
+     */
+    private void readDraft() {
+        final DraftJournal journal = draftJournal;
+        draftRead = true;
+        pendingAssets++;
+        BackgroundIO.execute(new BackgroundIO.Task<String>() {
+            @Override
+            public String run() {
+                try {
+                    return journal.read();
+                } catch (IOException e) {
+                    Log.w("MobileForms", "Draft could not be read. Exception: " + e);
+                    return null;
+                }
+            }
+        }, new BackgroundIO.Callback<String>() {
+            @Override
+            public void onDone(String draft) {
+                if (draft != null && journal == draftJournal) {
+                    jsonPopulateData = draft;
+                }
+                onAssetLoaded();
+            }
+        });
+    }
+
+    /**
+     * Keeps data synced from the page to be written to the draft once the user stops editing.
+     *
+     * @param data changed values by root key, or the whole form data if full is true, as json String serialized.
+     * @param full true if data is a snapshot of the whole form.
+     */
+    private void saveDraft(String data, boolean full) {
+        if (draftJournal == null || steps != null) {
+            return;
+        }
+        if (full) {
+            pendingDraftSnapshot = data;
+            pendingDraftChanges.clear();
+        } else {
+            pendingDraftChanges.add(data);
+        }
+        eventHandler.removeCallbacks(draftWriteTask);
+        eventHandler.postDelayed(draftWriteTask, DRAFT_WRITE_DELAY);
+    }
+
+    /**
+     * Writes the pending data of the draft in background.
+     */
+    private void writeDraft() {
+        eventHandler.removeCallbacks(draftWriteTask);
+        final DraftJournal journal = draftJournal;
+        final String snapshot = pendingDraftSnapshot;
+        final List<String> changes = pendingDraftChanges;
+        if (journal == null || (snapshot == null && changes.isEmpty())) {
+            return;
+        }
+        pendingDraftSnapshot = null;
+        pendingDraftChanges = new ArrayList<>();
+        BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+            @Override
+            public Void run() {
+                try {
+                    if (snapshot != null) {
+                        journal.writeSnapshot(snapshot);
+                    }
+                    journal.writeChanges(changes);
+                } catch (IOException e) {
+                    Log.w("MobileForms", "Draft could not be saved. Exception: " + e);
+                }
+                return null;
+            }
+        }, null);
+    }
+
     /**
      * Loads the form. Methods newInstance() if the fragment is created programmatically, and setForm() or setFormNamed() must be called first.
      * In order to make it work, the folder 'mobileforms' have to be present in your assets folder.
+     * The form is shown once the assets requested before have been read and the definition has been compiled, all
+     * of it in background.
      */
     public void load() {
         loadCalled = true;
+        if (loadStartTime == 0) {
+            loadStartTime = System.nanoTime();
+        }
+        if (draftJournal != null && !draftRead) {
+            readDraft();
+        }
+        //Wait for the assets being read in background, load() is called again when they are ready
+        if (pendingAssets > 0) {
+            loadWhenAssetsLoaded = true;
+            return;
+        }
+        loadWhenAssetsLoaded = false;
         if (jsonForm == null) {
             Log.e("MobileForms", "JSON form is not defined, please use setFormNamed or setForm before load");
             return;
         }
-        webView.loadUrl(FORMHTML_URL);
+        final String definition = jsonForm;
+        //A definition set already parsed is already compiled
+        final boolean parsed = formDefinition != null && formDefinition.toJson() == definition;
+        pendingAssets++;
+        BackgroundIO.execute(compileTask(definition, parsed), new BackgroundIO.Callback<CompiledForm>() {
+            @Override
+            public void onDone(CompiledForm compiled) {
+                pendingAssets--;
+                if (compiled == null) {
+                    Log.e("MobileForms", "JSON form could not be compiled, the form is not loaded");
+                    return;
+                }
+                if (definition.equals(jsonForm)) {
+                    jsonForm = compiled.json;
+                }
+                fieldScripts = compiled.fieldScripts;
+                navigate();
+            }
+        });
+    }
+
+    /**
+     * @return a task that compiles a definition and finds the field chunks it needs, null if it is not valid.
+     */
+    private BackgroundIO.Task<CompiledForm> compileTask(final String definition, final boolean parsed) {
+        final FormDefinitionCache cache = FormDefinitionCache.getInstance(getActivity());
+        final FormStateStore store = getStateStore();
+        final FormAssetServer assetServer = FormAssetServer.getInstance(getActivity());
+        return new BackgroundIO.Task<CompiledForm>() {
+            @Override
+            public CompiledForm run() {
+                try {
+                    String compiled = parsed ? definition : cache.compile(definition);
+                    return new CompiledForm(store != null ? store.share(compiled) : compiled,
+                            assetServer.getFieldScripts(compiled));
+                } catch (JSONException e) {
+                    Log.e("MobileForms", "JSON form is not valid. Exception: " + e);
+                    return null;
+                }
+            }
+        };
+    }
+
+    private void navigate() {
+        if (webView == null) {
+            return;
+        }
+        jsQueue.resetRoundTrips();
+        pageLoadedForForm = !FormWebViewPool.getInstance().isPageLoaded(webView);
+        if (!pageLoadedForForm) {
+            showForm();
+        } else {
+            formPageRequested = true;
+            webView.loadUrl(FORMHTML_URL);
+        }
+    }
+
+    private void showForm() {
+        reportMetric(FormMetrics.Phase.PAGE_LOAD, null, elapsedMillis(loadStartTime), jsonForm.length());
+        loadStartTime = 0;
+        initForm();
+        if (renderSections == 0) {
+            reveal();
+        }
+        if (metrics != null || renderSections > 0) {
+            //The callback comes once the page state after the initialisation, sent before, is ready to be drawn
+            final WebView view = webView;
+            final int token = nextRequestId++;
+            final int timedToken = metricsToken;
+            view.postVisualStateCallback(token, new WebView.VisualStateCallback() {
+                @Override
+                public void onComplete(long requestId) {
+                    if (view != webView) {
+                        return;
+                    }
+                    //With progressive rendering, the first sections are built and the form is shown right now
+                    if (view.getVisibility() != View.VISIBLE) {
+                        reveal();
+                    }
+                    if (metrics != null && timedToken == metricsToken) {
+                        reportMetric(FormMetrics.Phase.FIRST_PAINT, null, elapsedMillis(initStartTime), 0);
+                    }
+                }
+            });
+        }
+    }
+
+    private void enqueueFieldScripts(Map<String, String> scripts) {
+        Set<String> loadedChunks = FormWebViewPool.getInstance().getFieldChunks(webView);
+        for (Map.Entry<String, String> chunk : scripts.entrySet()) {
+            if (loadedChunks.add(chunk.getKey())) {
+                jsQueue.enqueue(chunk.getValue());
+            }
+        }
+    }
+
+    private void reveal() {
+        AlphaAnimation animation1 = new AlphaAnimation(0.0f, 1.0f);
+        animation1.setDuration(250);
+        animation1.setFillAfter(true);
+        webView.setVisibility(View.VISIBLE);
+        webView.startAnimation(animation1);
     }
 
     private void initForm() {
-        // Set form
-        webView.loadUrl(String.format(JS_FUNC_SET_JSON_FORM, jsonForm));
+        // Builders of the field types of the form the page has not run yet
+        enqueueFieldScripts(fieldScripts);
+        // Set form, in chunks if it is too long for a single call
+        jsQueue.enqueueCall(FormScripts.JS_FUNC_SET_JSON_FORM, jsonForm);
         // Populate form data with JSON (if it has been provided)
         if (jsonPopulateData != null) {
-            webView.loadUrl(String.format(JS_FUNC_SET_JSON_POPULATE_DATA, jsonPopulateData));
+            jsQueue.enqueueCall(FormScripts.JS_FUNC_SET_JSON_POPULATE_DATA, jsonPopulateData);
+        }
+        // Track the changes of the form data in JS (delta sync)
+        formDataSynced = false;
+        // The validity is pushed by the page once the form is built
+        formValid = null;
+        if (deltaSyncEnabled) {
+            dataSyncToken = nextRequestId++;
+            jsQueue.enqueue(FormScripts.setDataSync(dataSyncToken));
+        }
+        // Time the phases of the form initialisation in JS
+        fieldCount = -1;
+        initStartTime = System.nanoTime();
+        if (metrics != null) {
+            metricsToken = nextRequestId++;
+            jsQueue.enqueue(FormScripts.setMetrics(metricsToken));
+        }
+        // Build only the first sections before the form is shown
+        if (renderSections > 0) {
+            jsQueue.enqueue(FormScripts.setRenderSections(renderSections));
+        }
+        // Multi-step forms start at the step shown, the other steps are built when they are shown
+        if (steps != null) {
+            steps.reset();
+            jsQueue.enqueue(FormScripts.setStep(steps.getCurrent()));
         }
         // Init JS
-        webView.loadUrl(JS_FUNC_INIT);
+        jsQueue.enqueue(FormScripts.JS_FUNC_INIT);
         pendingJs.removeAll(restorableJs);
         for (String js : pendingJs) {
-            webView.loadUrl(js);
+            jsQueue.enqueue(js);
         }
         pendingJs.clear();
         for (String js : restorableJs) {
-            webView.loadUrl(js);
+            jsQueue.enqueue(js);
         }
+        // The whole initialisation goes in a single bridge round-trip, whatever the flush policy
+        jsQueue.flush();
         webViewLoaded = true;
 
     }
 
+    /**
+     * Sets when the JavaScript commands issued by the form are sent to the WebView. See BridgeFlushPolicy.
+     *
+     * @param policy flush policy, NEXT_FRAME by default.
+     */
+    public void setBridgeFlushPolicy(BridgeFlushPolicy policy) {
+        bridgeFlushPolicy = policy;
+        if (jsQueue != null) {
+            jsQueue.setFlushPolicy(policy);
+        }
+    }
+
+    /**
+     * Sends the queued JavaScript commands to the WebView right away.
+     */
+    public void flushBridge() {
+        if (jsQueue != null) {
+            jsQueue.flush();
+        }
+    }
+
+    /**
+     * Returns the number of times the form has called into the WebView since the last load(). The initialisation of the
+     * form accounts for one of them.
+     *
+     * @return bridge round-trips of the current form load.
+     */
+    public int getBridgeRoundTrips() {
+        return jsQueue != null ? jsQueue.getRoundTrips() : 0;
+    }
+
     /**
      * Set if form is editable or not. Form can switch between these modes at anytime.
      *
      * @param readOnly true sets the form as read only. False sets the form editable.
      */
     public void setReadOnlyMode(boolean readOnly) {
-        String js = readOnly ? JS_FUNC_SET_READONLY_FORM : JS_FUNC_SET_EDITABLE_FORM;
+        String js = readOnly ? FormScripts.JS_FUNC_SET_READONLY_FORM : FormScripts.JS_FUNC_SET_EDITABLE_FORM;
         if (webViewLoaded) {
-            webView.loadUrl(js);
+            jsQueue.enqueue(js);
         } else {
             pendingJs.add(js);
         }
@@ -444,160 +1324,388 @@ public class Form extends Fragment {
     }
 
     /**
-     * Asks the form for the current values. The result will be delivered to the listener through onGetFormValues callback.
+     * Enables or disables the delta sync of the form data. When enabled (the default), the page sends only the values of
+     * the fields changed by the user, shortly after each change. They are merged into a copy of the form data kept by
+     * Form, which answers getFormData() and is saved in onSaveInstanceState() without calling into the page.
+     * When disabled, the whole form data is read from the page every time a field gets the focus and on getFormData().
+     * It must be called before load().
+     *
+     * @param enabled true to enable delta sync.
+     */
+    public void setDeltaSyncEnabled(boolean enabled) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setDeltaSyncEnabled must be called before load");
+        }
+        deltaSyncEnabled = enabled;
+    }
+
+    /**
+     * Sets where the form definition, the form data and the custom CSS and JS are kept when the state is saved.
+     * See StatePersistence. It should be called before setting the form and adding custom files, so they can be stored
+     * once for all the forms that use them.
+     *
+     * @param persistence state persistence, FILES by default.
+     */
+    public void setStatePersistence(StatePersistence persistence) {
+        statePersistence = persistence;
+    }
+
+    /**
+     * Coalesces the CHANGE events of each element: the first change of an element is held for the given time, and only
+     * the last value within that time is sent to onEvent(). Any other event sends the held changes first, so they keep
+     * their order with focus out and submit events.
+     *
+     * @param windowMillis time in milliseconds, 0 (the default) to send every change.
+     */
+    public void setChangeCoalescing(long windowMillis) {
+        eventStream.setChangeWindow(windowMillis);
+    }
+
+    /**
+     * Calls onEvent() on the given executor instead of the UI thread, so a slow listener never delays the input of the
+     * form. Events are sent in batches, in order, and while the listener is busy the pending CHANGE events of an
+     * element are replaced by the newest one. onSubmit(), onFormValid() and the rest of the listener methods are still
+     * called on the UI thread. It must be called before load().
+     *
+     * @param executor executor for onEvent(), or null to call it on the UI thread (the default).
+     */
+    public void setEventExecutor(Executor executor) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setEventExecutor must be called before load");
+        }
+        eventStream.setExecutor(executor);
+    }
+
+    /**
+     * Registers the options of the select and radio fields whose 'optionsource' attribute is the given name. Those
+     * fields show a search box instead of their options, and the page asks the source for the options that match what
+     * is typed, a page at a time, so the form definition does not carry them and only the listed ones are in the page.
+     * The source is queried from a background thread while the page waits, see OptionSource. Sources can be registered
+     * at any time, and they are kept across steps and configuration changes of this instance.
+     *
+     * @param name   name used in the 'optionsource' attribute of the fields.
+     * @param source options of the fields, or null to remove them.
+     */
+    public void setOptionSource(String name, OptionSource source) {
+        if (source != null) {
+            optionSources.put(name, source);
+        } else {
+            optionSources.remove(name);
+        }
+    }
+
+    /**
+     * Enables progressive rendering, for forms with many sections: only the first sections are built before the form is
+     * shown, and the rest are built one per frame once it is visible, or right away when the user scrolls to them.
+     * Populate data, validity and getFormData() cover every section, the sections still pending are built when the
+     * whole form is needed. It must be called before load().
+     *
+     * @param initialSections sections built before the form is shown, 0 (the default) to build the whole form at once.
      */
-    public void getFormData() {
-        webView.loadUrl(JS_FUNC_GET_FORM_DATA);
+    public void setProgressiveRendering(int initialSections) {
+        if (loadCalled) {
+            Log.w("MobileForms", "setProgressiveRendering must be called before load");
+        }
+        renderSections = Math.max(0, initialSections);
+    }
+
+    /**
+     * Sets the listener that receives the time spent in each phase of the form load and in every request to the page.
+     * See FormMetrics. It must be called before load().
+     *
+     * @param metrics listener, or null to stop timing.
+     */
+    public void setMetrics(FormMetrics metrics) {
+        if (loadCalled && metrics != null) {
+            Log.w("MobileForms", "setMetrics must be called before load");
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Asks the form for the current values. The result will be delivered through the returned request and to the listener
+     * through onGetFormValues callback.
+     * With delta sync enabled, the values are those synced from the page, which happens shortly after every change.
+     *
+     * @return request completed with the form data as json String serialized.
+     */
+    public FormRequest<String> getFormData() {
+        final FormRequest<String> request = new FormRequest<>();
+        if (deltaSyncEnabled && formDataSynced) {
+            String value = formData.toJson();
+            if (listener != null) {
+                listener.onGetFormValues(value);
+            }
+            request.complete(value);
+            return request;
+        }
+        requestResult(FormScripts.JS_EXPR_FORM_DATA, new ResultHandler(request) {
+            @Override
+            void onResult(String value) {
+                if (listener != null) {
+                    listener.onGetFormValues(value);
+                }
+                request.complete(value);
+            }
+        });
+        return request;
     }
 
     /**
      * Sets form data passing json string serialized (once the form is loaded), overwriting current values.
+     * Only the fields whose value changes get CHANGE events and, with delta sync, are read back from the page.
      *
      * @param jsonString Json data String serialized.
      */
     public void setPopulateDataAsync(String jsonString) {
-        String js = String.format(JS_FUNC_SET_POPULATEDATA, jsonString);
         if (webViewLoaded) {
-            webView.loadUrl(js);
-            webView.loadUrl(JS_FUNC_UPDATE_FORMDATA);
+            jsQueue.enqueueCall(FormScripts.JS_FUNC_SET_POPULATEDATA, jsonString);
+            //With delta sync the page sends the new data itself
+            if (!deltaSyncEnabled) {
+                updateFormData();
+            }
         } else {
-            pendingJs.add(js);
-            pendingJs.add(JS_FUNC_UPDATE_FORMDATA);
+            pendingJs.add(FormScripts.populateWithData(jsonString));
         }
     }
 
 
     /**
-     * Adds custom css to form webview.
+     * Adds custom css to form webview. The file is read in background, load() waits for it.
      *
      * @param cssFilePath       Path of the file. It must be located on assets folder. Example: forms/custom.css
      * @param overrideAllStyles True ignore previous form css properties, false preserves the previous values and adds new css
      */
-    public void addCSSFile(String cssFilePath, boolean overrideAllStyles) {
-        InputStream customCss;
-        try {
-            customCss = getActivity().getAssets().open(cssFilePath);
-        } catch (IOException e) {
-            Log.e("MobileForms", "Custom Css file was not found on assets/" + cssFilePath + ". Exception: " + e);
-            return;
-        }
-            String cssData = readText(customCss);
-            if (stringIsEmpty(cssData)) {
-                Log.e("MobileForms", "Could not read CSS");
-                return;
+    public void addCSSFile(final String cssFilePath, final boolean overrideAllStyles) {
+        final AssetManager assets = getActivity().getAssets();
+        final FormStateStore store = getStateStore();
+        pendingAssets++;
+        BackgroundIO.execute(new BackgroundIO.Task<String>() {
+            @Override
+            public String run() {
+                InputStream customCss;
+                try {
+                    customCss = assets.open(cssFilePath);
+                } catch (IOException e) {
+                    Log.e("MobileForms", "Custom Css file was not found on assets/" + cssFilePath + ". Exception: " + e);
+                    return null;
+                }
+                String js = readJsCall(customCss, FormScripts.JS_FUNC_ADD_CSS_FILE_PREFIX,
+                        FormScripts.addCSSFileSuffix(overrideAllStyles));
+                if (js == null) {
+                    Log.e("MobileForms", "Could not read CSS");
+                    return null;
+                }
+                return store != null ? store.share(js) : js;
             }
-            cssData = escapeJs(cssData);
-            String js = String.format(JS_FUNC_ADD_CSS_FILE, cssData, overrideAllStyles);
-            if (webViewLoaded) {
-                webView.loadUrl(js);
-            } else {
-                pendingJs.add(js);
+        }, new BackgroundIO.Callback<String>() {
+            @Override
+            public void onDone(String js) {
+                if (js != null) {
+                    addRestorableJs(js);
+                }
+                onAssetLoaded();
             }
-            restorableJs.add(js);
+        });
     }
 
     /**
-     * Adds custom js to form webview.
+     * Adds custom js to form webview. The file is read in background, load() waits for it.
      *
      * @param jsFilePath Path of the file. It must be located on assets folder. Example: forms/custom.js
      */
-    public void addJSFile(String jsFilePath) {
-        InputStream customJs;
-        try {
-            customJs = getActivity().getAssets().open(jsFilePath);
-        } catch (IOException e) {
-            Log.e("MobileForms", "Custom Js file was not found on assets/" + jsFilePath + ". Exception: " + e);
+    public void addJSFile(final String jsFilePath) {
+        final AssetManager assets = getActivity().getAssets();
+        final FormStateStore store = getStateStore();
+        pendingAssets++;
+        BackgroundIO.execute(new BackgroundIO.Task<String>() {
+            @Override
+            public String run() {
+                InputStream customJs;
+                try {
+                    customJs = assets.open(jsFilePath);
+                } catch (IOException e) {
+                    Log.e("MobileForms", "Custom Js file was not found on assets/" + jsFilePath + ". Exception: " + e);
+                    return null;
+                }
+                String js = readJsCall(customJs, FormScripts.JS_FUNC_ADD_JS_FILE_PREFIX, FormScripts.JS_FUNC_ADD_JS_FILE_SUFFIX);
+                if (js == null) {
+                    Log.e("MobileForms", "Could not read JS");
+                    return null;
+                }
+                return store != null ? store.share(js) : js;
+            }
+        }, new BackgroundIO.Callback<String>() {
+            @Override
+            public void onDone(String js) {
+                if (js != null) {
+                    customJsAdded = true;
+                    addRestorableJs(js);
+                }
+                onAssetLoaded();
+            }
+        });
+    }
+
+    /**
+     * @return the store of the saved state, or null if the state is kept in the Bundle.
+     */
+    private FormStateStore getStateStore() {
+        return statePersistence == StatePersistence.FILES ? FormStateStore.getInstance(getActivity()) : null;
+    }
+
+    private void addRestorableJs(String js) {
+        //Apps add their custom files again after a configuration change, they are restored already
+        if (restorableJs.contains(js)) {
             return;
         }
+        if (webViewLoaded) {
+            jsQueue.enqueue(js);
+        } else {
+            pendingJs.add(js);
+        }
+        restorableJs.add(js);
+    }
 
-            String jsData = readText(customJs);
-            if (stringIsEmpty(jsData)) {
-                Log.e("MobileForms", "Could not read JS");
-                return;
-            }
-            jsData = escapeJs(jsData);
-            String js = String.format(JS_FUNC_ADD_JS_FILE, jsData);
-            if (webViewLoaded) {
-                webView.loadUrl(js);
-            } else {
-                pendingJs.add(js);
-            }
-            restorableJs.add(js);
+    private void onAssetLoaded() {
+        pendingAssets--;
+        if (pendingAssets == 0 && loadWhenAssetsLoaded) {
+            load();
+        }
     }
 
     /**
-     * Get the current form errors. The result will be delivered to the listener through onGetFormErrors callback.
+     * Get the current form errors. The result will be delivered through the returned request and to the listener through
+     * onGetFormErrors callback.
+     *
+     * @return request completed with the form errors as json String serialized.
      */
-    public void getFormErrors() {
-        webView.loadUrl(JS_FUNC_GET_FORM_ERRORS);
+    public FormRequest<String> getFormErrors() {
+        final FormRequest<String> request = new FormRequest<>();
+        requestResult(FormScripts.JS_EXPR_FORM_ERRORS, new ResultHandler(request) {
+            @Override
+            void onResult(String value) {
+                if (listener != null) {
+                    listener.onGetFormErrors(value);
+                }
+                request.complete(value);
+            }
+        });
+        return request;
     }
 
     /**
-     * Checks if the current form is valid. The result will be delivered to the listener through onFormValid callback.
+     * Checks if the current form is valid. The result will be delivered through the returned request and to the listener
+     * through onFormValid callback. The page tells the form every time its validity changes, so once the form is built
+     * the result is delivered right away, without calling into the page.
+     *
+     * @return request completed with true if the form is valid, false otherwise.
      */
-    public void isFormValid() {
-        webView.loadUrl(JS_FUNC_IS_FORM_VALID);
+    public FormRequest<Boolean> isFormValid() {
+        final FormRequest<Boolean> request = new FormRequest<>();
+        if (formValid != null) {
+            if (listener != null) {
+                listener.onFormValid(formValid);
+            }
+            request.complete(formValid);
+            return request;
+        }
+        requestResult(FormScripts.JS_EXPR_IS_FORM_VALID, new ResultHandler(request) {
+            @Override
+            void onResult(String value) {
+                boolean formValid = Boolean.parseBoolean(value);
+                if (listener != null) {
+                    listener.onFormValid(formValid);
+                }
+                request.complete(formValid);
+            }
+        });
+        return request;
     }
 
     private void updateFormData() {
-        webView.loadUrl(JS_FUNC_UPDATE_FORMDATA);
+        requestResult(FormScripts.JS_EXPR_FORM_DATA, new ResultHandler() {
+            @Override
+            void onResult(String value) {
+                jsonPopulateData = value;
+                if (value != null) {
+                    saveDraft(value, true);
+                }
+            }
+        });
     }
 
+    /**
+     * Evaluates a JavaScript expression in the form page and delivers its value to the handler.
+     */
+    private void requestResult(String jsExpression, ResultHandler handler) {
+        int requestId = nextRequestId++;
+        handler.expression = jsExpression;
+        handler.startTime = System.nanoTime();
+        pendingResults.put(requestId, handler);
+        jsQueue.enqueue(FormScripts.postResult(requestId, jsExpression));
+    }
 
-    private FormEventType getFormEventType(String type, String value) {
-        if (type.equals(TYPE_SUBMIT) && value.equals(VALUE_VALID)) {
-            return FormEventType.SUBMIT;
-        }
-        if (type.equals(TYPE_SUBMIT) && value.equals(VALUE_INVALID)) {
-            return FormEventType.SUBMIT_INVALID;
+    private void reportMetric(FormMetrics.Phase phase, String name, double durationMillis, int payloadSize) {
+        if (metrics != null) {
+            metrics.onMetric(new FormMetrics.Event(phase, name, durationMillis, payloadSize, fieldCount));
         }
-        if (type.equals(TYPE_FOCUS_IN)) {
-            return FormEventType.FOCUS_IN;
-        }
-        if (type.equals(TYPE_FOCUS_OUT)) {
-            return FormEventType.FOCUS_OUT;
-        }
-        if (type.equals(TYPE_CHANGE)) {
-            return FormEventType.CHANGE;
+    }
+
+    private static double elapsedMillis(long startTime) {
+        return (System.nanoTime() - startTime) / 1000000.0;
+    }
+
+    /**
+     * Handles the value of a request sent to the page. Optionally bound to the public request, so it can be cancelled.
+     */
+    private abstract static class ResultHandler {
+
+        private final FormRequest<?> request;
+        private String expression;
+        private long startTime;
+
+        ResultHandler() {
+            this(null);
         }
-        if (type.equals(TYPE_VALIDATE_ERROR)) {
-            return FormEventType.VALIDATE_ERROR;
+
+        ResultHandler(FormRequest<?> request) {
+            this.request = request;
         }
-        if (type.equals(TYPE_LINK)) {
-            return FormEventType.LINK;
+
+        abstract void onResult(String value);
+
+        void cancel() {
+            if (request != null) {
+                request.cancel();
+            }
         }
-        return FormEventType.OTHER;
     }
 
-    private String escapeJs(String js) {
-        String result = js;
-        result = result.replace("\\", "\\\\");
-        result = result.replace("\"", "\\\"");
-        result = result.replace("\'", "\\\'");
-        result = result.replace("\n", "\\n");
-        result = result.replace("\r", "\\r");
-        result = result.replace("\f", "\\f");
-        return result;
+
+    /**
+     * Compiled definition and the field chunks it needs, both prepared in background.
+     */
+    private static final class CompiledForm {
+
+        final String json;
+        final Map<String, String> fieldScripts;
+
+        CompiledForm(String json, Map<String, String> fieldScripts) {
+            this.json = json;
+            this.fieldScripts = fieldScripts;
+        }
     }
 
-    private String readText(InputStream inputStream) {
-        if (inputStream == null) return "";
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-        StringBuilder sb = new StringBuilder();
-        String line;
+    /**
+     * Reads a custom file and returns the JavaScript call that adds it, or null if it is empty or cannot be read.
+     */
+    private static String readJsCall(InputStream inputStream, String prefix, String suffix) {
         try {
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            reader.close();
+            return AssetText.readJsCall(inputStream, prefix, suffix);
         } catch (IOException e) {
-            return "";
+            return null;
         }
-        return sb.toString();
-    }
-
-    private boolean stringIsEmpty(String string) {
-        return string == null || !"".equals(string);
     }
 
 }
@@ -0,0 +1,349 @@
+package com.okode.mobileforms;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the form page and its assets, through WebViewClient.shouldInterceptRequest(). The page, the bundle of its
+ * scripts, the templates and the field chunks are kept in memory, so only the first page load of the process reads
+ * them from the AssetManager; any other file the page fetches, such as images, is streamed from the assets.
+ * The page is served with its scripts joined in a single bundle, and with the Android template instead of the iOS one
+ * it links by default, so the page does not fetch and parse a stylesheet it is going to replace.
+ * Requests are answered on the WebView I/O threads. Files are read outside the lock, so a cold read does not hold up
+ * the requests of other WebViews, and only the result is published under it. It is thread safe.
+ */
+final class FormAssetServer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //Url of the assets of the form page, and their directory in the AssetManager
+    private static final String ASSETS_URL = "file:///android_asset/mobileforms/";
+    private static final String ASSETS_DIRECTORY = "mobileforms/";
+
+    //Page, bundle of its scripts (served only from memory) and templates
+    private static final String PAGE = "index.mobileforms.html";
+    static final String BUNDLE = "mobileforms.bundle.js";
+    private static final String TEMPLATE_DEFAULT = "templates/mobileforms.ios.css";
+    private static final String TEMPLATE_ANDROID = "templates/mobileforms.android.css";
+    private static final String TEMPLATES_DIRECTORY = "templates/";
+
+    //Builders of these field types are chunks of their own, injected by Form only when the form has such fields
+    private static final String FIELDS_DIRECTORY = "fields/";
+    private static final Map<FormDefinition.FieldType, String> FIELD_CHUNKS = new EnumMap<>(FormDefinition.FieldType.class);
+
+    static {
+        FIELD_CHUNKS.put(FormDefinition.FieldType.DATE, FIELDS_DIRECTORY + "mobileforms.field.date.js");
+        FIELD_CHUNKS.put(FormDefinition.FieldType.TIME, FIELDS_DIRECTORY + "mobileforms.field.time.js");
+        FIELD_CHUNKS.put(FormDefinition.FieldType.FILE, FIELDS_DIRECTORY + "mobileforms.field.file.js");
+        FIELD_CHUNKS.put(FormDefinition.FieldType.RANGE, FIELDS_DIRECTORY + "mobileforms.field.range.js");
+        FIELD_CHUNKS.put(FormDefinition.FieldType.PHONEITEM, FIELDS_DIRECTORY + "mobileforms.field.phoneitem.js");
+    }
+
+    //Field types of a definition, whatever its format
+    private static final Pattern FIELD_TYPE = Pattern.compile("\"type\"\\s*:\\s*\"(\\w+)\"");
+
+    //Select and radio fields whose options come from an OptionSource have a chunk of their own as well
+    private static final Pattern OPTION_SOURCE = Pattern.compile("\"optionsource\"\\s*:");
+    private static final String OPTION_SOURCE_CHUNK = FIELDS_DIRECTORY + "mobileforms.field.optionsource.js";
+
+    //Scripts of the page, by relative path
+    private static final Pattern SCRIPT_TAG = Pattern.compile("<script src=\"([\\w.\\-/]+\\.js)\"></script>");
+    private static final Pattern BETWEEN_TAGS = Pattern.compile("\\s*");
+
+    private static FormAssetServer instance;
+
+    private final AssetManager assets;
+    //Files kept in memory, see isCached(), and the field chunks as scripts, guarded by this
+    private final Map<String, byte[]> cache = new HashMap<>();
+    private final Map<String, String> fieldScripts = new HashMap<>();
+
+    private FormAssetServer(AssetManager assets) {
+        this.assets = assets;
+    }
+
+    static synchronized FormAssetServer getInstance(Context context) {
+        if (instance == null) {
+            instance = new FormAssetServer(context.getApplicationContext().getAssets());
+        }
+        return instance;
+    }
+
+    /**
+     * Answers a request of a WebView.
+     *
+     * @param url requested url.
+     * @return the response, or null if the url is not an asset of the form page or it cannot be read.
+     */
+    WebResourceResponse serve(String url) {
+        if (url == null || !url.startsWith(ASSETS_URL)) {
+            return null;
+        }
+        String path = url.substring(ASSETS_URL.length());
+        int end = indexOfAny(path, "?#");
+        if (end >= 0) {
+            path = path.substring(0, end);
+        }
+        InputStream data;
+        if (isCached(path)) {
+            byte[] bytes = get(path);
+            if (bytes == null) {
+                return null;
+            }
+            data = new ByteArrayInputStream(bytes);
+        } else {
+            try {
+                data = assets.open(ASSETS_DIRECTORY + path);
+            } catch (IOException e) {
+                //Not an asset, the WebView answers it as usual
+                return null;
+            }
+        }
+        String mimeType = getMimeType(path);
+        String encoding = mimeType.startsWith("text/") || mimeType.equals("application/javascript") ? "UTF-8" : null;
+        return new WebResourceResponse(mimeType, encoding, data);
+    }
+
+    /**
+     * @return true if the file is kept in memory: the page, the bundle, the templates and the field chunks.
+     */
+    static boolean isCached(String path) {
+        return PAGE.equals(path) || BUNDLE.equals(path) || path.startsWith(TEMPLATES_DIRECTORY)
+                || path.startsWith(FIELDS_DIRECTORY);
+    }
+
+    private byte[] get(String path) {
+        byte[] bytes = getCached(path);
+        if (bytes != null) {
+            return bytes;
+        }
+        if (PAGE.equals(path) || BUNDLE.equals(path)) {
+            loadPage();
+            return getCached(path);
+        }
+        try {
+            bytes = readBytes(assets.open(ASSETS_DIRECTORY + path));
+        } catch (IOException e) {
+            //Not an asset, the WebView answers it as usual
+            return null;
+        }
+        return publish(path, bytes);
+    }
+
+    private synchronized byte[] getCached(String path) {
+        return cache.get(path);
+    }
+
+    /**
+     * Keeps a file read outside the lock. If another thread read it first, its copy is kept and returned.
+     */
+    private synchronized byte[] publish(String path, byte[] bytes) {
+        byte[] published = cache.get(path);
+        if (published != null) {
+            return published;
+        }
+        cache.put(path, bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the chunks with the builders of the field types used by a form, which the page does not load itself.
+     *
+     * @param jsonForm form definition as json String serialized.
+     * @return the source of the chunks, by path, in a stable order.
+     */
+    Map<String, String> getFieldScripts(String jsonForm) {
+        Map<String, String> scripts = new LinkedHashMap<>();
+        for (String chunk : getFieldChunks(jsonForm)) {
+            String script = getFieldScript(chunk);
+            if (script != null) {
+                scripts.put(chunk, script);
+            }
+        }
+        return scripts;
+    }
+
+    private String getFieldScript(String chunk) {
+        synchronized (this) {
+            String script = fieldScripts.get(chunk);
+            if (script != null) {
+                return script;
+            }
+        }
+        byte[] bytes = get(chunk);
+        if (bytes == null) {
+            Log.e("MobileForms", "Error reading " + chunk);
+            return null;
+        }
+        //The script is run as a command, a // comment in its last line must not swallow the code after it
+        String script = new String(bytes, UTF8) + "\n";
+        synchronized (this) {
+            String published = fieldScripts.get(chunk);
+            if (published != null) {
+                return published;
+            }
+            fieldScripts.put(chunk, script);
+        }
+        return script;
+    }
+
+    /**
+     * @param jsonForm form definition as json String serialized.
+     * @return the paths of the chunks needed by the field types of the definition, in the order of FieldType, and the
+     * chunk of option sources last.
+     */
+    static Set<String> getFieldChunks(String jsonForm) {
+        EnumSet<FormDefinition.FieldType> types = EnumSet.noneOf(FormDefinition.FieldType.class);
+        Matcher matcher = FIELD_TYPE.matcher(jsonForm);
+        while (matcher.find()) {
+            FormDefinition.FieldType type = FormDefinition.FieldType.fromName(matcher.group(1));
+            if (type != null) {
+                types.add(type);
+            }
+        }
+        Set<String> chunks = new LinkedHashSet<>();
+        for (FormDefinition.FieldType type : types) {
+            if (FIELD_CHUNKS.containsKey(type)) {
+                chunks.add(FIELD_CHUNKS.get(type));
+            }
+        }
+        if (OPTION_SOURCE.matcher(jsonForm).find()) {
+            chunks.add(OPTION_SOURCE_CHUNK);
+        }
+        return chunks;
+    }
+
+    private void loadPage() {
+        String html;
+        try {
+            html = AssetText.read(assets.open(ASSETS_DIRECTORY + PAGE));
+        } catch (IOException e) {
+            Log.e("MobileForms", "Error reading " + PAGE + ". Exception: " + e);
+            return;
+        }
+        List<String> scripts = new ArrayList<>();
+        String page = rewritePage(html, scripts);
+        StringBuilder bundle = new StringBuilder(256 * 1024);
+        try {
+            for (String script : scripts) {
+                appendScript(bundle, AssetText.read(assets.open(ASSETS_DIRECTORY + script)));
+            }
+        } catch (IOException e) {
+            //The page is served as it is, with its own script tags
+            Log.e("MobileForms", "Error reading the scripts of " + PAGE + ". Exception: " + e);
+            page = html;
+            bundle = null;
+        }
+        //The bundle goes first, a page published with the bundle tag always finds it
+        if (bundle != null) {
+            publish(BUNDLE, bundle.toString().getBytes(UTF8));
+        }
+        publish(PAGE, page.getBytes(UTF8));
+    }
+
+    /**
+     * Replaces the consecutive script tags of the page by a single tag of the bundle, without the field chunks, and the
+     * default template by the Android one.
+     *
+     * @param html    the page.
+     * @param scripts receives the paths of the replaced scripts, in order.
+     * @return the page to serve.
+     */
+    static String rewritePage(String html, List<String> scripts) {
+        String page = html.replace(TEMPLATE_DEFAULT, TEMPLATE_ANDROID);
+        Matcher matcher = SCRIPT_TAG.matcher(page);
+        int start = -1;
+        int end = -1;
+        while (matcher.find()) {
+            //Only a run of tags is joined, an inline script between them must keep running where it is
+            if (start >= 0 && !BETWEEN_TAGS.matcher(page.substring(end, matcher.start())).matches()) {
+                break;
+            }
+            if (start < 0) {
+                start = matcher.start();
+            }
+            end = matcher.end();
+            //Field chunks are left out, Form injects the ones the form needs
+            if (!matcher.group(1).startsWith(FIELDS_DIRECTORY)) {
+                scripts.add(matcher.group(1));
+            }
+        }
+        if (scripts.size() < 2) {
+            scripts.clear();
+            return page;
+        }
+        return page.substring(0, start) + "<script src=\"" + BUNDLE + "\"></script>" + page.substring(end);
+    }
+
+    /**
+     * Appends a script to the bundle. Every script ends its last statement and line, as if it was a file on its own.
+     */
+    static void appendScript(StringBuilder bundle, String script) {
+        bundle.append(script).append("\n;\n");
+    }
+
+    static String getMimeType(String path) {
+        String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+        switch (extension) {
+            case "html":
+                return "text/html";
+            case "js":
+                return "application/javascript";
+            case "css":
+                return "text/css";
+            case "png":
+                return "image/png";
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "gif":
+                return "image/gif";
+            case "svg":
+                return "image/svg+xml";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    private static int indexOfAny(String s, String chars) {
+        for (int i = 0; i < s.length(); i++) {
+            if (chars.indexOf(s.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] readBytes(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(inputStream.available(), 1024));
+            byte[] buffer = new byte[8 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Java side copy of the form data, kept up to date with the deltas sent by the page.
+ * Values are stored by root key, the top level keys of getFormData() (e.g. 'phone' for the field 'phone[][type]'),
+ * as the JSON values produced by the page (String, Boolean, Number, JSONObject or JSONArray).
+ */
+final class FormDataModel {
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private String json;
+
+    /**
+     * Replaces the whole model with a form data snapshot.
+     *
+     * @param formData form data as json String serialized, null clears the model.
+     * @throws JSONException if formData is not a JSON object.
+     */
+    void replace(String formData) throws JSONException {
+        values.clear();
+        json = null;
+        if (formData != null) {
+            merge(formData);
+        }
+    }
+
+    /**
+     * Merges the changed values into the model. A null value removes the key.
+     *
+     * @param delta changed values by root key as json String serialized.
+     * @throws JSONException if delta is not a JSON object.
+     */
+    void merge(String delta) throws JSONException {
+        Object parsed = new JSONTokener(delta).nextValue();
+        if (!(parsed instanceof JSONObject)) {
+            throw new JSONException("Form data is not a JSON object: " + delta);
+        }
+        JSONObject changes = (JSONObject) parsed;
+        Iterator<String> keys = changes.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = changes.get(key);
+            if (value == JSONObject.NULL) {
+                values.remove(key);
+            } else {
+                values.put(key, value);
+            }
+        }
+        json = null;
+    }
+
+    /**
+     * @param key root key of the form data.
+     * @return the JSON value of the key, or null if it has no value.
+     */
+    Object get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * @return number of root keys with value.
+     */
+    int size() {
+        return values.size();
+    }
+
+    /**
+     * @return the form data as json String serialized. The result is cached until the model changes.
+     */
+    String toJson() {
+        if (json == null) {
+            json = new JSONObject(values).toString();
+        }
+        return json;
+    }
+
+}
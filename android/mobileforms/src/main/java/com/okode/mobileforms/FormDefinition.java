@@ -0,0 +1,392 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed form definition: its sections and their fields, with the attributes described in the README.
+ * It is immutable, so a definition parsed once can be shared by several forms with Form.setForm(FormDefinition).
+ * toJson() gives the compact JSON sent to the form page, without the attributes, fields and sections the page ignores.
+ *
+ * FormDefinition definition = FormDefinition.parse(jsonForm);
+ * int fields = definition.getFieldCount();
+ * form.setForm(definition);
+ */
+public final class FormDefinition {
+
+    //Keys of the definition, its sections and fields
+    private static final String KEY_ID = "id";
+    private static final String KEY_SECTIONS = "sections";
+    private static final String KEY_SUBMIT = "submit";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_FIELDS = "fields";
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_LABEL = "label";
+    private static final String KEY_REQUIRED = "required";
+
+    //Field attributes read by mobileforms.builder.js, the rest are dropped
+    private static final Set<String> ATTRIBUTES = new HashSet<>(Arrays.asList(
+            KEY_TYPE, KEY_NAME, KEY_LABEL, KEY_REQUIRED, "placeholder", "value", "filter", "error", "description",
+            "textalign", "maxlength", "max", "min", "step", "checked", "dateformat", "widthpercent", "yearsDiff",
+            "optionvalues", "optionlabels", "nametype", "namephone", "phonetypevalues", "phonetypelabels", "onclick",
+            "event", "optionsource"));
+
+    /**
+     * Types of fields the form page can render.
+     */
+    public enum FieldType {
+        TEXT("text"), PASSWORD("password"), NUMBER("number"), DATE("date"), TIME("time"), TEL("tel"), EMAIL("email"),
+        HIDDEN("hidden"), TEXTAREA("textarea"), RANGE("range"), SELECT("select"), RADIO("radio"),
+        CHECKBOX("checkbox"), FILE("file"), PHONEITEM("phoneitem"), LINK("link");
+
+        private static final Map<String, FieldType> BY_NAME = new HashMap<>();
+
+        static {
+            for (FieldType type : values()) {
+                BY_NAME.put(type.name, type);
+            }
+        }
+
+        private final String name;
+
+        FieldType(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the value of the 'type' attribute.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name value of the 'type' attribute.
+         * @return the type, or null if the page cannot render it.
+         */
+        public static FieldType fromName(String name) {
+            return BY_NAME.get(name);
+        }
+    }
+
+    private final String id;
+    private final Object submit;
+    private final List<Section> sections;
+    private final List<Field> fields;
+    private final Map<String, Field> fieldsByName = new HashMap<>();
+    private final String json;
+
+    private FormDefinition(String id, Object submit, List<Section> sections) {
+        this.id = id;
+        this.submit = submit;
+        this.sections = Collections.unmodifiableList(sections);
+        List<Field> allFields = new ArrayList<>();
+        for (Section section : sections) {
+            allFields.addAll(section.fields);
+        }
+        this.fields = Collections.unmodifiableList(allFields);
+        for (Field field : allFields) {
+            if (field.name != null && !fieldsByName.containsKey(field.name)) {
+                fieldsByName.put(field.name, field);
+            }
+        }
+        this.json = serialize();
+    }
+
+    /**
+     * Parses a form definition.
+     *
+     * @param jsonForm form definition as json String serialized.
+     * @return the parsed definition.
+     * @throws JSONException if the definition is not a valid JSON object.
+     */
+    public static FormDefinition parse(String jsonForm) throws JSONException {
+        Object value = new JSONTokener(jsonForm).nextValue();
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("Form definition is not a JSON object");
+        }
+        return parse((JSONObject) value);
+    }
+
+    static FormDefinition parse(JSONObject definition) {
+        List<Section> sections = new ArrayList<>();
+        JSONArray jsonSections = definition.optJSONArray(KEY_SECTIONS);
+        for (int i = 0; jsonSections != null && i < jsonSections.length(); i++) {
+            JSONObject jsonSection = jsonSections.optJSONObject(i);
+            JSONArray jsonFields = jsonSection != null ? jsonSection.optJSONArray(KEY_FIELDS) : null;
+            List<Field> fields = new ArrayList<>();
+            for (int j = 0; jsonFields != null && j < jsonFields.length(); j++) {
+                JSONObject jsonField = jsonFields.optJSONObject(j);
+                //The page skips fields without a type it can render
+                FieldType type = jsonField != null ? FieldType.fromName(jsonField.optString(KEY_TYPE)) : null;
+                if (type != null) {
+                    fields.add(new Field(type, jsonField));
+                }
+            }
+            //Sections without fields are kept, the page styles every section by its index (field_groupN)
+            sections.add(new Section(jsonSection != null ? optString(jsonSection, KEY_TITLE) : null, fields));
+        }
+        Object submit = definition.opt(KEY_SUBMIT);
+        if (submit == JSONObject.NULL || submit instanceof JSONObject || submit instanceof JSONArray) {
+            submit = null;
+        }
+        return new FormDefinition(optString(definition, KEY_ID), submit, sections);
+    }
+
+    /**
+     * @return the 'id' of the definition, or null.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the text of the submit button, or null if the form has none.
+     */
+    public String getSubmit() {
+        return submit != null ? String.valueOf(submit) : null;
+    }
+
+    /**
+     * @return the sections of the form, in order.
+     */
+    public List<Section> getSections() {
+        return sections;
+    }
+
+    /**
+     * @return the fields of all the sections, in order.
+     */
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the number of fields of the form.
+     */
+    public int getFieldCount() {
+        return fields.size();
+    }
+
+    /**
+     * @param name name of the field, as in the definition, e.g. 'phone[]'.
+     * @return the first field with that name, or null.
+     */
+    public Field getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * @return the definition as compact json String serialized, with only what the form page reads.
+     */
+    public String toJson() {
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    private String serialize() {
+        StringBuilder sb = new StringBuilder(64 + fields.size() * 96);
+        sb.append('{');
+        if (id != null) {
+            appendKey(sb, KEY_ID);
+            appendValue(sb, id);
+            sb.append(',');
+        }
+        appendKey(sb, KEY_SECTIONS);
+        sb.append('[');
+        for (int i = 0; i < sections.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sections.get(i).serialize(sb);
+        }
+        sb.append(']');
+        if (submit != null) {
+            sb.append(',');
+            appendKey(sb, KEY_SUBMIT);
+            appendValue(sb, submit);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendKey(StringBuilder sb, String key) {
+        sb.append(JSONObject.quote(key)).append(':');
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        if (value instanceof String) {
+            String quoted = JSONObject.quote((String) value);
+            //The JSON goes in a JavaScript literal, where line and paragraph separators end the line
+            if (quoted.indexOf('\u2028') >= 0 || quoted.indexOf('\u2029') >= 0) {
+                quoted = quoted.replace("\u2028", "\\u2028").replace("\u2029", "\\u2029");
+            }
+            sb.append(quoted);
+        } else if (value instanceof Number) {
+            try {
+                sb.append(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                //NaN and infinities cannot come from parsed JSON
+                sb.append("null");
+            }
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static String optString(JSONObject object, String key) {
+        Object value = object.opt(key);
+        return value != null && value != JSONObject.NULL ? String.valueOf(value) : null;
+    }
+
+    /**
+     * Section of the form, a group of fields with an optional title.
+     */
+    public static final class Section {
+
+        private final String title;
+        private final List<Field> fields;
+
+        private Section(String title, List<Field> fields) {
+            this.title = title;
+            this.fields = Collections.unmodifiableList(fields);
+        }
+
+        /**
+         * @return the title of the section, or null.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the fields of the section, in order.
+         */
+        public List<Field> getFields() {
+            return fields;
+        }
+
+        private void serialize(StringBuilder sb) {
+            sb.append('{');
+            if (title != null) {
+                appendKey(sb, KEY_TITLE);
+                appendValue(sb, title);
+                sb.append(',');
+            }
+            appendKey(sb, KEY_FIELDS);
+            sb.append('[');
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                fields.get(i).serialize(sb);
+            }
+            sb.append("]}");
+        }
+    }
+
+    /**
+     * Field of the form. Attributes keep the JSON values of the definition (String, Number or Boolean).
+     */
+    public static final class Field {
+
+        private final FieldType type;
+        private final String name;
+        private final Map<String, Object> attributes;
+
+        private Field(FieldType type, JSONObject field) {
+            this.type = type;
+            Map<String, Object> values = new LinkedHashMap<>();
+            //The type goes first, so serialized fields are easy to read
+            values.put(KEY_TYPE, type.getName());
+            JSONArray keys = field.names();
+            for (int i = 0; keys != null && i < keys.length(); i++) {
+                String key = keys.optString(i);
+                Object value = field.opt(key);
+                if (ATTRIBUTES.contains(key) && !KEY_TYPE.equals(key) && value != null && value != JSONObject.NULL
+                        && !(value instanceof JSONObject) && !(value instanceof JSONArray)) {
+                    values.put(key, value);
+                }
+            }
+            this.attributes = Collections.unmodifiableMap(values);
+            this.name = getString(KEY_NAME);
+        }
+
+        /**
+         * @return the type of the field.
+         */
+        public FieldType getType() {
+            return type;
+        }
+
+        /**
+         * @return the 'name' of the field, or null.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the 'label' of the field, or null.
+         */
+        public String getLabel() {
+            return getString(KEY_LABEL);
+        }
+
+        /**
+         * @return true if the field is required, as the page understands 'required': 1, "1", true or "true".
+         */
+        public boolean isRequired() {
+            Object required = attributes.get(KEY_REQUIRED);
+            return required != null && (Boolean.TRUE.equals(required) || "true".equals(required)
+                    || "1".equals(String.valueOf(required).trim()));
+        }
+
+        /**
+         * @param attribute name of the attribute, e.g. 'filter'.
+         * @return the value of the attribute as a String, or null if the field does not have it.
+         */
+        public String getString(String attribute) {
+            Object value = attributes.get(attribute);
+            return value != null ? String.valueOf(value) : null;
+        }
+
+        /**
+         * @return the attributes of the field the page reads, by name.
+         */
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        private void serialize(StringBuilder sb) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                appendKey(sb, attribute.getKey());
+                appendValue(sb, attribute.getValue());
+            }
+            sb.append('}');
+        }
+    }
+
+}
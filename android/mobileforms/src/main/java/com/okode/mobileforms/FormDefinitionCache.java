@@ -0,0 +1,249 @@
+package com.okode.mobileforms;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled form definitions, keyed by a hash of the definition contents.
+ * Compiling a definition validates it and serializes it again as compact JSON with only what the page reads, ready to
+ * be sent to the page. Compiled definitions are kept in a memory LRU cache bounded by size and keyed by the definition
+ * itself, so a hit costs a String comparison, and in an app-private disk LRU cache bounded by number of entries and
+ * keyed by the SHA-1 of the definition, so the same definition is compiled once, even across launches.
+ * Parsed definitions are kept in a small memory LRU cache too, so forms with the same definition share the model.
+ * It has no Android dependencies besides logging, so it can be tested and benchmarked on the JVM. It is thread safe.
+ */
+final class FormDefinitionCache {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    //Memory cache size, in chars of the definitions and their compiled forms
+    private static final int MEMORY_CACHE_SIZE = 512 * 1024;
+    private static final int DISK_CACHE_ENTRIES = 32;
+    private static final int PARSED_CACHE_ENTRIES = 8;
+    private static final String DISK_CACHE_DIRECTORY = "mobileforms/forms";
+    //Version of the compiled format, files of older versions are not read and go away as the cache is trimmed
+    private static final String DISK_CACHE_EXTENSION = ".v2.json";
+
+    private static FormDefinitionCache instance;
+
+    //Compiled definitions and parsed ones by definition, in access order
+    private final Map<String, String> memoryCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, FormDefinition> parsedCache = new LinkedHashMap<>(16, 0.75f, true);
+    private int memoryCacheSize;
+    private final File directory;
+
+    FormDefinitionCache(File directory) {
+        this.directory = directory;
+    }
+
+    static synchronized FormDefinitionCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new FormDefinitionCache(new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIRECTORY));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the compiled form of a definition, compiling it only if it is not cached.
+     *
+     * @param jsonForm form definition as json String serialized.
+     * @return the definition as compact json String serialized.
+     * @throws JSONException if the definition is not a valid JSON object or array.
+     */
+    String compile(String jsonForm) throws JSONException {
+        String compiled = getCompiled(jsonForm);
+        if (compiled != null) {
+            return compiled;
+        }
+        //Files are written to a temporary file and renamed, so they can be read while other definitions are written,
+        //and definitions are compiled in parallel, see FormRegistry
+        File file = new File(directory, hash(jsonForm) + DISK_CACHE_EXTENSION);
+        compiled = read(file);
+        if (compiled == null) {
+            compiled = compact(jsonForm);
+            synchronized (this) {
+                write(file, compiled);
+                trimDiskCache();
+            }
+        }
+        putCompiled(jsonForm, compiled);
+        //The compiled form of a compiled definition is itself, so a form set with it does not compile it again
+        putCompiled(compiled, compiled);
+        return compiled;
+    }
+
+    /**
+     * Returns the parsed form of a definition, parsing it only if it is not cached.
+     *
+     * @param jsonForm form definition as json String serialized, compiled or not.
+     * @return the parsed definition, shared by all the callers.
+     * @throws JSONException if the definition is not a valid JSON object.
+     */
+    FormDefinition parse(String jsonForm) throws JSONException {
+        FormDefinition definition = getParsed(jsonForm);
+        if (definition == null) {
+            definition = FormDefinition.parse(jsonForm);
+            putParsed(jsonForm, definition);
+            //The compiled form of a compiled definition is itself
+            putParsed(definition.toJson(), definition);
+        }
+        return definition;
+    }
+
+    /**
+     * Removes all the compiled definitions, from memory and disk.
+     */
+    synchronized void clear() {
+        memoryCache.clear();
+        memoryCacheSize = 0;
+        parsedCache.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    static String hash(String jsonForm) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(jsonForm.getBytes(UTF8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String compact(String jsonForm) throws JSONException {
+        Object definition = new JSONTokener(jsonForm).nextValue();
+        if (definition instanceof JSONObject) {
+            FormDefinition parsed = FormDefinition.parse((JSONObject) definition);
+            putParsed(jsonForm, parsed);
+            return parsed.toJson();
+        }
+        //Definitions in the old array format are not modelled, the page gets them as they are
+        if (definition instanceof JSONArray) {
+            return definition.toString();
+        }
+        throw new JSONException("Form definition is not a JSON object or array");
+    }
+
+    private synchronized String getCompiled(String jsonForm) {
+        return memoryCache.get(jsonForm);
+    }
+
+    private synchronized void putCompiled(String jsonForm, String compiled) {
+        String previous = memoryCache.put(jsonForm, compiled);
+        if (previous != null) {
+            memoryCacheSize -= sizeOf(jsonForm, previous);
+        }
+        memoryCacheSize += sizeOf(jsonForm, compiled);
+        Iterator<Map.Entry<String, String>> eldest = memoryCache.entrySet().iterator();
+        while (memoryCacheSize > MEMORY_CACHE_SIZE && eldest.hasNext()) {
+            Map.Entry<String, String> entry = eldest.next();
+            memoryCacheSize -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the chars kept by an entry of the memory cache, a compiled definition is both its key and its value.
+     */
+    private static int sizeOf(String jsonForm, String compiled) {
+        return jsonForm == compiled ? compiled.length() : jsonForm.length() + compiled.length();
+    }
+
+    private synchronized FormDefinition getParsed(String jsonForm) {
+        return parsedCache.get(jsonForm);
+    }
+
+    private synchronized void putParsed(String jsonForm, FormDefinition definition) {
+        parsedCache.put(jsonForm, definition);
+        Iterator<String> eldest = parsedCache.keySet().iterator();
+        while (parsedCache.size() > PARSED_CACHE_ENTRIES && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static String read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder((int) file.length());
+        char[] buffer = new char[8192];
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), UTF8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Log.w("MobileForms", "Compiled form " + file.getName() + " could not be read. Exception: " + e);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return sb.toString();
+    }
+
+    private void write(File file, String compiled) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF8)) {
+            writer.write(compiled);
+        } catch (IOException e) {
+            Log.w("MobileForms", "Compiled form " + file.getName() + " could not be written. Exception: " + e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private void trimDiskCache() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= DISK_CACHE_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - DISK_CACHE_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.okode.mobileforms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Event sent by the form page through a mobileforms://event/?type=...&element=...&value=... navigation.
+ * It is parsed without android.net.Uri, so it can be tested and benchmarked on the JVM. Query values are decoded like
+ * Uri.getQueryParameter() does: '+' is a space, and malformed escapes are kept as they are.
+ */
+final class FormEvent {
+
+    //Strings that must be identified when redirecting a url
+    private static final String URL_PREFIX = "mobileforms://event";
+
+    //Query parameters of mobileforms:// urls
+    private static final String QUERY_ELEMENT = "element";
+    private static final String QUERY_VALUE = "value";
+    private static final String QUERY_TYPE = "type";
+
+    //Types and values of query parameters
+    private static final String TYPE_SUBMIT = "submit";
+    private static final String TYPE_FOCUS_IN = "focus";
+    private static final String TYPE_FOCUS_OUT = "focusout";
+    private static final String TYPE_CHANGE = "change";
+    private static final String TYPE_VALIDATE_ERROR = "validateerror";
+    private static final String TYPE_LINK = "link";
+    private static final String TYPE_VALIDITY_CHANGE = "validitychange";
+    private static final String TYPE_STEP_CHANGE = "stepchange";
+    static final String VALUE_VALID = "valid";
+    private static final String VALUE_INVALID = "invalid";
+
+    //Event types by the value of the type parameter, but submit, which depends on the value
+    private static final Map<String, Form.FormEventType> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put(TYPE_FOCUS_IN, Form.FormEventType.FOCUS_IN);
+        TYPES.put(TYPE_FOCUS_OUT, Form.FormEventType.FOCUS_OUT);
+        TYPES.put(TYPE_CHANGE, Form.FormEventType.CHANGE);
+        TYPES.put(TYPE_VALIDATE_ERROR, Form.FormEventType.VALIDATE_ERROR);
+        TYPES.put(TYPE_LINK, Form.FormEventType.LINK);
+        TYPES.put(TYPE_VALIDITY_CHANGE, Form.FormEventType.VALIDITY_CHANGE);
+        TYPES.put(TYPE_STEP_CHANGE, Form.FormEventType.STEP_CHANGE);
+    }
+
+    final Form.FormEventType type;
+    final String element;
+    final String value;
+
+    FormEvent(Form.FormEventType type, String element, String value) {
+        this.type = type;
+        this.element = element;
+        this.value = value;
+    }
+
+    /**
+     * Parses an url loaded by the form page.
+     *
+     * @param url url requested by the page.
+     * @return the event, or null if the url is not an event url.
+     */
+    static FormEvent parse(String url) {
+        if (url == null || !url.regionMatches(true, 0, URL_PREFIX, 0, URL_PREFIX.length())) {
+            return null;
+        }
+        int end = URL_PREFIX.length();
+        //The host must be exactly 'event'
+        if (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            return null;
+        }
+        String type = getQueryParameter(url, QUERY_TYPE);
+        String value = getQueryParameter(url, QUERY_VALUE);
+        return new FormEvent(getFormEventType(type, value), getQueryParameter(url, QUERY_ELEMENT), value);
+    }
+
+    static Form.FormEventType getFormEventType(String type, String value) {
+        if (TYPE_SUBMIT.equals(type)) {
+            return VALUE_VALID.equals(value) ? Form.FormEventType.SUBMIT
+                    : VALUE_INVALID.equals(value) ? Form.FormEventType.SUBMIT_INVALID : Form.FormEventType.OTHER;
+        }
+        Form.FormEventType eventType = type != null ? TYPES.get(type) : null;
+        return eventType != null ? eventType : Form.FormEventType.OTHER;
+    }
+
+    /**
+     * Returns the decoded value of the first query parameter with the given name, or null if there is none.
+     */
+    static String getQueryParameter(String url, String name) {
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        int end = url.indexOf('#', query);
+        if (end < 0) {
+            end = url.length();
+        }
+        int start = query + 1;
+        while (start <= end) {
+            int next = url.indexOf('&', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            int equals = url.indexOf('=', start);
+            if (equals < 0 || equals > next) {
+                equals = next;
+            }
+            if (equals - start == name.length() && url.regionMatches(start, name, 0, name.length())) {
+                return equals == next ? "" : decode(url, equals + 1, next);
+            }
+            start = next + 1;
+        }
+        return null;
+    }
+
+    private static String decode(String s, int start, int end) {
+        int i = start;
+        while (i < end && s.charAt(i) != '%' && s.charAt(i) != '+') {
+            i++;
+        }
+        if (i == end) {
+            return s.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(s, start, i);
+        ByteArrayOutputStream bytes = null;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (isEscape(s, i, end)) {
+                //Consecutive escapes are decoded together, they may be the bytes of a single UTF-8 char
+                if (bytes == null) {
+                    bytes = new ByteArrayOutputStream();
+                }
+                bytes.reset();
+                while (isEscape(s, i, end)) {
+                    bytes.write(Character.digit(s.charAt(i + 1), 16) << 4 | Character.digit(s.charAt(i + 2), 16));
+                    i += 3;
+                }
+                try {
+                    sb.append(bytes.toString("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                sb.append(c == '+' ? ' ' : c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isEscape(String s, int index, int end) {
+        return index + 2 < end && s.charAt(index) == '%'
+                && Character.digit(s.charAt(index + 1), 16) >= 0 && Character.digit(s.charAt(index + 2), 16) >= 0;
+    }
+
+}
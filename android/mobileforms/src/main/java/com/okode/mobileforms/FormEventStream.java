@@ -0,0 +1,218 @@
+package com.okode.mobileforms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers the events of the form page to the listener. Two things keep a busy listener from slowing down the page:
+ * - CHANGE events can be coalesced: the first change of an element opens a window, the following changes only update
+ * its value, and the last value is delivered when the window closes. Any other event closes all the open windows
+ * first, so a change is always delivered before the focus out or submit that follows it.
+ * - Events can be delivered on an executor, in batches. While a batch is being delivered new events are queued, and
+ * a CHANGE replaces the queued CHANGE of the same element when no other event of that element came after it, so the
+ * queue of a slow listener grows with the elements changed, not with the keys typed.
+ * post() and flush() must be called from the UI thread.
+ */
+final class FormEventStream {
+
+    /**
+     * Receives the events, on the UI thread or on the executor.
+     */
+    interface Sink {
+        void onEvent(FormEvent event);
+    }
+
+    /**
+     * Clock and delayed tasks of the UI thread.
+     */
+    interface Timer {
+        long now();
+
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    private final Sink sink;
+    private final Timer timer;
+    private long changeWindowMillis;
+    private Executor executor;
+
+    //CHANGE events waiting for their window to close, by element, in the order the windows were opened
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+    private boolean windowScheduled;
+    private final Runnable windowTask = new Runnable() {
+        @Override
+        public void run() {
+            windowScheduled = false;
+            closeWindows(timer.now());
+        }
+    };
+
+    //Events waiting to be delivered on the executor, guarded by itself
+    private final List<FormEvent> queue = new ArrayList<>();
+    private boolean draining;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    FormEventStream(Sink sink, Timer timer) {
+        this.sink = sink;
+        this.timer = timer;
+    }
+
+    /**
+     * @param windowMillis time CHANGE events of an element are coalesced for, 0 to deliver every change.
+     */
+    void setChangeWindow(long windowMillis) {
+        changeWindowMillis = Math.max(0, windowMillis);
+        if (changeWindowMillis == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * @param executor executor the events are delivered on, or null to deliver them on the UI thread.
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Delivers an event, or keeps it if it is a CHANGE within a window.
+     */
+    void post(FormEvent event) {
+        if (event.type != Form.FormEventType.CHANGE) {
+            flush();
+            deliver(event);
+            return;
+        }
+        if (changeWindowMillis == 0) {
+            deliver(event);
+            return;
+        }
+        Window window = windows.get(event.element);
+        if (window != null) {
+            window.event = event;
+            return;
+        }
+        windows.put(event.element, new Window(event, timer.now() + changeWindowMillis));
+        if (!windowScheduled) {
+            windowScheduled = true;
+            timer.schedule(windowTask, changeWindowMillis);
+        }
+    }
+
+    /**
+     * Delivers the CHANGE events kept in open windows right away.
+     */
+    void flush() {
+        if (windowScheduled) {
+            windowScheduled = false;
+            timer.cancel(windowTask);
+        }
+        closeWindows(Long.MAX_VALUE);
+    }
+
+    private void closeWindows(long now) {
+        Iterator<Window> iterator = windows.values().iterator();
+        while (iterator.hasNext()) {
+            Window window = iterator.next();
+            if (window.closesAt > now) {
+                windowScheduled = true;
+                timer.schedule(windowTask, window.closesAt - now);
+                return;
+            }
+            iterator.remove();
+            deliver(window.event);
+        }
+    }
+
+    private void deliver(FormEvent event) {
+        Executor target = executor;
+        if (target == null) {
+            sink.onEvent(event);
+            return;
+        }
+        synchronized (queue) {
+            if (!replaceQueuedChange(event)) {
+                queue.add(event);
+            }
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            target.execute(drainTask);
+        } catch (RuntimeException e) {
+            synchronized (queue) {
+                draining = false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean replaceQueuedChange(FormEvent event) {
+        if (event.type != Form.FormEventType.CHANGE) {
+            return false;
+        }
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            FormEvent queued = queue.get(i);
+            if (event.element == null ? queued.element == null : event.element.equals(queued.element)) {
+                if (queued.type != Form.FormEventType.CHANGE) {
+                    return false;
+                }
+                queue.set(i, event);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        boolean drained = false;
+        try {
+            while (true) {
+                List<FormEvent> batch;
+                synchronized (queue) {
+                    if (queue.isEmpty()) {
+                        draining = false;
+                        drained = true;
+                        return;
+                    }
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                }
+                for (FormEvent event : batch) {
+                    sink.onEvent(event);
+                }
+            }
+        } finally {
+            if (!drained) {
+                //The listener failed, the next event starts a new drain
+                synchronized (queue) {
+                    draining = false;
+                }
+            }
+        }
+    }
+
+    private static final class Window {
+        FormEvent event;
+        final long closesAt;
+
+        Window(FormEvent event, long closesAt) {
+            this.event = event;
+            this.closesAt = closesAt;
+        }
+    }
+
+}
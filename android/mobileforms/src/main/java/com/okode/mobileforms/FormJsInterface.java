@@ -0,0 +1,124 @@
+package com.okode.mobileforms;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.JavascriptInterface;
+
+/**
+ * Object exposed to the form page as window.MobileFormsBridge. The page uses it to send results back to Java.
+ * JavaScript calls arrive on a background thread, they are delivered to the receiver on the UI thread, except the
+ * queries of option sources, which the page waits for and are answered right on that thread.
+ * It is installed when the WebView is created, since interfaces added later are not visible until the page is reloaded,
+ * and it is pointed to the Form currently using the WebView.
+ */
+final class FormJsInterface {
+
+    static final String NAME = "MobileFormsBridge";
+
+    /**
+     * Receives the messages sent by the page, on the UI thread unless stated otherwise.
+     */
+    interface Receiver {
+        /**
+         * @param requestId id of the request the result belongs to.
+         * @param value     result value, null if the JS value was null or undefined.
+         */
+        void onResult(int requestId, String value);
+
+        /**
+         * @param token    token of the form load that produced the data.
+         * @param formData changed values by root key, or the whole form data if full is true, as json String serialized.
+         * @param full     true if formData is a snapshot of the whole form.
+         */
+        void onFormData(int token, String formData, boolean full);
+
+        /**
+         * @param token          token of the form load that was timed.
+         * @param phase          phase timed in the page: libraryParse, build, populate or ready.
+         * @param durationMillis duration of the phase, in milliseconds.
+         * @param fieldCount     number of named fields of the form, -1 if it is not built yet.
+         * @param payloadSize    size of the payload of the phase in chars, -1 if the page does not know it.
+         */
+        void onMetric(int token, String phase, double durationMillis, int fieldCount, int payloadSize);
+
+        /**
+         * Called on the JavaBridge thread, the page waits for the answer.
+         *
+         * @param source name of the option source of the field.
+         * @param prefix text typed in the field.
+         * @param offset index of the first option asked for.
+         * @param limit  maximum number of options asked for.
+         * @return the page of options as json String serialized, see OptionSource.Page, or null if there is no source.
+         */
+        String onQueryOptions(String source, String prefix, int offset, int limit);
+
+        /**
+         * Called on the JavaBridge thread, the page waits for the answer.
+         *
+         * @param source name of the option source of the field.
+         * @param value  value of the field.
+         * @return the label of the option with that value, or null if there is none.
+         */
+        String onGetOptionLabel(String source, String value);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile Receiver receiver;
+
+    void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @JavascriptInterface
+    public void postResult(final int requestId, final String value) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Receiver current = receiver;
+                if (current != null) {
+                    current.onResult(requestId, value);
+                }
+            }
+        });
+    }
+
+    @JavascriptInterface
+    public void syncFormData(final int token, final String formData, final boolean full) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Receiver current = receiver;
+                if (current != null) {
+                    current.onFormData(token, formData, full);
+                }
+            }
+        });
+    }
+
+    @JavascriptInterface
+    public void postMetric(final int token, final String phase, final double durationMillis, final int fieldCount,
+                           final int payloadSize) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Receiver current = receiver;
+                if (current != null) {
+                    current.onMetric(token, phase, durationMillis, fieldCount, payloadSize);
+                }
+            }
+        });
+    }
+
+    @JavascriptInterface
+    public String queryOptions(String source, String prefix, int offset, int limit) {
+        Receiver current = receiver;
+        return current != null ? current.onQueryOptions(source, prefix, offset, limit) : null;
+    }
+
+    @JavascriptInterface
+    public String getOptionLabel(String source, String value) {
+        Receiver current = receiver;
+        return current != null ? current.onGetOptionLabel(source, value) : null;
+    }
+
+}
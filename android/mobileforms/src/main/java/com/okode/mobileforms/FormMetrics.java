@@ -0,0 +1,115 @@
+package com.okode.mobileforms;
+
+/**
+ * Optional listener that receives the time spent in each phase of a form load, and in every request sent to the
+ * form page, so apps can report them from production devices. Set it with Form.setMetrics() before load().
+ * Events are delivered on the UI thread, the listener must return quickly.
+ */
+public interface FormMetrics {
+
+    /**
+     * Phases of the life of a form that are timed.
+     */
+    enum Phase {
+        /**
+         * From load() until the form page is ready to build the form: reading the assets, compiling the definition and
+         * loading the page, when a pooled page cannot be reused. The payload is the compiled definition.
+         */
+        PAGE_LOAD,
+        /**
+         * Parsing and running the scripts of the form page. Only reported by the form that loaded the page.
+         */
+        LIBRARY_PARSE,
+        /**
+         * Building the form fields in the page, without populating them. The payload is the compiled definition.
+         */
+        FORM_BUILD,
+        /**
+         * Populating the form with data, on load and on every setPopulateDataAsync(). The payload is the data.
+         */
+        POPULATE,
+        /**
+         * From the initialisation of the form being sent to the page until init() finishes in the page, bridge
+         * included. The payload is the compiled definition.
+         */
+        FORM_INIT,
+        /**
+         * From the initialisation of the form being sent to the page until the WebView can draw the built form.
+         */
+        FIRST_PAINT,
+        /**
+         * From a request to the page, such as getFormData() or isFormValid(), until its result arrives. The name of
+         * the event is the requested expression, the payload is the result.
+         */
+        BRIDGE_ROUND_TRIP
+    }
+
+    /**
+     * Called when a phase finishes.
+     *
+     * @param event timing of the phase.
+     */
+    void onMetric(Event event);
+
+    /**
+     * Timing of a phase.
+     */
+    final class Event {
+
+        private final Phase phase;
+        private final String name;
+        private final double durationMillis;
+        private final int payloadSize;
+        private final int fieldCount;
+
+        Event(Phase phase, String name, double durationMillis, int payloadSize, int fieldCount) {
+            this.phase = phase;
+            this.name = name;
+            this.durationMillis = durationMillis;
+            this.payloadSize = payloadSize;
+            this.fieldCount = fieldCount;
+        }
+
+        /**
+         * @return the timed phase.
+         */
+        public Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return what was timed within the phase, such as the expression of a BRIDGE_ROUND_TRIP, or null.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return duration of the phase, in milliseconds.
+         */
+        public double getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * @return size of the payload of the phase in chars, 0 if it has none.
+         */
+        public int getPayloadSize() {
+            return payloadSize;
+        }
+
+        /**
+         * @return number of named fields of the form, or -1 if the form has not been built yet.
+         */
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        @Override
+        public String toString() {
+            return phase + (name != null ? " " + name : "") + ": " + durationMillis + " ms, " + payloadSize
+                    + " chars, " + fieldCount + " fields";
+        }
+    }
+
+}
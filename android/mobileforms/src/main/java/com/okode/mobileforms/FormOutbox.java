@@ -0,0 +1,762 @@
+package com.okode.mobileforms;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Durable outbox for the results of submitted forms, usually fed from Listener.onSubmit():
+ *
+ * outbox = new FormOutbox(new File(context.getFilesDir(), "outbox"), uploader);
+ * ...
+ * public void onSubmit(String formResult) {
+ *     outbox.enqueue(formResult);
+ * }
+ *
+ * Every result is appended to a write-ahead log before it is uploaded, so results survive the death of the process
+ * and are uploaded when an outbox is opened again on the same directory. Results are grouped in batches, sent once
+ * they are full (by number of results or by size) or once their oldest result has waited long enough, and the
+ * Uploader sends them on a background thread. A failed upload is retried with exponential backoff, and batches keep
+ * the order of the results. Uploaded results are dropped from the log, which is compacted as they are.
+ * Results are uploaded at least once: a batch may be sent again if the process dies before its upload is recorded,
+ * so the server should ignore the sequence numbers it already has. It is thread safe.
+ */
+public final class FormOutbox implements Closeable {
+
+    /**
+     * Sends batches of results, on the background thread of the outbox.
+     */
+    public interface Uploader {
+        /**
+         * @param batch results to send.
+         * @throws IOException if the batch was not sent, it is sent again later.
+         */
+        void upload(Batch batch) throws IOException;
+    }
+
+    /**
+     * Clock and delayed tasks of the upload thread.
+     */
+    interface Scheduler {
+        long now();
+
+        void schedule(Runnable task, long delayMillis);
+
+        void shutdown();
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String LOG_FILE = "outbox.wal";
+
+    //Default limits of a batch
+    private static final int DEFAULT_MAX_BATCH_RESULTS = 50;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+    private static final long DEFAULT_MAX_BATCH_DELAY = 2000;
+    //Default wait before the first retry of a failed upload, doubled on every failure up to the maximum
+    private static final long DEFAULT_INITIAL_BACKOFF = 1000;
+    private static final long DEFAULT_MAX_BACKOFF = 5 * 60 * 1000;
+
+    private static final long NOT_SCHEDULED = Long.MAX_VALUE;
+
+    private final Uploader uploader;
+    private final Executor writer;
+    private final Scheduler scheduler;
+    //Only used on the writer thread, with the last sequence number
+    private final OutboxLog log;
+    private long lastSequence;
+
+    //The queue is guarded by the lock, which is never held while the log is read or written
+    private final Object lock = new Object();
+    private final Deque<Entry> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private int maxBatchResults = DEFAULT_MAX_BATCH_RESULTS;
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long maxBatchDelay = DEFAULT_MAX_BATCH_DELAY;
+    private boolean compressed;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private int failures;
+    private long retryAt;
+    private boolean flushRequested;
+    private long sendScheduledAt = NOT_SCHEDULED;
+    //close() was called, the writer takes no more tasks
+    private final AtomicBoolean closeCalled = new AtomicBoolean();
+    //The writer ran its last task, the log is closed. Written on the writer thread
+    private boolean closed;
+
+    private final Runnable sendTask = new Runnable() {
+        @Override
+        public void run() {
+            send();
+        }
+    };
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (lock) {
+                flushRequested = !pending.isEmpty();
+                retryAt = 0;
+                scheduleSend();
+            }
+        }
+    };
+
+    /**
+     * Opens the outbox of a directory. The results left by a previous run are read in background and uploaded.
+     *
+     * @param directory app-private directory of the outbox, only one outbox may use it at a time.
+     * @param uploader  sends the batches.
+     */
+    public FormOutbox(File directory, Uploader uploader) {
+        this(directory, uploader, Executors.newSingleThreadExecutor(threadFactory("MobileForms-Outbox-Log")),
+                executorScheduler());
+    }
+
+    FormOutbox(File directory, Uploader uploader, Executor writer, Scheduler scheduler) {
+        this.uploader = uploader;
+        this.writer = writer;
+        this.scheduler = scheduler;
+        this.log = new OutboxLog(new File(directory, LOG_FILE));
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Sets the limits of a batch. A result bigger than maxBytes is sent in a batch of its own.
+     *
+     * @param maxResults maximum number of results of a batch, 50 by default.
+     * @param maxBytes   maximum size of the results of a batch, in bytes, 256 KB by default.
+     */
+    public void setMaxBatchSize(int maxResults, int maxBytes) {
+        synchronized (lock) {
+            maxBatchResults = Math.max(1, maxResults);
+            maxBatchBytes = Math.max(1, maxBytes);
+            scheduleSend();
+        }
+    }
+
+    /**
+     * @param delayMillis maximum time a result waits for its batch to fill up, 2 seconds by default.
+     */
+    public void setMaxBatchDelay(long delayMillis) {
+        synchronized (lock) {
+            maxBatchDelay = Math.max(0, delayMillis);
+            scheduleSend();
+        }
+    }
+
+    /**
+     * @param compressed true to gzip the body of the batches, see Batch.getBody(). False by default.
+     */
+    public void setCompressed(boolean compressed) {
+        synchronized (lock) {
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Sets the wait before retrying a failed upload: the initial one, doubled on every consecutive failure up to the
+     * maximum.
+     *
+     * @param initialMillis wait after the first failure, 1 second by default.
+     * @param maxMillis     maximum wait, 5 minutes by default.
+     */
+    public void setBackoff(long initialMillis, long maxMillis) {
+        synchronized (lock) {
+            initialBackoff = Math.max(0, initialMillis);
+            maxBackoff = Math.max(initialBackoff, maxMillis);
+        }
+    }
+
+    /**
+     * Adds a result to the outbox. It is written to the log in background, in the order of the calls, and uploaded
+     * in a batch later.
+     *
+     * @param formResult result of a form, as given to onSubmit().
+     * @throws IllegalStateException if the outbox is closed.
+     */
+    public void enqueue(final String formResult) {
+        if (formResult == null) {
+            throw new IllegalArgumentException("Form result is null");
+        }
+        if (closeCalled.get()) {
+            throw new IllegalStateException("Outbox is closed");
+        }
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    append(formResult);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //close() was called by another thread in the meantime
+            throw new IllegalStateException("Outbox is closed");
+        }
+    }
+
+    /**
+     * Uploads the pending results right away, without waiting for their batches to fill up nor for the backoff of a
+     * failed upload, e.g. when the network comes back. It includes the results enqueued before.
+     */
+    public void flush() {
+        if (closeCalled.get()) {
+            return;
+        }
+        try {
+            //After the results enqueued before, which are still being written
+            writer.execute(flushTask);
+        } catch (RejectedExecutionException e) {
+            //Closed in the meantime, there is nothing to upload
+        }
+    }
+
+    /**
+     * @return the number of results written to the log and not uploaded yet.
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Stops uploading. Results not uploaded yet stay in the log for the next outbox of the directory. Calling it again
+     * does nothing.
+     */
+    @Override
+    public void close() {
+        if (!closeCalled.compareAndSet(false, true)) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    closed = true;
+                }
+                log.close();
+                scheduler.shutdown();
+            }
+        });
+        if (writer instanceof ExecutorService) {
+            ((ExecutorService) writer).shutdown();
+        }
+    }
+
+    private void open() {
+        List<OutboxLog.Record> records;
+        try {
+            records = log.open();
+        } catch (IOException e) {
+            Log.w("MobileForms", "Outbox log could not be read. Exception: " + e);
+            records = Collections.emptyList();
+        }
+        lastSequence = log.getLastSequence();
+        long now = scheduler.now();
+        synchronized (lock) {
+            for (OutboxLog.Record record : records) {
+                pending.add(new Entry(record.sequence, record.result, record.size, now));
+                pendingBytes += record.size;
+            }
+            scheduleSend();
+        }
+    }
+
+    private void append(String formResult) {
+        if (closed) {
+            Log.w("MobileForms", "Outbox is closed, form result dropped");
+            return;
+        }
+        long sequence = ++lastSequence;
+        byte[] bytes = formResult.getBytes(UTF8);
+        try {
+            log.append(sequence, bytes);
+        } catch (IOException e) {
+            //It is still uploaded, as long as the process lives
+            Log.w("MobileForms", "Form result " + sequence + " could not be written to the outbox log. Exception: " + e);
+        }
+        synchronized (lock) {
+            pending.add(new Entry(sequence, formResult, bytes.length, scheduler.now()));
+            pendingBytes += bytes.length;
+            scheduleSend();
+        }
+    }
+
+    /**
+     * Records the upload of a batch in the log, on the writer thread.
+     */
+    private void acknowledge(long sequence, long uploadedBytes) {
+        if (closed) {
+            return;
+        }
+        List<Entry> remaining;
+        long remainingBytes;
+        synchronized (lock) {
+            remaining = new ArrayList<>(pending);
+            remainingBytes = pendingBytes;
+        }
+        try {
+            log.acknowledge(sequence, uploadedBytes, remaining, remainingBytes);
+        } catch (IOException e) {
+            //The batch may be sent again by the next outbox of the directory
+            Log.w("MobileForms", "Outbox log could not record batch " + sequence + ". Exception: " + e);
+        }
+    }
+
+    private void send() {
+        Batch batch;
+        synchronized (lock) {
+            sendScheduledAt = NOT_SCHEDULED;
+            if (closed || pending.isEmpty()) {
+                return;
+            }
+            long now = scheduler.now();
+            long due = getSendTime(now);
+            if (due > now) {
+                scheduleSend();
+                return;
+            }
+            batch = nextBatch();
+        }
+        boolean uploaded;
+        try {
+            uploader.upload(batch);
+            uploaded = true;
+        } catch (IOException | RuntimeException e) {
+            Log.w("MobileForms", "Outbox batch " + batch.getFirstSequence() + " could not be uploaded. Exception: " + e);
+            uploaded = false;
+        }
+        long removedBytes = 0;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (uploaded) {
+                for (int i = 0; i < batch.size(); i++) {
+                    removedBytes += pending.removeFirst().size;
+                }
+                pendingBytes -= removedBytes;
+                failures = 0;
+                retryAt = 0;
+                if (pending.isEmpty()) {
+                    flushRequested = false;
+                }
+            } else {
+                failures++;
+                retryAt = scheduler.now() + getBackoff(failures);
+            }
+            scheduleSend();
+        }
+        if (uploaded) {
+            final long sequence = batch.getLastSequence();
+            final long uploadedBytes = removedBytes;
+            try {
+                writer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        acknowledge(sequence, uploadedBytes);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //Closed in the meantime, the batch may be sent again by the next outbox of the directory
+            }
+        }
+    }
+
+    /**
+     * @return the time the next batch is due: now if it is full or a flush is requested, when its oldest result has
+     * waited long enough otherwise, and never before the retry time of a failed upload.
+     */
+    private long getSendTime(long now) {
+        if (retryAt > now) {
+            return retryAt;
+        }
+        if (flushRequested || pending.size() >= maxBatchResults || pendingBytes >= maxBatchBytes) {
+            return now;
+        }
+        return pending.peekFirst().enqueuedAt + maxBatchDelay;
+    }
+
+    private void scheduleSend() {
+        if (closed || pending.isEmpty()) {
+            return;
+        }
+        long now = scheduler.now();
+        long due = Math.max(now, getSendTime(now));
+        if (due < sendScheduledAt) {
+            sendScheduledAt = due;
+            scheduler.schedule(sendTask, due - now);
+        }
+    }
+
+    private Batch nextBatch() {
+        List<String> results = new ArrayList<>();
+        long bytes = 0;
+        long firstSequence = pending.peekFirst().sequence;
+        long lastSequence = firstSequence;
+        for (Entry entry : pending) {
+            if (results.size() >= maxBatchResults || (!results.isEmpty() && bytes + entry.size > maxBatchBytes)) {
+                break;
+            }
+            results.add(entry.result);
+            bytes += entry.size;
+            lastSequence = entry.sequence;
+        }
+        return new Batch(firstSequence, lastSequence, results, compressed);
+    }
+
+    private long getBackoff(int failures) {
+        long backoff = initialBackoff;
+        for (int i = 1; i < failures && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoff);
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        };
+    }
+
+    private static Scheduler executorScheduler() {
+        final ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(threadFactory("MobileForms-Outbox"));
+        return new Scheduler() {
+            @Override
+            public long now() {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                if (!executor.isShutdown()) {
+                    executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Results sent together, in the order they were enqueued. Sequence numbers grow with every result of the
+     * directory, also across runs, and identify the results of a batch sent again.
+     */
+    public static final class Batch {
+
+        private final long firstSequence;
+        private final long lastSequence;
+        private final List<String> results;
+        private final boolean compressed;
+
+        Batch(long firstSequence, long lastSequence, List<String> results, boolean compressed) {
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.results = Collections.unmodifiableList(results);
+            this.compressed = compressed;
+        }
+
+        /**
+         * @return the sequence number of the first result of the batch.
+         */
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+
+        /**
+         * @return the sequence number of the last result of the batch, results in between are numbered in order.
+         */
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        /**
+         * @return the results, as given to enqueue().
+         */
+        public List<String> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the number of results.
+         */
+        public int size() {
+            return results.size();
+        }
+
+        /**
+         * @return true if getBody() is gzipped, see setCompressed().
+         */
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        /**
+         * @return the results as a JSON array, in UTF-8, gzipped if isCompressed().
+         */
+        public byte[] getBody() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+            OutputStream out = compressed ? new GZIPOutputStream(body) : body;
+            out.write('[');
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(results.get(i).getBytes(UTF8));
+            }
+            out.write(']');
+            out.close();
+            return body.toByteArray();
+        }
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final String result;
+        final int size;
+        final long enqueuedAt;
+
+        Entry(long sequence, String result, int size, long enqueuedAt) {
+            this.sequence = sequence;
+            this.result = result;
+            this.size = size;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Write-ahead log of the outbox. Records are a type, a sequence number, the length and CRC32 of the payload, and
+     * the payload: a result, or none for an acknowledgement of all the results up to its sequence number.
+     * A record cut by the death of the process, or corrupt, ends the log. Once the acknowledged records outgrow the
+     * pending ones, the log is rewritten with the pending records only.
+     */
+    private static final class OutboxLog {
+
+        private static final byte RESULT = 'R';
+        private static final byte ACK = 'A';
+        private static final int HEADER_SIZE = 1 + 8 + 4 + 4;
+
+        //Size of the acknowledged results that triggers a compaction, at least
+        private static final long COMPACT_MIN_SIZE = 256 * 1024;
+
+        private final File file;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+        private final CRC32 crc = new CRC32();
+        private OutputStream out;
+        private long lastSequence;
+        private long acknowledgedBytes;
+
+        OutboxLog(File file) {
+            this.file = file;
+        }
+
+        long getLastSequence() {
+            return lastSequence;
+        }
+
+        /**
+         * Reads the log, removing the records after the last valid one.
+         *
+         * @return the results not acknowledged, in order.
+         */
+        List<Record> open() throws IOException {
+            List<Record> records = new ArrayList<>();
+            long acknowledged = 0;
+            long validSize = 0;
+            if (file.exists()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    while (true) {
+                        Record read = readRecord(in);
+                        if (read == null) {
+                            break;
+                        }
+                        validSize += HEADER_SIZE + read.size;
+                        lastSequence = Math.max(lastSequence, read.sequence);
+                        if (read.result == null) {
+                            acknowledged = Math.max(acknowledged, read.sequence);
+                        } else {
+                            records.add(read);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+                if (validSize < file.length()) {
+                    Log.w("MobileForms", "Outbox log ends with a broken record, it is dropped");
+                    RandomAccessFile log = new RandomAccessFile(file, "rw");
+                    try {
+                        log.setLength(validSize);
+                    } finally {
+                        log.close();
+                    }
+                }
+            }
+            Iterator<Record> iterator = records.iterator();
+            while (iterator.hasNext()) {
+                Record next = iterator.next();
+                if (next.sequence <= acknowledged) {
+                    acknowledgedBytes += next.size;
+                    iterator.remove();
+                }
+            }
+            return records;
+        }
+
+        private Record readRecord(DataInputStream in) throws IOException {
+            try {
+                byte type = in.readByte();
+                long sequence = in.readLong();
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if ((type != RESULT && type != ACK) || length < 0 || length > file.length()) {
+                    return null;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return null;
+                }
+                return new Record(sequence, type == RESULT ? new String(payload, UTF8) : null, length);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        void append(long sequence, byte[] result) throws IOException {
+            write(RESULT, sequence, result);
+        }
+
+        /**
+         * Records the upload of all the results up to a sequence number.
+         *
+         * @param sequence      sequence number of the last result uploaded.
+         * @param uploadedBytes size of the results uploaded.
+         * @param pending       results still pending, in order.
+         * @param pendingBytes  size of the results still pending.
+         */
+        void acknowledge(long sequence, long uploadedBytes, Collection<Entry> pending, long pendingBytes)
+                throws IOException {
+            acknowledgedBytes += uploadedBytes;
+            if (pending.isEmpty() || (acknowledgedBytes > COMPACT_MIN_SIZE && acknowledgedBytes > pendingBytes)) {
+                rewrite(sequence, pending);
+            } else {
+                write(ACK, sequence, new byte[0]);
+            }
+        }
+
+        /**
+         * Replaces the log with the pending results, after an acknowledgement that keeps the sequence numbers.
+         */
+        private void rewrite(long acknowledged, Collection<Entry> pending) throws IOException {
+            close();
+            File rewritten = new File(file.getPath() + ".tmp");
+            out = new FileOutputStream(rewritten);
+            try {
+                write(ACK, acknowledged, new byte[0]);
+                for (Entry entry : pending) {
+                    write(RESULT, entry.sequence, entry.result.getBytes(UTF8));
+                }
+            } finally {
+                close();
+            }
+            if (!rewritten.renameTo(file)) {
+                rewritten.delete();
+                throw new IOException("Outbox log could not be compacted");
+            }
+            acknowledgedBytes = 0;
+        }
+
+        private void write(byte type, long sequence, byte[] payload) throws IOException {
+            if (out == null) {
+                File directory = file.getParentFile();
+                if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Directory " + directory + " could not be created");
+                }
+                out = new FileOutputStream(file, true);
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            record.reset();
+            recordOut.writeByte(type);
+            recordOut.writeLong(sequence);
+            recordOut.writeInt(payload.length);
+            recordOut.writeInt((int) crc.getValue());
+            recordOut.write(payload);
+            //The whole record in one write, so a record is cut only if the process dies in the middle of it
+            record.writeTo(out);
+        }
+
+        void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w("MobileForms", "Outbox log could not be closed. Exception: " + e);
+                }
+                out = null;
+            }
+        }
+
+        static final class Record {
+            final long sequence;
+            final String result;
+            final int size;
+
+            Record(long sequence, String result, int size) {
+                this.sequence = sequence;
+                this.result = result;
+                this.size = size;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,323 @@
+package com.okode.mobileforms;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory index of the form definitions of the assets 'forms' directory, so setFormNamed() finds them without
+ * reading the assets. It is filled on demand, usually from Application.onCreate():
+ *
+ * FormRegistry.getInstance(this).prefetch();
+ *
+ * prefetch() lists the directory and reads and compiles all the definitions in parallel, on a few background threads
+ * that go away once they are done. The compiled definitions are kept in memory up to a maximum size, smaller on low
+ * RAM devices; forms whose definition is not in the index read it from the assets as usual.
+ * getScanTimeMillis() and getMemorySize() tell how long the prefetch took and how much memory the index holds.
+ * The index is cleared when the system reports low memory. It is thread safe.
+ */
+public final class FormRegistry implements ComponentCallbacks2 {
+
+    //Memory held by the index, in bytes
+    private static final int DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+    private static final int LOW_RAM_MAX_SIZE = 512 * 1024;
+    private static final int MAX_THREADS = 4;
+
+    //Definitions are named like in setFormNamed(): forms/{name}.json
+    private static final String FORMJSON_SUFFIX = "." + Form.FORMJSON_EXTENSION;
+
+    private static FormRegistry instance;
+
+    /**
+     * Files of the assets, AssetManager in the app.
+     */
+    interface Assets {
+        String[] list(String path) throws IOException;
+
+        InputStream open(String path) throws IOException;
+    }
+
+    /**
+     * Clock the scan time is measured with and threads the definitions are prefetched on.
+     */
+    interface Scheduler {
+        long now();
+
+        void execute(Runnable task);
+
+        /**
+         * Called once the prefetch is done, the threads can go away.
+         */
+        void shutdown();
+    }
+
+    private final Assets assets;
+    private final FormDefinitionCache cache;
+    private final Scheduler scheduler;
+    //Compiled definitions by name, in access order, guarded by this
+    private final Map<String, String> index = new LinkedHashMap<>(16, 0.75f, true);
+    private int size;
+    private int maxSize;
+    private boolean prefetchStarted;
+    private volatile long scanTimeMillis = -1;
+
+    FormRegistry(Assets assets, FormDefinitionCache cache, int maxSize, Scheduler scheduler) {
+        this.assets = assets;
+        this.cache = cache;
+        this.maxSize = maxSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the process wide registry.
+     *
+     * @param context any context, the application context is used to read the assets.
+     * @return the registry shared by all the Form instances.
+     */
+    public static synchronized FormRegistry getInstance(Context context) {
+        if (instance == null) {
+            Context applicationContext = context.getApplicationContext();
+            ActivityManager activityManager =
+                    (ActivityManager) applicationContext.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean lowRam = activityManager != null && activityManager.isLowRamDevice();
+            final AssetManager assetManager = applicationContext.getAssets();
+            instance = new FormRegistry(new Assets() {
+                @Override
+                public String[] list(String path) throws IOException {
+                    return assetManager.list(path);
+                }
+
+                @Override
+                public InputStream open(String path) throws IOException {
+                    return assetManager.open(path);
+                }
+            }, FormDefinitionCache.getInstance(applicationContext), lowRam ? LOW_RAM_MAX_SIZE : DEFAULT_MAX_SIZE,
+                    new ThreadScheduler());
+            applicationContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum memory held by the index. The least recently used definitions are dropped when it is exceeded.
+     *
+     * @param maxSize maximum size in bytes.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        trimToSize(this.maxSize);
+    }
+
+    /**
+     * Reads and compiles in background all the definitions of the assets 'forms' directory. Only the first call does
+     * anything, the definitions in the assets do not change while the app runs.
+     */
+    public synchronized void prefetch() {
+        if (prefetchStarted) {
+            return;
+        }
+        prefetchStarted = true;
+        final long startTime = scheduler.now();
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                String[] files;
+                try {
+                    files = assets.list(Form.FORMJSON_DIRECTORY);
+                } catch (IOException e) {
+                    Log.w("MobileForms", "Forms directory could not be listed. Exception: " + e);
+                    files = null;
+                }
+                int count = 0;
+                for (int i = 0; files != null && i < files.length; i++) {
+                    if (files[i].endsWith(FORMJSON_SUFFIX)) {
+                        files[count++] = files[i];
+                    }
+                }
+                if (count == 0) {
+                    onPrefetched(startTime);
+                    return;
+                }
+                final AtomicInteger remaining = new AtomicInteger(count);
+                for (int i = 0; i < count; i++) {
+                    final String file = files[i];
+                    scheduler.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                String definition = cache.compile(
+                                        AssetText.read(assets.open(Form.FORMJSON_DIRECTORY + "/" + file)));
+                                put(file.substring(0, file.length() - FORMJSON_SUFFIX.length()), definition);
+                            } catch (IOException | JSONException e) {
+                                //The form reads it when it is needed, and reports the error then
+                                Log.w("MobileForms", "Form " + file + " could not be prefetched. Exception: " + e);
+                            } finally {
+                                if (remaining.decrementAndGet() == 0) {
+                                    onPrefetched(startTime);
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void onPrefetched(long startTime) {
+        scanTimeMillis = scheduler.now() - startTime;
+        scheduler.shutdown();
+    }
+
+    /**
+     * @return true once prefetch() has read all the definitions.
+     */
+    public boolean isPrefetched() {
+        return scanTimeMillis >= 0;
+    }
+
+    /**
+     * @return the time prefetch() took to list, read and compile all the definitions, in milliseconds, or -1 if it has
+     * not finished yet.
+     */
+    public long getScanTimeMillis() {
+        return scanTimeMillis;
+    }
+
+    /**
+     * @return the memory held by the index, in bytes. Definitions are counted as the chars of their compiled form.
+     */
+    public synchronized int getMemorySize() {
+        return size;
+    }
+
+    /**
+     * @return the maximum memory held by the index, in bytes.
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of definitions in the index.
+     */
+    public synchronized int getFormCount() {
+        return index.size();
+    }
+
+    /**
+     * Drops all the definitions of the index. Forms read them from the assets again.
+     */
+    public synchronized void evictAll() {
+        index.clear();
+        size = 0;
+    }
+
+    /**
+     * @param name name of the form, as in setFormNamed().
+     * @return the compiled definition, or null if it is not in the index.
+     */
+    synchronized String get(String name) {
+        return index.get(name);
+    }
+
+    private synchronized void put(String name, String definition) {
+        String previous = index.put(name, definition);
+        if (previous != null) {
+            size -= sizeOf(name, previous);
+        }
+        size += sizeOf(name, definition);
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Drops the least recently used definitions until the index holds at most the given size.
+     */
+    private synchronized void trimToSize(int targetSize) {
+        Iterator<Map.Entry<String, String>> eldest = index.entrySet().iterator();
+        while (size > targetSize && eldest.hasNext()) {
+            Map.Entry<String, String> entry = eldest.next();
+            size -= sizeOf(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    private static int sizeOf(String name, String definition) {
+        return 2 * (name.length() + definition.length());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (this) {
+                trimToSize(maxSize / 2);
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Runs the prefetch on a few low priority threads, started by the first task.
+     */
+    private static final class ThreadScheduler implements Scheduler {
+
+        private ExecutorService executor;
+
+        @Override
+        public long now() {
+            return System.nanoTime() / 1000000;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(
+                        Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())),
+                        new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger();
+
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "MobileForms-Registry-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                thread.setPriority(Thread.MIN_PRIORITY);
+                                return thread;
+                            }
+                        });
+            }
+            executor.execute(task);
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.okode.mobileforms;
+
+/**
+ * Handle to a value requested asynchronously to the form, such as the form data or its errors.
+ * Several requests can be in flight at the same time, each one is completed with its own result.
+ * The callback is always called on the UI thread. If the request has already completed when the callback is set,
+ * it is called right away.
+ *
+ * form.getFormData().setCallback(new FormRequest.Callback<String>() {
+ *     public void onResult(String formData) {
+ *         ...
+ *     }
+ * });
+ *
+ * @param <T> type of the result.
+ */
+public final class FormRequest<T> {
+
+    /**
+     * Receives the result of a FormRequest.
+     *
+     * @param <T> type of the result.
+     */
+    public interface Callback<T> {
+        /**
+         * Called on the UI thread when the form delivers the result.
+         *
+         * @param result the requested value.
+         */
+        void onResult(T result);
+    }
+
+    private Callback<T> callback;
+    private T result;
+    private boolean done;
+    private boolean cancelled;
+
+    FormRequest() {
+    }
+
+    /**
+     * Sets the callback that receives the result. It replaces any previous callback.
+     *
+     * @param callback callback to call with the result.
+     * @return this request.
+     */
+    public FormRequest<T> setCallback(Callback<T> callback) {
+        this.callback = callback;
+        if (done && !cancelled && callback != null) {
+            callback.onResult(result);
+        }
+        return this;
+    }
+
+    /**
+     * @return true when the result has been delivered or the request has been cancelled.
+     */
+    public boolean isDone() {
+        return done || cancelled;
+    }
+
+    /**
+     * @return true if the request has been cancelled, either by the caller or because the form view was destroyed.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the result, or null if the request has not completed yet.
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * Cancels the request. The callback will not be called.
+     */
+    public void cancel() {
+        cancelled = true;
+        callback = null;
+    }
+
+    void complete(T result) {
+        if (done || cancelled) {
+            return;
+        }
+        this.result = result;
+        done = true;
+        if (callback != null) {
+            callback.onResult(result);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.okode.mobileforms;
+
+import java.util.List;
+
+/**
+ * Builds the JavaScript commands sent by Form to the form page. Commands are built by concatenation, not
+ * String.format(), since their arguments are form definitions and data that can be hundreds of KB long.
+ * It has no Android dependencies, so it can be tested and benchmarked on the JVM.
+ */
+final class FormScripts {
+
+    //JavaScript functions needed to initialise the form
+    static final String JS_FUNC_SET_JSON_FORM = "setJsonForm(";
+    static final String JS_FUNC_SET_JSON_POPULATE_DATA = "setJsonPopulateData(";
+    private static final String JS_FUNC_SET_DATA_SYNC = "setDataSync(";
+    private static final String JS_FUNC_SET_METRICS = "setMetrics(";
+    private static final String JS_FUNC_SET_RENDER_SECTIONS = "setRenderSections(";
+    private static final String JS_FUNC_SET_STEP = "setStep(";
+    static final String JS_FUNC_INIT = "init()";
+
+    //Sends the value of a JavaScript expression back through the result channel, tagged with a request id
+    private static final String JS_FUNC_POST_RESULT = FormJsInterface.NAME + ".postResult(";
+
+    //JavaScript expressions whose value is requested by the form
+    static final String JS_EXPR_FORM_DATA = "getFormData()";
+    static final String JS_EXPR_FORM_DATA_VALIDATED = "getFormDataValidated()";
+    static final String JS_EXPR_FORM_ERRORS = "getFormErrors()";
+    static final String JS_EXPR_IS_FORM_VALID = "String(isFormValid())";
+
+    //Other JavaScript functions
+    static final String JS_FUNC_SET_READONLY_FORM = "setReadOnly(true)";
+    static final String JS_FUNC_SET_EDITABLE_FORM = "setReadOnly(false)";
+    static final String JS_FUNC_SET_POPULATEDATA = "populateWithData(";
+    private static final String JS_FUNC_SHOW_STEP = "showStep(";
+
+    //Custom files are passed as escaped string literals, between these prefixes and suffixes
+    static final String JS_FUNC_ADD_CSS_FILE_PREFIX = "addCSS(\"";
+    private static final String JS_FUNC_ADD_CSS_FILE_SUFFIX = "\", ";
+    static final String JS_FUNC_ADD_JS_FILE_PREFIX = "addJS(\"";
+    static final String JS_FUNC_ADD_JS_FILE_SUFFIX = "\")";
+
+    //Commands longer than this, in chars, are sent in chunks of this length at most, see JsCommandQueue
+    static final int MAX_COMMAND_LENGTH = 64 * 1024;
+
+    //The page gathers the chunks of a long command, and runs the command once it has all of them
+    private static final String JS_FUNC_APPEND_PAYLOAD = "appendPayload(";
+    private static final String JS_FUNC_RUN_PAYLOAD = "runPayload(";
+
+    //Every command of a script is isolated, so a failing command does not prevent the next ones from running
+    private static final String COMMAND_START = "try{";
+    private static final String COMMAND_END = ";}catch(e){console.error(e);}\n";
+
+    private FormScripts() {
+    }
+
+    static String setJsonForm(String jsonForm) {
+        return call(JS_FUNC_SET_JSON_FORM, jsonForm);
+    }
+
+    static String setJsonPopulateData(String jsonPopulateData) {
+        return call(JS_FUNC_SET_JSON_POPULATE_DATA, jsonPopulateData);
+    }
+
+    static String setDataSync(int token) {
+        return call(JS_FUNC_SET_DATA_SYNC, Integer.toString(token));
+    }
+
+    static String setMetrics(int token) {
+        return call(JS_FUNC_SET_METRICS, Integer.toString(token));
+    }
+
+    static String setRenderSections(int count) {
+        return call(JS_FUNC_SET_RENDER_SECTIONS, Integer.toString(count));
+    }
+
+    static String setStep(int step) {
+        return call(JS_FUNC_SET_STEP, Integer.toString(step));
+    }
+
+    static String showStep(int step) {
+        return call(JS_FUNC_SHOW_STEP, Integer.toString(step));
+    }
+
+    static String populateWithData(String jsonData) {
+        return call(JS_FUNC_SET_POPULATEDATA, jsonData);
+    }
+
+    /**
+     * @param requestId    id the result is tagged with.
+     * @param jsExpression expression whose value is sent back.
+     * @return a command that sends the value of the expression to FormJsInterface.postResult().
+     */
+    static String postResult(int requestId, String jsExpression) {
+        return new StringBuilder(JS_FUNC_POST_RESULT.length() + jsExpression.length() + 16)
+                .append(JS_FUNC_POST_RESULT).append(requestId).append(", ").append(jsExpression).append(')')
+                .toString();
+    }
+
+    /**
+     * @param overrideAllStyles argument of addCSS().
+     * @return the code that follows the escaped css in an addCSS() call.
+     */
+    static String addCSSFileSuffix(boolean overrideAllStyles) {
+        return JS_FUNC_ADD_CSS_FILE_SUFFIX + overrideAllStyles + ')';
+    }
+
+    /**
+     * Builds the call that sends a chunk of a long command to the page. The first chunk starts with the code before
+     * the argument of the command and the last one ends with the code after it, so the command itself is never built.
+     *
+     * @param id     id of the command, given to runPayload() once all its chunks are sent.
+     * @param prefix code before the chunk, e.g. setJsonForm(, or an empty String.
+     * @param text   text the chunk is taken from, e.g. a form definition.
+     * @param start  index of the first char of the chunk in text.
+     * @param end    index after the last char of the chunk in text, see chunkEnd().
+     * @param suffix code after the chunk, e.g. ), or an empty String.
+     * @return the appendPayload() call, with the chunk as an escaped string literal.
+     */
+    static String appendPayload(int id, String prefix, String text, int start, int end, String suffix) {
+        int length = prefix.length() + end - start + suffix.length();
+        StringBuilder script = new StringBuilder(JS_FUNC_APPEND_PAYLOAD.length() + length + length / 4 + 16);
+        script.append(JS_FUNC_APPEND_PAYLOAD).append(id).append(", \"");
+        AssetText.escapeJs(prefix, 0, prefix.length(), script);
+        AssetText.escapeJs(text, start, end, script);
+        AssetText.escapeJs(suffix, 0, suffix.length(), script);
+        return script.append("\")").toString();
+    }
+
+    /**
+     * @param id id of the command whose chunks were sent with appendPayload().
+     * @return the command that runs it in the page.
+     */
+    static String runPayload(int id) {
+        return call(JS_FUNC_RUN_PAYLOAD, Integer.toString(id));
+    }
+
+    /**
+     * Returns where the chunk of a text that starts at an index ends. A chunk never ends between the two chars of a
+     * surrogate pair, since the halves would not survive the UTF-8 encoding of the bridge on their own.
+     *
+     * @param text      text being split.
+     * @param start     index of the first char of the chunk.
+     * @param maxLength maximum length of a chunk, in chars, at least 2.
+     * @return the index after the last char of the chunk.
+     */
+    static int chunkEnd(String text, int start, int maxLength) {
+        int end = Math.min(text.length(), start + maxLength);
+        if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Joins commands into a single script, each one in its own try/catch.
+     *
+     * @param commands JavaScript statements, without the javascript: scheme.
+     * @return the script to evaluate.
+     */
+    static String join(List<String> commands) {
+        int length = 0;
+        for (int i = 0; i < commands.size(); i++) {
+            length += commands.get(i).length() + COMMAND_START.length() + COMMAND_END.length();
+        }
+        StringBuilder script = new StringBuilder(length);
+        for (int i = 0; i < commands.size(); i++) {
+            script.append(COMMAND_START).append(commands.get(i)).append(COMMAND_END);
+        }
+        return script.toString();
+    }
+
+    static String call(String function, String argument) {
+        if (argument == null) {
+            argument = "null";
+        }
+        return new StringBuilder(function.length() + argument.length() + 1)
+                .append(function).append(argument).append(')')
+                .toString();
+    }
+
+}
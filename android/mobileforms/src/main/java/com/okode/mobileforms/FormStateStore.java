@@ -0,0 +1,354 @@
+package com.okode.mobileforms;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * App-private store for the big strings of the Form saved state (form definition, form data, custom CSS and JS),
+ * so the saved Bundle only keeps small references to them and stays far below the binder transaction limit.
+ *
+ * Blobs shared by forms, such as compiled definitions and custom CSS/JS, are stored once by content hash and the same
+ * String instance is handed to every Form that uses them. Blobs of a single form, such as its data, are stored under
+ * the state key of the form. A small reference file per state key lists the shared blobs it uses, so the blobs no
+ * form references anymore can be deleted.
+ *
+ * Files are written on the BackgroundIO thread, a memory cache keeps recent blobs so a configuration change restores
+ * without reading them back. It is thread safe.
+ */
+final class FormStateStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String DIRECTORY = "mobileforms/state";
+    private static final String BLOB_EXTENSION = ".blob";
+    private static final String STATE_EXTENSION = ".state";
+    private static final String REFS_EXTENSION = ".refs";
+
+    //Blobs shorter than this stay in the Bundle, in chars
+    private static final int INLINE_LIMIT = 1024;
+    //Memory cache size, in chars
+    private static final int MEMORY_CACHE_SIZE = 1024 * 1024;
+    //States of forms that were never restored nor removed are deleted after this time
+    private static final long STATE_MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+    //Shared blobs not referenced yet are kept for this time, the form that created them may not have saved its state
+    private static final long UNREFERENCED_BLOB_MAX_AGE = 60L * 60 * 1000;
+
+    //Prefixes of the references kept in the Bundle
+    private static final String REF_INLINE = "i:";
+    private static final String REF_SHARED = "s:";
+    private static final String REF_KEYED = "k:";
+
+    private static FormStateStore instance;
+
+    private final File directory;
+    private final LruCache<String, String> memoryCache = new LruCache<String, String>(MEMORY_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, String value) {
+            return value.length();
+        }
+    };
+    //Hashes of the shared blobs handed out. Keys are compared with equals(), so any blob equal to a shared one finds its
+    //hash, and an entry lives as long as the shared instance it was put with
+    private final Map<String, String> sharedHashes = Collections.synchronizedMap(new WeakHashMap<String, String>());
+    //Last blob written for each keyed file, so unchanged blobs are not written again
+    private final Map<String, WeakReference<String>> writtenBlobs =
+            Collections.synchronizedMap(new HashMap<String, WeakReference<String>>());
+
+    FormStateStore(File directory) {
+        this.directory = directory;
+    }
+
+    static synchronized FormStateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new FormStateStore(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+            final FormStateStore store = instance;
+            BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+                @Override
+                public Void run() {
+                    store.collectGarbage();
+                    return null;
+                }
+            }, null);
+        }
+        return instance;
+    }
+
+    /**
+     * Stores a blob that can be shared by several forms, if it is not stored yet. Meant to be called on the
+     * BackgroundIO thread, when the blob is created.
+     *
+     * @param blob blob to store.
+     * @return the instance of the blob shared by all the forms, use it instead of the given one.
+     */
+    String share(String blob) {
+        if (blob == null || blob.length() < INLINE_LIMIT) {
+            return blob;
+        }
+        String hash = FormDefinitionCache.hash(blob);
+        String reference = REF_SHARED + hash;
+        String shared = memoryCache.get(reference);
+        if (shared == null || !shared.equals(blob)) {
+            shared = blob;
+            memoryCache.put(reference, shared);
+        }
+        sharedHashes.put(shared, hash);
+        File file = new File(directory, hash + BLOB_EXTENSION);
+        if (file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            write(file, shared);
+        }
+        return shared;
+    }
+
+    /**
+     * Starts saving the state of a form. Must be called on the UI thread.
+     *
+     * @param key state key of the form.
+     * @return an editor that turns the blobs into references.
+     */
+    Editor edit(String key) {
+        return new Editor(key);
+    }
+
+    /**
+     * Resolves a reference from memory.
+     *
+     * @param reference reference returned by the Editor.
+     * @return the blob, or null if it has to be read from disk with read().
+     */
+    String peek(String reference) {
+        if (reference == null) {
+            return null;
+        }
+        if (reference.startsWith(REF_INLINE)) {
+            return reference.substring(REF_INLINE.length());
+        }
+        return memoryCache.get(reference);
+    }
+
+    /**
+     * Resolves a reference, reading the blob from disk if needed. Must be called on the BackgroundIO thread.
+     *
+     * @param reference reference returned by the Editor.
+     * @return the blob, or null if reference is null or the blob is lost.
+     */
+    String read(String reference) {
+        String blob = peek(reference);
+        if (blob != null || reference == null) {
+            return blob;
+        }
+        File file = getFile(reference);
+        if (file == null || !file.exists()) {
+            Log.w("MobileForms", "Saved state " + reference + " is lost");
+            return null;
+        }
+        try {
+            blob = AssetText.read(new FileInputStream(file));
+        } catch (IOException e) {
+            Log.w("MobileForms", "Saved state " + reference + " could not be read. Exception: " + e);
+            return null;
+        }
+        memoryCache.put(reference, blob);
+        if (reference.startsWith(REF_SHARED)) {
+            sharedHashes.put(blob, reference.substring(REF_SHARED.length()));
+        }
+        return blob;
+    }
+
+    /**
+     * Deletes the state of a form that will not be restored. Its shared blobs are deleted by the next garbage
+     * collection if no other form uses them.
+     *
+     * @param key state key of the form.
+     */
+    void remove(final String key) {
+        synchronized (writtenBlobs) {
+            Iterator<String> fileNames = writtenBlobs.keySet().iterator();
+            while (fileNames.hasNext()) {
+                if (fileNames.next().startsWith(key + ".")) {
+                    fileNames.remove();
+                }
+            }
+        }
+        BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+            @Override
+            public Void run() {
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.getName().startsWith(key + ".")) {
+                            file.delete();
+                        }
+                    }
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * Deletes the states not saved for a long time, and the shared blobs not referenced by any state.
+     * The reference file of a state is written every time the state is saved, so its age is the age of the state.
+     */
+    void collectGarbage() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<String> liveKeys = new HashSet<>();
+        Set<String> referenced = new HashSet<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(REFS_EXTENSION) && now - file.lastModified() <= STATE_MAX_AGE) {
+                try {
+                    String refs = AssetText.read(new FileInputStream(file));
+                    Collections.addAll(referenced, refs.split("\n"));
+                    liveKeys.add(name.substring(0, name.length() - REFS_EXTENSION.length()));
+                } catch (IOException e) {
+                    Log.w("MobileForms", "Saved state " + name + " could not be read. Exception: " + e);
+                }
+            }
+        }
+        List<File> blobs = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(BLOB_EXTENSION)) {
+                blobs.add(file);
+            } else if (!liveKeys.contains(name.substring(0, name.indexOf('.')))) {
+                file.delete();
+            }
+        }
+        for (File blob : blobs) {
+            String hash = blob.getName().substring(0, blob.getName().length() - BLOB_EXTENSION.length());
+            if (!referenced.contains(hash) && now - blob.lastModified() > UNREFERENCED_BLOB_MAX_AGE) {
+                blob.delete();
+            }
+        }
+    }
+
+    private File getFile(String reference) {
+        if (reference.startsWith(REF_SHARED)) {
+            return new File(directory, reference.substring(REF_SHARED.length()) + BLOB_EXTENSION);
+        }
+        if (reference.startsWith(REF_KEYED)) {
+            return new File(directory, reference.substring(REF_KEYED.length()) + STATE_EXTENSION);
+        }
+        return null;
+    }
+
+    private void writeInBackground(final File file, final String blob) {
+        BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+            @Override
+            public Void run() {
+                write(file, blob);
+                return null;
+            }
+        }, null);
+    }
+
+    private void write(File file, String blob) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), UTF8)) {
+            writer.write(blob);
+        } catch (IOException e) {
+            Log.w("MobileForms", "Saved state " + file.getName() + " could not be written. Exception: " + e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Turns the blobs of a form state into references. Short blobs are kept inline, shared blobs are referenced by
+     * hash, and the rest are written under the state key. commit() writes the list of shared blobs in use.
+     */
+    final class Editor {
+
+        private final String key;
+        private final Set<String> hashes = new HashSet<>();
+
+        private Editor(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @param name name of the blob in the state, unique for the form.
+         * @param blob blob to save, may be null.
+         * @return the reference to put in the Bundle.
+         */
+        String put(String name, String blob) {
+            if (blob == null) {
+                return null;
+            }
+            if (blob.length() < INLINE_LIMIT) {
+                return REF_INLINE + blob;
+            }
+            //Equal blobs have the same hash, so any blob equal to a shared one is on disk
+            String hash = sharedHashes.get(blob);
+            if (hash != null) {
+                hashes.add(hash);
+                return REF_SHARED + hash;
+            }
+            String fileName = key + "." + name;
+            String reference = REF_KEYED + fileName;
+            memoryCache.put(reference, blob);
+            WeakReference<String> written = writtenBlobs.get(fileName);
+            if (written == null || written.get() != blob) {
+                writtenBlobs.put(fileName, new WeakReference<>(blob));
+                writeInBackground(new File(directory, fileName + STATE_EXTENSION), blob);
+            }
+            return reference;
+        }
+
+        /**
+         * @param name  name of the list in the state, unique for the form.
+         * @param blobs blobs to save.
+         * @return the references to put in the Bundle.
+         */
+        ArrayList<String> putAll(String name, List<String> blobs) {
+            ArrayList<String> references = new ArrayList<>(blobs.size());
+            for (int i = 0; i < blobs.size(); i++) {
+                references.add(put(name + i, blobs.get(i)));
+            }
+            return references;
+        }
+
+        /**
+         * Records the shared blobs used by the form, so they are not collected, and marks the state as alive.
+         */
+        void commit() {
+            StringBuilder refs = new StringBuilder();
+            for (String hash : hashes) {
+                refs.append(hash).append('\n');
+            }
+            writeInBackground(new File(directory, key + REFS_EXTENSION), refs.toString());
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.okode.mobileforms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps of a multi-step form, form definitions shown one at a time in the same page.
+ * The state of the step shown lives in Form, the state of the other steps is kept in their Step and the host swaps it
+ * when the page shows another step. The step asked for is tracked apart from the step shown: a step is built the
+ * first time it is asked for, and the page shows it once it is built.
+ * It has no Android dependencies, so it can be tested on the JVM. Its methods must be called from the UI thread.
+ */
+final class FormSteps {
+
+    /**
+     * Moves the state of the step shown and talks to the page.
+     */
+    interface Host {
+        /**
+         * Keeps the state of the step shown in its Step.
+         */
+        void store(Step step);
+
+        /**
+         * Makes the state kept in a Step the state of the step shown.
+         */
+        void restore(Step step);
+
+        /**
+         * Called before the page leaves the step asked for until now.
+         */
+        void leave(int index, Step step);
+
+        /**
+         * Shows a step already built.
+         */
+        void show(int index);
+
+        /**
+         * Compiles a step not built yet and sends it to the page, see onCompiled().
+         */
+        void build(int index, int previous, Step step);
+    }
+
+    private final Host host;
+    private final List<Step> steps;
+    private int currentStep;
+    private int requestedStep;
+
+    FormSteps(Host host, List<String> jsonForms) {
+        this.host = host;
+        steps = new ArrayList<>(jsonForms.size());
+        for (String json : jsonForms) {
+            steps.add(new Step(json));
+        }
+    }
+
+    /**
+     * Restores the steps saved with getForms() and getData(). The definition and data of the step shown are restored
+     * on their own.
+     *
+     * @return the steps, or null if there were no steps or the step shown is not valid.
+     */
+    static FormSteps restore(Host host, List<String> jsonForms, List<String> jsonData, int step) {
+        if (jsonForms == null || step < 0 || step >= jsonForms.size()) {
+            return null;
+        }
+        FormSteps restored = new FormSteps(host, jsonForms);
+        if (jsonData != null) {
+            for (int i = 0; i < jsonData.size() && i < jsonForms.size(); i++) {
+                restored.steps.get(i).jsonPopulateData = jsonData.get(i);
+            }
+        }
+        restored.currentStep = step;
+        restored.requestedStep = step;
+        return restored;
+    }
+
+    int size() {
+        return steps.size();
+    }
+
+    boolean contains(int index) {
+        return index >= 0 && index < steps.size();
+    }
+
+    /**
+     * @return index of the step shown.
+     */
+    int getCurrent() {
+        return currentStep;
+    }
+
+    /**
+     * @return index of the step asked for, the page shows it once it is built.
+     */
+    int getRequested() {
+        return requestedStep;
+    }
+
+    boolean isCurrent(Step step) {
+        return steps.get(currentStep) == step;
+    }
+
+    boolean hasNext() {
+        return requestedStep + 1 < steps.size();
+    }
+
+    boolean hasPrevious() {
+        return requestedStep > 0;
+    }
+
+    /**
+     * Sets the data a step not built yet is populated with.
+     *
+     * @return false if the step is already built, its data has to be set while it is shown.
+     */
+    boolean setPopulateData(int index, String jsonPopulateData) {
+        Step step = steps.get(index);
+        if (step.built) {
+            return false;
+        }
+        step.jsonPopulateData = jsonPopulateData;
+        return true;
+    }
+
+    /**
+     * Asks for a step. Before the page is loaded it becomes the step shown on load; once it is loaded the page leaves
+     * the step asked for until now and shows the step, building it first if it was never shown.
+     */
+    void goTo(int index, boolean pageLoaded) {
+        if (!pageLoaded) {
+            select(index);
+            requestedStep = index;
+            return;
+        }
+        if (index == requestedStep) {
+            return;
+        }
+        host.leave(requestedStep, steps.get(requestedStep));
+        int previous = requestedStep;
+        requestedStep = index;
+        Step target = steps.get(index);
+        if (target.built) {
+            host.show(index);
+        } else if (!target.compiling) {
+            target.compiling = true;
+            host.build(index, previous, target);
+        }
+    }
+
+    /**
+     * Called once the definition of a step built by the host has been compiled.
+     *
+     * @param compiled false if the definition could not be compiled, the page stays in the step it was.
+     * @return true if the step is still the one asked for and it has to be sent to the page.
+     */
+    boolean onCompiled(int index, int previous, boolean compiled) {
+        Step step = steps.get(index);
+        step.compiling = false;
+        if (requestedStep != index) {
+            return false;
+        }
+        if (!compiled) {
+            requestedStep = previous;
+            return false;
+        }
+        step.built = true;
+        return true;
+    }
+
+    /**
+     * Makes a step the step shown, swapping the state of the step shown until now.
+     */
+    void select(int index) {
+        host.store(steps.get(currentStep));
+        host.restore(steps.get(index));
+        currentStep = index;
+    }
+
+    /**
+     * Called when the page is loaded again: only the step shown is built, the other steps are built when they are
+     * shown.
+     */
+    void reset() {
+        for (Step step : steps) {
+            step.built = false;
+        }
+        steps.get(currentStep).built = true;
+        requestedStep = currentStep;
+    }
+
+    /**
+     * @return the step a data sync token belongs to, or null.
+     */
+    Step find(int dataSyncToken) {
+        for (Step step : steps) {
+            if (step.dataSyncToken == dataSyncToken) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the definitions of the steps, with the state of the step shown stored first.
+     */
+    ArrayList<String> getForms() {
+        host.store(steps.get(currentStep));
+        ArrayList<String> forms = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            forms.add(step.jsonForm);
+        }
+        return forms;
+    }
+
+    /**
+     * @return the data the steps are populated with when they are built again, call it after getForms().
+     */
+    ArrayList<String> getData() {
+        ArrayList<String> data = new ArrayList<>(steps.size());
+        for (Step step : steps) {
+            data.add(step.getData());
+        }
+        return data;
+    }
+
+    /**
+     * Step of a multi-step form. The state of the step shown lives in the fields of Form, it is kept here while the
+     * other steps are shown.
+     */
+    static final class Step {
+
+        String jsonForm;
+        String jsonPopulateData;
+        FormDataModel formData = new FormDataModel();
+        boolean formDataSynced;
+        Boolean formValid;
+        int dataSyncToken;
+        boolean built;
+        boolean compiling;
+
+        Step(String jsonForm) {
+            this.jsonForm = jsonForm;
+        }
+
+        /**
+         * @return the data the step is populated with when it is built again.
+         */
+        String getData() {
+            return formDataSynced ? formData.toJson() : jsonPopulateData;
+        }
+    }
+
+}
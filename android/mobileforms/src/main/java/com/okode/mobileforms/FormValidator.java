@@ -0,0 +1,433 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Validates form data against a form definition without a WebView, with the same rules the form page applies:
+ * required fields, the 'filter' regex of each field, 'min' and 'max' of number, range, date and time fields, and
+ * 'maxlength', which the page enforces while typing.
+ * The definition is parsed once, and every 'filter' is compiled once into a cache shared by all the validators, so a
+ * validator can check thousands of submissions per second, from any thread.
+ *
+ * FormValidator validator = new FormValidator(jsonForm);
+ * FormValidator.Result result = validator.validate(jsonData);
+ * if (!result.isValid()) {
+ *     ...
+ * }
+ */
+public final class FormValidator {
+
+    //Field types and their checks, as in mobileforms.builder.js
+    private static final String TYPE_HIDDEN = "hidden";
+    private static final String TYPE_NUMBER = "number";
+    private static final String TYPE_RANGE = "range";
+    private static final String TYPE_DATE = "date";
+    private static final String TYPE_TIME = "time";
+    private static final String TYPE_PHONE_ITEM = "phoneitem";
+    //Types whose values are checked against the field validator, the page binds it to their input
+    private static final List<String> CHECKED_TYPES = Arrays.asList(
+            "text", "password", TYPE_NUMBER, "tel", "email", TYPE_DATE, TYPE_TIME, "textarea", "select", TYPE_RANGE);
+    //Types that can be required, checkboxes always have a value and radios are never required in the page
+    private static final List<String> REQUIRABLE_TYPES = Arrays.asList(
+            "text", "password", TYPE_NUMBER, "tel", "email", TYPE_HIDDEN, TYPE_DATE, TYPE_TIME, "textarea", "select",
+            TYPE_PHONE_ITEM);
+
+    //Compiled filters shared by all the validators, by regex
+    private static final int PATTERN_CACHE_SIZE = 256;
+    private static final Pattern MATCH_ALL = Pattern.compile("");
+    private static final Map<String, Pattern> patterns = Collections.synchronizedMap(
+            new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                    return size() > PATTERN_CACHE_SIZE;
+                }
+            });
+
+    private final List<FieldRule> rules = new ArrayList<>();
+
+    /**
+     * @param jsonForm form definition as json String serialized, as passed to Form.setForm().
+     * @throws JSONException if the definition is not valid JSON.
+     */
+    public FormValidator(String jsonForm) throws JSONException {
+        this(FormDefinition.parse(jsonForm));
+    }
+
+    /**
+     * @param definition parsed form definition.
+     */
+    public FormValidator(FormDefinition definition) {
+        for (FormDefinition.Field field : definition.getFields()) {
+            if (field.getName() != null) {
+                FieldRule rule = new FieldRule(field);
+                if (rule.required || rule.checked || rule.maxLength >= 0) {
+                    rules.add(rule);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param jsonData form data as json String serialized, as returned by Form.getFormData().
+     * @return the errors of the data.
+     * @throws JSONException if the data is not a JSON object.
+     */
+    public Result validate(String jsonData) throws JSONException {
+        return validate(new JSONObject(jsonData));
+    }
+
+    /**
+     * @param data form data by field name. Values are Strings, Numbers, Booleans, or Lists and Maps for the fields
+     *             whose name has brackets, e.g. 'phone[][number]'.
+     * @return the errors of the data.
+     */
+    public Result validate(Map<String, ?> data) {
+        return validate(new JSONObject(data));
+    }
+
+    /**
+     * @param data form data, as parsed from Form.getFormData().
+     * @return the errors of the data.
+     */
+    public Result validate(JSONObject data) {
+        Result result = new Result();
+        List<String> values = new ArrayList<>();
+        for (FieldRule rule : rules) {
+            values.clear();
+            collect(data, rule.path, 0, values);
+            rule.validate(values, result);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the values of a field, following the keys of its name. Arrays, '[]' in the name, give one value per item.
+     */
+    private static void collect(Object node, String[] path, int index, List<String> values) {
+        if (node == null || node == JSONObject.NULL) {
+            return;
+        }
+        if (index == path.length) {
+            values.add(node instanceof String ? (String) node : String.valueOf(node));
+            return;
+        }
+        String key = path[index];
+        if (key.isEmpty()) {
+            JSONArray array = node instanceof JSONArray ? (JSONArray) node : null;
+            for (int i = 0; array != null && i < array.length(); i++) {
+                collect(array.opt(i), path, index + 1, values);
+            }
+        } else if (node instanceof JSONObject) {
+            collect(((JSONObject) node).opt(key), path, index + 1, values);
+        }
+    }
+
+    /**
+     * Returns the compiled filter from the shared cache. Filters the page cannot compile do not filter anything.
+     */
+    static Pattern getPattern(String regex) {
+        if (regex == null || regex.isEmpty()) {
+            return MATCH_ALL;
+        }
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                pattern = MATCH_ALL;
+            }
+            patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Parses the integer at the start of a value, like parseInt(value, 10) in JavaScript.
+     *
+     * @return the integer, or nan if the value does not start with one.
+     */
+    static double parseInt(String value, double nan) {
+        if (value == null) {
+            return nan;
+        }
+        int i = 0;
+        while (i < value.length() && Character.isWhitespace(value.charAt(i))) {
+            i++;
+        }
+        boolean negative = false;
+        if (i < value.length() && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+        int start = i;
+        double number = 0;
+        while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            number = number * 10 + (value.charAt(i) - '0');
+            i++;
+        }
+        if (i == start) {
+            return nan;
+        }
+        return negative ? -number : number;
+    }
+
+    /**
+     * Parses a yyyy-mm-dd date that Utils.isValidDate() accepts in the page.
+     *
+     * @return the date as the number yyyymmdd, so dates compare as numbers, or NaN if it is not a valid date.
+     */
+    static double parseDate(String value) {
+        String[] bits = value.split("-", -1);
+        if (bits.length < 3) {
+            return Double.NaN;
+        }
+        int year = parseDatePart(bits[0]);
+        int month = parseDatePart(bits[1]);
+        int day = parseDatePart(bits[2]);
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return Double.NaN;
+        }
+        //Like new Date(year, month, day) in JavaScript, years below 100 are in the 1900s
+        int fullYear = year < 100 ? 1900 + year : year;
+        boolean leap = fullYear % 4 == 0 && (fullYear % 100 != 0 || fullYear % 400 == 0);
+        int[] monthDays = {31, leap ? 29 : 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+        if (day > monthDays[month - 1]) {
+            return Double.NaN;
+        }
+        return year * 10000.0 + month * 100 + day;
+    }
+
+    private static int parseDatePart(String bit) {
+        String trimmed = bit.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < trimmed.length(); i++) {
+            if (trimmed.charAt(i) < '0' || trimmed.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(trimmed);
+    }
+
+    /**
+     * Checks of a field, taken from its definition.
+     */
+    private static final class FieldRule {
+
+        private final String inputName;
+        private final String[] path;
+        private final String type;
+        private final boolean required;
+        private final boolean checked;
+        private final Pattern filter;
+        private final String message;
+        private final String min;
+        private final String max;
+        private final int maxLength;
+
+        FieldRule(FormDefinition.Field field) {
+            String name = field.getName();
+            type = field.getType().getName();
+            //The page names the phone number input of a phone item after the 'namephone' attribute
+            String namePhone = field.getString("namephone");
+            inputName = TYPE_PHONE_ITEM.equals(type) ? name + "[" + (namePhone != null ? namePhone : "type") + "]" : name;
+            path = parsePath(inputName);
+            required = REQUIRABLE_TYPES.contains(type) && field.isRequired();
+            min = emptyToNull(field.getString("min"));
+            max = emptyToNull(field.getString("max"));
+            String regex = emptyToNull(field.getString("filter"));
+            //The page only binds a validator to fields with something to check, and always to dates and times.
+            //Fields of an option source only check that a required value is there
+            checked = CHECKED_TYPES.contains(type) && (regex != null || required || min != null || max != null
+                    || TYPE_DATE.equals(type) || TYPE_TIME.equals(type) || name.indexOf("[]") > 0)
+                    && field.getString("optionsource") == null;
+            filter = getPattern(regex);
+            message = emptyToNull(field.getString("error"));
+            //Select fields use it as their size
+            maxLength = "select".equals(type) ? -1 : (int) parseInt(field.getString("maxlength"), -1);
+        }
+
+        void validate(List<String> values, Result result) {
+            if (values.isEmpty()) {
+                if (required) {
+                    result.addRequiredError(inputName);
+                }
+                return;
+            }
+            boolean requiredError = false;
+            boolean validationError = false;
+            for (int i = 0; i < values.size(); i++) {
+                String value = values.get(i);
+                if (value.isEmpty()) {
+                    requiredError |= required;
+                } else if (!validValue(value)) {
+                    validationError = true;
+                }
+            }
+            if (requiredError) {
+                result.addRequiredError(inputName);
+            }
+            if (validationError) {
+                result.addValidationError(inputName, message);
+            }
+        }
+
+        /**
+         * Same checks as checkValue() in mobileforms.builder.js, for a value that is not empty, plus the maxlength the
+         * page enforces while typing.
+         */
+        private boolean validValue(String value) {
+            if (maxLength >= 0 && value.length() > maxLength) {
+                return false;
+            }
+            if (!checked) {
+                return true;
+            }
+            if (!filter.matcher(value).find()) {
+                return false;
+            }
+            switch (type) {
+                case TYPE_RANGE:
+                case TYPE_NUMBER:
+                    double number = parseInt(value, Double.NaN);
+                    return !(max != null && number > parseInt(max, Double.NaN))
+                            && !(min != null && number < parseInt(min, Double.NaN));
+                case TYPE_TIME:
+                    double hours = parseInt(substring(value, 0, 2), Double.NaN);
+                    double minutes = parseInt(substring(value, 3, 5), Double.NaN);
+                    if (!(hours >= 0 && hours <= 23) || !(minutes >= 0 && minutes <= 59)) {
+                        return false;
+                    }
+                    double time = parseInt(stripSeparators(value), Double.NaN);
+                    return !(min != null && time < parseInt(stripSeparators(min), Double.NaN))
+                            && !(max != null && time > parseInt(stripSeparators(max), Double.NaN));
+                case TYPE_DATE:
+                    double date = parseDate(value);
+                    if (Double.isNaN(date)) {
+                        return false;
+                    }
+                    return !(min != null && date < parseDate(min))
+                            && !(max != null && date > parseDate(max));
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * Splits a field name into the keys of its value in the form data: 'phone[][type]' is phone, [] and type.
+         */
+        private static String[] parsePath(String name) {
+            List<String> keys = new ArrayList<>();
+            int bracket = name.indexOf('[');
+            keys.add(bracket < 0 ? name : name.substring(0, bracket));
+            while (bracket >= 0) {
+                int close = name.indexOf(']', bracket);
+                if (close < 0) {
+                    break;
+                }
+                keys.add(name.substring(bracket + 1, close));
+                bracket = name.indexOf('[', close);
+            }
+            return keys.toArray(new String[keys.size()]);
+        }
+
+        private static String substring(String value, int start, int end) {
+            return value.substring(Math.min(start, value.length()), Math.min(end, value.length()));
+        }
+
+        private static String stripSeparators(String value) {
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c != '-' && c != '/' && c != '.' && c != ':') {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private static String emptyToNull(String value) {
+            return value == null || value.isEmpty() ? null : value;
+        }
+    }
+
+    /**
+     * Errors found in the form data, by input name.
+     */
+    public static final class Result {
+
+        private final List<String> requiredErrors = new ArrayList<>();
+        private final Map<String, String> validationErrors = new LinkedHashMap<>();
+
+        Result() {
+        }
+
+        /**
+         * @return true if the data has no errors.
+         */
+        public boolean isValid() {
+            return requiredErrors.isEmpty() && validationErrors.isEmpty();
+        }
+
+        /**
+         * @return the names of the required inputs that are missing or empty.
+         */
+        public List<String> getRequiredErrors() {
+            return Collections.unmodifiableList(requiredErrors);
+        }
+
+        /**
+         * @return the names of the inputs with values that are not valid, with the 'error' message of the field, which
+         * may be null.
+         */
+        public Map<String, String> getValidationErrors() {
+            return Collections.unmodifiableMap(validationErrors);
+        }
+
+        /**
+         * @return the errors in the format of Form.getFormErrors(): 'requiredErrors' with the input names and
+         * 'validationErrors' with their 'element' and 'message'. Each one is null if there are no errors of its kind.
+         */
+        public String toJson() {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("requiredErrors", requiredErrors.isEmpty() ? JSONObject.NULL : new JSONArray(requiredErrors));
+                JSONArray validation = new JSONArray();
+                for (Map.Entry<String, String> error : validationErrors.entrySet()) {
+                    validation.put(new JSONObject().put("element", error.getKey())
+                            .put("message", error.getValue() != null ? error.getValue() : ""));
+                }
+                json.put("validationErrors", validation.length() == 0 ? JSONObject.NULL : validation);
+                return json.toString();
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void addRequiredError(String inputName) {
+            requiredErrors.add(inputName);
+        }
+
+        void addValidationError(String inputName, String message) {
+            validationErrors.put(inputName, message);
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+
+}
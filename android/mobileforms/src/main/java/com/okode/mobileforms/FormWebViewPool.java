@@ -0,0 +1,304 @@
+package com.okode.mobileforms;
+
+import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps a small set of WebViews that have already loaded index.mobileforms.html and its libraries, so a Form can
+ * render without paying the page load and script parsing cost every time it is created.
+ * The pool is warmed on demand, usually from Application.onCreate():
+ *
+ * FormWebViewPool.getInstance().setMaxSize(3);
+ * FormWebViewPool.getInstance().warmUp(this);
+ *
+ * Form acquires a WebView from the pool in onCreateView() and gives it back in onDestroyView(), so no other
+ * integration is needed. Idle WebViews are evicted when the system reports low memory.
+ * All the methods must be called from the UI thread.
+ */
+public final class FormWebViewPool implements ComponentCallbacks2 {
+
+    private static final int DEFAULT_MAX_SIZE = 2;
+
+    //Clears the form, the custom css and scripts and the JS state of a page that is going back to the pool
+    private static final String JS_FUNC_RESET_FORM = "resetForm()";
+
+    private static FormWebViewPool instance;
+
+    private final LinkedList<WebView> idleWebViews = new LinkedList<>();
+    private final Set<WebView> loadedPages = Collections.newSetFromMap(new WeakHashMap<WebView, Boolean>());
+    private final Map<WebView, FormJsInterface> jsInterfaces = new WeakHashMap<>();
+    private final Map<WebView, Set<String>> fieldChunks = new WeakHashMap<>();
+    private Context applicationContext;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private int webViewCount;
+
+    private final WebViewClient warmUpClient = new WebViewClient() {
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            return FormAssetServer.getInstance(applicationContext).serve(request.getUrl().toString());
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            super.onPageFinished(view, url);
+            onPageLoaded(view);
+        }
+    };
+
+    private FormWebViewPool() {
+    }
+
+    /**
+     * Returns the process wide pool.
+     *
+     * @return the pool shared by all the Form instances.
+     */
+    public static synchronized FormWebViewPool getInstance() {
+        if (instance == null) {
+            instance = new FormWebViewPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of idle WebViews kept by the pool. Extra idle WebViews are destroyed.
+     * Setting 0 disables pooling, every Form will create and destroy its own WebView.
+     *
+     * @param maxSize maximum number of idle WebViews.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        trimToSize(this.maxSize);
+    }
+
+    /**
+     * @return the maximum number of idle WebViews kept by the pool.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of idle WebViews currently in the pool.
+     */
+    public int getIdleCount() {
+        return idleWebViews.size();
+    }
+
+    /**
+     * @return the number of WebViews created by the pool and not destroyed yet, idle or in use by a form.
+     */
+    int getWebViewCount() {
+        return webViewCount;
+    }
+
+    /**
+     * Fills the pool up to its maximum size with WebViews that start loading the form page right away.
+     *
+     * @param context any context, the application context is used to create the WebViews.
+     */
+    public void warmUp(Context context) {
+        warmUp(context, maxSize);
+    }
+
+    /**
+     * Fills the pool with WebViews that start loading the form page right away, never exceeding the maximum size.
+     *
+     * @param context any context, the application context is used to create the WebViews.
+     * @param count   number of idle WebViews wanted in the pool.
+     */
+    public void warmUp(Context context, int count) {
+        register(context);
+        int target = Math.min(count, maxSize);
+        while (idleWebViews.size() < target) {
+            WebView webView = createWebView(applicationContext);
+            webView.setWebViewClient(warmUpClient);
+            webView.loadUrl(Form.FORMHTML_URL);
+            idleWebViews.add(webView);
+        }
+    }
+
+    /**
+     * Destroys all the idle WebViews.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Takes a WebView from the pool, bound to the given context. Pages that have finished loading are preferred.
+     * A new WebView is created if the pool is empty.
+     *
+     * @param context context the WebView will run in, usually the activity.
+     * @return a WebView ready to be added to the view hierarchy.
+     */
+    WebView acquire(Context context) {
+        register(context);
+        WebView webView = null;
+        for (WebView idle : idleWebViews) {
+            if (loadedPages.contains(idle)) {
+                webView = idle;
+                break;
+            }
+        }
+        if (webView == null) {
+            webView = idleWebViews.poll();
+        } else {
+            idleWebViews.remove(webView);
+        }
+        if (webView == null) {
+            webView = createWebView(applicationContext);
+        }
+        detachFromParent(webView);
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(context);
+        return webView;
+    }
+
+    /**
+     * Gives a WebView back to the pool. It is reset and kept if there is room for it, destroyed otherwise.
+     *
+     * @param webView  WebView previously returned by acquire().
+     * @param reusable false when the page state cannot be reset (e.g. custom scripts have been run on it).
+     */
+    void release(WebView webView, boolean reusable) {
+        webView.setWebViewClient(warmUpClient);
+        webView.setWebChromeClient(null);
+        getJsInterface(webView).setReceiver(null);
+        webView.clearAnimation();
+        detachFromParent(webView);
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(applicationContext);
+        if (reusable && loadedPages.contains(webView) && idleWebViews.size() < maxSize) {
+            webView.evaluateJavascript(JS_FUNC_RESET_FORM, null);
+            idleWebViews.add(webView);
+        } else {
+            destroy(webView);
+        }
+    }
+
+    /**
+     * Tells if the WebView has already loaded the form page, so the form can be initialised without loading it again.
+     *
+     * @param webView WebView returned by acquire().
+     * @return true if index.mobileforms.html has finished loading.
+     */
+    boolean isPageLoaded(WebView webView) {
+        return loadedPages.contains(webView);
+    }
+
+    /**
+     * Returns the object exposed to the page as window.MobileFormsBridge, so Form can receive the results sent by JS.
+     *
+     * @param webView WebView returned by acquire().
+     * @return the JavaScript interface installed in the WebView.
+     */
+    FormJsInterface getJsInterface(WebView webView) {
+        return jsInterfaces.get(webView);
+    }
+
+    /**
+     * Marks the form page of the WebView as loaded. Used by Form, which replaces the pool WebViewClient.
+     *
+     * @param webView WebView returned by acquire().
+     */
+    void onPageLoaded(WebView webView) {
+        loadedPages.add(webView);
+        fieldChunks.remove(webView);
+    }
+
+    /**
+     * Returns the field chunks run in the form page of the WebView since it was loaded. Forms reusing the page add
+     * the chunks they inject, so a chunk is run once per page load.
+     *
+     * @param webView WebView returned by acquire().
+     * @return the paths of the chunks, modifiable.
+     */
+    Set<String> getFieldChunks(WebView webView) {
+        Set<String> chunks = fieldChunks.get(webView);
+        if (chunks == null) {
+            chunks = new HashSet<>();
+            fieldChunks.put(webView, chunks);
+        }
+        return chunks;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level == TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(idleWebViews.size() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void register(Context context) {
+        if (applicationContext == null) {
+            applicationContext = context.getApplicationContext();
+            applicationContext.registerComponentCallbacks(this);
+        }
+    }
+
+    private void trimToSize(int size) {
+        while (idleWebViews.size() > size) {
+            destroy(idleWebViews.removeFirst());
+        }
+    }
+
+    private void destroy(WebView webView) {
+        loadedPages.remove(webView);
+        jsInterfaces.remove(webView);
+        fieldChunks.remove(webView);
+        webViewCount--;
+        //The bridge and the page go first, so neither the DOM nor the Java objects it reaches wait for the
+        //native side of the WebView to be collected
+        detachFromParent(webView);
+        webView.stopLoading();
+        webView.removeJavascriptInterface(FormJsInterface.NAME);
+        webView.loadUrl("about:blank");
+        webView.removeAllViews();
+        webView.destroy();
+    }
+
+    @SuppressLint({"SetJavaScriptEnabled", "AddJavascriptInterface"})
+    private WebView createWebView(Context context) {
+        WebView webView = new WebView(new MutableContextWrapper(context));
+        webViewCount++;
+        webView.getSettings().setJavaScriptEnabled(true);
+        FormJsInterface jsInterface = new FormJsInterface();
+        webView.addJavascriptInterface(jsInterface, FormJsInterface.NAME);
+        jsInterfaces.put(webView, jsInterface);
+        return webView;
+    }
+
+    private static void detachFromParent(WebView webView) {
+        ViewParent parent = webView.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(webView);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.okode.mobileforms;
+
+import android.view.Choreographer;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the JavaScript commands sent to the form page and runs them together with a single evaluateJavascript call.
+ * Each command is isolated in its own try/catch, so a failing command does not prevent the next ones from running,
+ * as it happened when every command was a separate javascript: navigation.
+ * Commands longer than FormScripts.MAX_COMMAND_LENGTH, such as big form definitions or custom files, are sent to the
+ * page ahead in chunks, each with its own evaluateJavascript call, and only a short command that runs them is queued.
+ * So the script of a call stays bounded, and the command is never built as a whole nor copied into a script.
+ * Must be used from the UI thread.
+ */
+final class JsCommandQueue implements Choreographer.FrameCallback {
+
+    private final WebView webView;
+    private final List<String> commands = new ArrayList<>();
+    private Form.BridgeFlushPolicy flushPolicy = Form.BridgeFlushPolicy.NEXT_FRAME;
+    private boolean frameScheduled;
+    private int roundTrips;
+    private int nextPayloadId;
+
+    JsCommandQueue(WebView webView) {
+        this.webView = webView;
+    }
+
+    void setFlushPolicy(Form.BridgeFlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+        if (flushPolicy == Form.BridgeFlushPolicy.IMMEDIATE) {
+            flush();
+        }
+    }
+
+    Form.BridgeFlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Adds a command to the queue. Depending on the flush policy it is sent right away, on the next frame, or when
+     * flush() is called.
+     *
+     * @param js JavaScript statement, without the javascript: scheme.
+     */
+    void enqueue(String js) {
+        if (js.length() > FormScripts.MAX_COMMAND_LENGTH) {
+            js = sendChunks("", js, "");
+        }
+        commands.add(js);
+        switch (flushPolicy) {
+            case IMMEDIATE:
+                flush();
+                break;
+            case NEXT_FRAME:
+                if (!frameScheduled) {
+                    frameScheduled = true;
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+                break;
+            case MANUAL:
+                break;
+        }
+    }
+
+    /**
+     * Adds a call with a single argument, such as a form definition or its data, like enqueue() does. A call too long
+     * to be sent at once is not built, its chunks are taken right from the argument.
+     *
+     * @param function JavaScript function and its opening parenthesis, e.g. FormScripts.JS_FUNC_SET_JSON_FORM.
+     * @param argument JavaScript expression of the argument, e.g. a JSON String, or null.
+     */
+    void enqueueCall(String function, String argument) {
+        if (argument != null && function.length() + argument.length() + 1 > FormScripts.MAX_COMMAND_LENGTH) {
+            enqueue(sendChunks(function, argument, ")"));
+        } else {
+            enqueue(FormScripts.call(function, argument));
+        }
+    }
+
+    /**
+     * Sends all the queued commands as one script.
+     */
+    void flush() {
+        cancelFrame();
+        if (commands.isEmpty()) {
+            return;
+        }
+        String script = FormScripts.join(commands);
+        commands.clear();
+        roundTrips++;
+        webView.evaluateJavascript(script, null);
+    }
+
+    /**
+     * Drops the queued commands without sending them, e.g. when the WebView is being released.
+     */
+    void clear() {
+        cancelFrame();
+        commands.clear();
+    }
+
+    int getRoundTrips() {
+        return roundTrips;
+    }
+
+    void resetRoundTrips() {
+        roundTrips = 0;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        flush();
+    }
+
+    /**
+     * Sends a long command to the page in chunks, right away. The page only gathers them, so they can be sent ahead
+     * of the commands queued before.
+     *
+     * @return the command that runs the long one once it is queued.
+     */
+    private String sendChunks(String prefix, String text, String suffix) {
+        int id = nextPayloadId++;
+        int start = 0;
+        do {
+            int end = FormScripts.chunkEnd(text, start, FormScripts.MAX_COMMAND_LENGTH);
+            String chunk = FormScripts.appendPayload(id, start == 0 ? prefix : "", text, start, end,
+                    end == text.length() ? suffix : "");
+            roundTrips++;
+            webView.evaluateJavascript(chunk, null);
+            start = end;
+        } while (start < text.length());
+        return FormScripts.runPayload(id);
+    }
+
+    private void cancelFrame() {
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.okode.mobileforms;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Options of the select and radio fields whose 'optionsource' attribute names it, see Form.setOptionSource().
+ * The form page asks for them a page at a time and by search prefix, so lists of thousands of options are neither in
+ * the form definition nor in the page. SortedOptionSource keeps them in memory, sorted by label.
+ * Methods are called on the JavaBridge thread while the page waits for the answer, they must be thread safe and fast.
+ */
+public interface OptionSource {
+
+    /**
+     * Returns a page of the options whose label starts with a prefix.
+     *
+     * @param prefix text typed in the field, empty for all the options.
+     * @param offset index of the first option of the page among the matching ones.
+     * @param limit  maximum number of options of the page.
+     * @return the page, never null.
+     */
+    Page query(String prefix, int offset, int limit);
+
+    /**
+     * @param value value of an option, as sent by the page or populated.
+     * @return the label of the option, or null if there is no option with that value.
+     */
+    String getLabel(String value);
+
+    /**
+     * Options of a query, with the number of options matching it so the page knows when to stop asking.
+     */
+    final class Page {
+
+        public final int total;
+        public final List<String> values;
+        public final List<String> labels;
+
+        /**
+         * @param total  number of options matching the query, in all the pages.
+         * @param values values of the options of the page.
+         * @param labels labels of the options of the page, in the order of values.
+         */
+        public Page(int total, List<String> values, List<String> labels) {
+            if (values.size() != labels.size()) {
+                throw new IllegalArgumentException("Values and labels of the page differ in size");
+            }
+            this.total = total;
+            this.values = Collections.unmodifiableList(values);
+            this.labels = Collections.unmodifiableList(labels);
+        }
+
+        /**
+         * @return the page as the form page reads it: {"total":n,"values":[...],"labels":[...]}
+         */
+        String toJson() {
+            StringBuilder json = new StringBuilder(32 + 24 * values.size());
+            json.append("{\"total\":").append(total).append(",\"values\":");
+            appendArray(json, values);
+            json.append(",\"labels\":");
+            appendArray(json, labels);
+            return json.append('}').toString();
+        }
+
+        private static void appendArray(StringBuilder json, List<String> strings) {
+            json.append('[');
+            for (int i = 0; i < strings.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(JSONObject.quote(strings.get(i)));
+            }
+            json.append(']');
+        }
+    }
+
+}
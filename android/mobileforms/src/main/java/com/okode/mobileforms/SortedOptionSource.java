@@ -0,0 +1,156 @@
+package com.okode.mobileforms;
+
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * OptionSource of a list of options kept in memory, sorted by label, which finds the options of a prefix with a binary
+ * search instead of going through all of them. Prefixes match the labels ignoring case and accents, and the options
+ * of a page are in the order of their labels.
+ * Sorting is done once, in the constructor, which takes some tens of milliseconds for tens of thousands of options:
+ * create it in background. It is immutable and thread safe.
+ */
+public final class SortedOptionSource implements OptionSource {
+
+    //Combining marks left by the decomposition of accented letters
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final String[] values;
+    private final String[] labels;
+    //Positions of the options sorted by their search key, and their keys in that order
+    private final int[] sorted;
+    private final String[] sortedKeys;
+    private final Map<String, Integer> byValue;
+
+    /**
+     * @param values values of the options.
+     * @param labels labels of the options, in the order of values, or null to show the values.
+     */
+    public SortedOptionSource(List<String> values, List<String> labels) {
+        if (labels != null && labels.size() != values.size()) {
+            throw new IllegalArgumentException("Values and labels of the options differ in size");
+        }
+        int count = values.size();
+        this.values = values.toArray(new String[count]);
+        this.labels = labels != null ? labels.toArray(new String[count]) : this.values;
+        final String[] keys = new String[count];
+        this.byValue = new HashMap<>(count * 4 / 3 + 1);
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = searchKey(this.labels[i] != null ? this.labels[i] : "");
+            order[i] = i;
+            if (!byValue.containsKey(this.values[i])) {
+                byValue.put(this.values[i], i);
+            }
+        }
+        //Keys are compared as plain strings so the binary search agrees with the sort, the collator only breaks ties
+        final Collator collator = Collator.getInstance(Locale.getDefault());
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int result = keys[a].compareTo(keys[b]);
+                return result != 0 ? result : collator.compare(label(a), label(b));
+            }
+        });
+        this.sorted = new int[count];
+        this.sortedKeys = new String[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = order[i];
+            sortedKeys[i] = keys[order[i]];
+        }
+    }
+
+    /**
+     * Creates the source of the options of a field definition, 'optionvalues' and 'optionlabels' separated by '|'.
+     *
+     * @param optionValues values of the options separated by '|'.
+     * @param optionLabels labels of the options separated by '|', or null to show the values.
+     * @return the source.
+     */
+    public static SortedOptionSource fromPipes(String optionValues, String optionLabels) {
+        List<String> values = Arrays.asList(optionValues.split("\\|", -1));
+        List<String> labels = null;
+        if (optionLabels != null) {
+            //Options without a label show their value, as in the page
+            String[] split = optionLabels.split("\\|", -1);
+            labels = new ArrayList<>(values);
+            for (int i = 0; i < split.length && i < labels.size(); i++) {
+                labels.set(i, split[i]);
+            }
+        }
+        return new SortedOptionSource(values, labels);
+    }
+
+    /**
+     * @return the number of options.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Page query(String prefix, int offset, int limit) {
+        String key = searchKey(prefix != null ? prefix : "");
+        int from = lowerBound(key);
+        int to = key.isEmpty() ? sortedKeys.length : lowerBound(key + Character.MAX_VALUE);
+        int total = to - from;
+        int start = from + Math.min(Math.max(0, offset), total);
+        int end = Math.min(to, start + Math.max(0, limit));
+        List<String> pageValues = new ArrayList<>(end - start);
+        List<String> pageLabels = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            pageValues.add(values[sorted[i]]);
+            pageLabels.add(label(sorted[i]));
+        }
+        return new Page(total, pageValues, pageLabels);
+    }
+
+    @Override
+    public String getLabel(String value) {
+        Integer index = byValue.get(value);
+        return index != null ? label(index) : null;
+    }
+
+    private String label(int index) {
+        return labels[index] != null ? labels[index] : values[index];
+    }
+
+    /**
+     * @return the first position of the sorted keys whose key is not lower than key.
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedKeys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the text in lower case and without accents, as prefixes and labels are compared.
+     */
+    static String searchKey(String text) {
+        String key = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) > 0x7f) {
+                return MARKS.matcher(Normalizer.normalize(key, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return key;
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.okode.mobileforms;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class AssetTextTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void read_keepsLineBreaks() throws Exception {
+        String text = "// comment\nvar a = 1;\r\nvar b = 2;\n";
+        assertEquals(text, AssetText.read(stream(text)));
+    }
+
+    @Test
+    public void read_decodesUtf8() throws Exception {
+        String text = "Tel\u00e9fono m\u00f3vil \u20ac \ud83d\ude00";
+        assertEquals(text, AssetText.read(stream(text)));
+    }
+
+    @Test
+    public void read_emptyStream() throws Exception {
+        assertEquals("", AssetText.read(stream("")));
+    }
+
+    @Test
+    public void read_growsWhenAvailableUnderestimates() throws Exception {
+        String text = repeat("0123456789\u00f1", 10000);
+        assertEquals(text, AssetText.read(new UnknownLengthStream(text.getBytes(UTF8))));
+    }
+
+    @Test
+    public void read_reusedBuffersDoNotLeakPreviousText() throws Exception {
+        AssetText.read(stream(repeat("x", 5000)));
+        assertEquals("short", AssetText.read(stream("short")));
+    }
+
+    @Test
+    public void read_bigAsset() throws Exception {
+        String text = repeat("body { color: red; }\n", 20000);
+        assertEquals(text, AssetText.read(stream(text)));
+        assertEquals("a", AssetText.read(stream("a")));
+    }
+
+    @Test
+    public void read_closesStream() throws Exception {
+        UnknownLengthStream stream = new UnknownLengthStream("abc".getBytes(UTF8));
+        AssetText.read(stream);
+        assertTrue(stream.closed);
+    }
+
+    @Test
+    public void escapeJs_exactOutput() {
+        assertEquals("a\\\\b\\\"c\\'d\\ne\\rf\\fg", AssetText.escapeJs("a\\b\"c'd\ne\rf\fg"));
+    }
+
+    @Test
+    public void escapeJs_lineSeparators() {
+        assertEquals("a\\u2028b\\u2029c", AssetText.escapeJs("a\u2028b\u2029c"));
+    }
+
+    @Test
+    public void escapeJs_leavesOtherCharsAlone() {
+        String text = "\tplain text, \u00f1 \u20ac <script></script> /* */";
+        assertEquals(text, AssetText.escapeJs(text));
+    }
+
+    @Test
+    public void escapeJs_edges() {
+        assertEquals("", AssetText.escapeJs(""));
+        assertEquals("\\n", AssetText.escapeJs("\n"));
+        assertEquals("\\\\\\\\", AssetText.escapeJs("\\\\"));
+        assertEquals("x\\'", AssetText.escapeJs("x'"));
+    }
+
+    @Test
+    public void escapeJs_range() {
+        StringBuilder out = new StringBuilder("x");
+        AssetText.escapeJs("a\"b\nc", 1, 4, out);
+        assertEquals("x\\\"b\\n", out.toString());
+    }
+
+    @Test
+    public void escapeJs_matchesLegacyEscaping() {
+        String text = "a\\b \"q\" 'q'\n\r\f end";
+        String legacy = text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\'", "\\\'")
+                .replace("\n", "\\n").replace("\r", "\\r").replace("\f", "\\f");
+        assertEquals(legacy, AssetText.escapeJs(text));
+    }
+
+    @Test
+    public void readJsCall_wrapsEscapedText() throws Exception {
+        String js = AssetText.readJsCall(stream("// hi\nalert(\"x\");"), "addJS(\"", "\")");
+        assertEquals("addJS(\"// hi\\nalert(\\\"x\\\");\")", js);
+    }
+
+    @Test
+    public void readJsCall_emptyStreamReturnsNull() throws Exception {
+        assertNull(AssetText.readJsCall(stream(""), "addJS(\"", "\")"));
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(UTF8));
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder sb = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stream that does not know its length, like a compressed asset, and returns few bytes per read.
+     */
+    private static class UnknownLengthStream extends ByteArrayInputStream {
+
+        boolean closed;
+
+        UnknownLengthStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int available() {
+            return 0;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 100));
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+}
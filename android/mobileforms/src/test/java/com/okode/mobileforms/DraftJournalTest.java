@@ -0,0 +1,111 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DraftJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private DraftJournal journal;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "drafts/draft.journal");
+        journal = new DraftJournal(file);
+    }
+
+    @Test
+    public void read_withoutDraft() throws IOException {
+        assertFalse(journal.exists());
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void writeChanges_mergedOverSnapshot() throws IOException, JSONException {
+        journal.writeSnapshot("{\"name\":\"John\",\"city\":\"mad\",\"phone\":[{\"type\":\"work\"}]}");
+        journal.writeChanges(Arrays.asList("{\"name\":\"Jo\"}", "{\"name\":\"Joe\",\"city\":null}"));
+        journal.writeChanges(Collections.singletonList("{\"age\":\"30\"}"));
+        assertTrue(journal.exists());
+
+        JSONObject draft = new JSONObject(new DraftJournal(file).read());
+        assertEquals("Joe", draft.getString("name"));
+        assertFalse(draft.has("city"));
+        assertEquals("30", draft.getString("age"));
+        assertEquals("work", draft.getJSONArray("phone").getJSONObject(0).getString("type"));
+    }
+
+    @Test
+    public void writeChanges_oneLinePerBatchWithLastValues() throws IOException {
+        journal.writeSnapshot("{\"name\":\"\"}");
+        long snapshotLength = journal.length();
+        journal.writeChanges(Arrays.asList("{\"name\":\"J\"}", "{\"name\":\"Jo\"}", "{\"name\":\"Joe\"}"));
+        assertEquals(snapshotLength + "D{\"name\":\"Joe\"}\n".length(), journal.length());
+    }
+
+    @Test
+    public void writeSnapshot_replacesJournal() throws IOException {
+        journal.writeSnapshot("{\"name\":\"John\"}");
+        journal.writeChanges(Collections.singletonList("{\"age\":\"30\"}"));
+        journal.writeSnapshot("{\n  \"name\": \"Ann\"\n}");
+        assertEquals("S{\"name\":\"Ann\"}\n".length(), journal.length());
+        assertEquals("{\"name\":\"Ann\"}", journal.read());
+    }
+
+    @Test
+    public void read_dropsBrokenRecord() throws IOException {
+        journal.writeSnapshot("{\"name\":\"John\"}");
+        journal.writeChanges(Collections.singletonList("{\"age\":\"30\"}"));
+        long length = journal.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("D{\"age\":\"3".getBytes("UTF-8"));
+        out.close();
+
+        DraftJournal reopened = new DraftJournal(file);
+        assertEquals("{\"name\":\"John\",\"age\":\"30\"}", reopened.read());
+        assertEquals(length, reopened.length());
+        reopened.writeChanges(Collections.singletonList("{\"age\":\"31\"}"));
+        assertEquals("{\"name\":\"John\",\"age\":\"31\"}", new DraftJournal(file).read());
+    }
+
+    @Test
+    public void writeChanges_compactsOnceChangesOutgrowSnapshot() throws IOException, JSONException {
+        journal.writeSnapshot("{\"name\":\"John\"}");
+        long maxLength = 0;
+        for (int i = 0; i < 2000; i++) {
+            List<String> batch = new ArrayList<>();
+            batch.add("{\"remarks\":\"" + i + " " + new String(new char[40]).replace('\0', 'x') + "\"}");
+            journal.writeChanges(batch);
+            maxLength = Math.max(maxLength, journal.length());
+        }
+        assertTrue(maxLength < 2 * 64 * 1024);
+        JSONObject draft = new JSONObject(journal.read());
+        assertEquals("John", draft.getString("name"));
+        assertTrue(draft.getString("remarks").startsWith("1999 "));
+    }
+
+    @Test
+    public void delete_removesDraft() throws IOException {
+        journal.writeSnapshot("{\"name\":\"John\"}");
+        journal.delete();
+        assertFalse(journal.exists());
+        assertNull(journal.read());
+    }
+
+}
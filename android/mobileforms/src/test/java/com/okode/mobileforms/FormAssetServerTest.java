@@ -0,0 +1,106 @@
+package com.okode.mobileforms;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FormAssetServerTest {
+
+    private static final String PAGE = "<body>\n"
+            + "    <script>\n        var start = 0;\n    </script>\n"
+            + "    <script src=\"mobileforms.libraries.js\"></script>\n"
+            + "    <script src=\"mobileforms.utils.js\"></script>\n"
+            + "    <script src=\"mobileforms.js\"></script>\n"
+            + "    <script src=\"fields/mobileforms.field.date.js\"></script>\n"
+            + "    <script>\n        var time = 1;\n    </script>\n"
+            + "    <script src=\"custom.js\"></script>\n"
+            + "    <link id=\"cssTemplate\" href=\"templates/mobileforms.ios.css\" rel=\"stylesheet\">\n"
+            + "    <script>\n        var cssTemplateHref = 'templates/mobileforms.ios.css';\n    </script>\n"
+            + "</body>";
+
+    @Test
+    public void rewritePage_joinsConsecutiveScripts() {
+        List<String> scripts = new ArrayList<>();
+        String page = FormAssetServer.rewritePage(PAGE, scripts);
+        assertEquals(Arrays.asList("mobileforms.libraries.js", "mobileforms.utils.js", "mobileforms.js"), scripts);
+        assertTrue(page.contains("    <script src=\"mobileforms.bundle.js\"></script>\n    <script>\n        var time"));
+        assertFalse(page.contains("mobileforms.utils.js"));
+        //Field chunks are injected by Form
+        assertFalse(page.contains("fields/"));
+        //Scripts after an inline script keep their own tag
+        assertTrue(page.contains("<script src=\"custom.js\"></script>"));
+        assertTrue(page.indexOf("var start") < page.indexOf(FormAssetServer.BUNDLE));
+    }
+
+    @Test
+    public void rewritePage_choosesAndroidTemplate() {
+        String page = FormAssetServer.rewritePage(PAGE, new ArrayList<String>());
+        assertFalse(page.contains("mobileforms.ios.css"));
+        assertTrue(page.contains("href=\"templates/mobileforms.android.css\""));
+        assertTrue(page.contains("var cssTemplateHref = 'templates/mobileforms.android.css'"));
+    }
+
+    @Test
+    public void rewritePage_singleScriptIsKept() {
+        List<String> scripts = new ArrayList<>();
+        String html = "<script src=\"mobileforms.js\"></script>";
+        assertEquals(html, FormAssetServer.rewritePage(html, scripts));
+        assertTrue(scripts.isEmpty());
+    }
+
+    @Test
+    public void getFieldChunks_onlyTypesWithChunk() {
+        String json = "{\"sections\":[{\"fields\":[{\"type\":\"text\",\"label\":\"\\\"type\\\":\\\"file\\\"\"},"
+                + "{\"type\":\"time\"},{\"type\" : \"date\"},{\"type\":\"date\"}]}]}";
+        assertEquals(Arrays.asList("fields/mobileforms.field.date.js", "fields/mobileforms.field.time.js"),
+                new ArrayList<>(FormAssetServer.getFieldChunks(json)));
+    }
+
+    @Test
+    public void getFieldChunks_legacyArrayDefinition() {
+        String json = "[{\"type\":\"phoneitem\",\"name\":\"phone\"},{\"type\":\"range\"}]";
+        assertEquals(Arrays.asList("fields/mobileforms.field.range.js", "fields/mobileforms.field.phoneitem.js"),
+                new ArrayList<>(FormAssetServer.getFieldChunks(json)));
+        assertTrue(FormAssetServer.getFieldChunks("{\"sections\":[]}").isEmpty());
+    }
+
+    @Test
+    public void getFieldChunks_optionSourceAfterTypes() {
+        String json = "{\"sections\":[{\"fields\":[{\"type\":\"select\",\"optionsource\" : \"cities\"},"
+                + "{\"type\":\"date\"}]}]}";
+        assertEquals(Arrays.asList("fields/mobileforms.field.date.js", "fields/mobileforms.field.optionsource.js"),
+                new ArrayList<>(FormAssetServer.getFieldChunks(json)));
+    }
+
+    @Test
+    public void appendScript_endsStatementsAndLines() {
+        StringBuilder bundle = new StringBuilder();
+        FormAssetServer.appendScript(bundle, "var a = 1 // no semicolon");
+        FormAssetServer.appendScript(bundle, "(function() {})()");
+        assertEquals("var a = 1 // no semicolon\n;\n(function() {})()\n;\n", bundle.toString());
+    }
+
+    @Test
+    public void getMimeType() {
+        assertEquals("text/html", FormAssetServer.getMimeType("index.mobileforms.html"));
+        assertEquals("application/javascript", FormAssetServer.getMimeType(FormAssetServer.BUNDLE));
+        assertEquals("text/css", FormAssetServer.getMimeType("templates/mobileforms.android.css"));
+        assertEquals("image/png", FormAssetServer.getMimeType("images/arrow.PNG"));
+        assertEquals("application/octet-stream", FormAssetServer.getMimeType("fonts/icons.woff"));
+    }
+
+    @Test
+    public void isCached_onlyPageFiles() {
+        assertTrue(FormAssetServer.isCached("index.mobileforms.html"));
+        assertTrue(FormAssetServer.isCached(FormAssetServer.BUNDLE));
+        assertTrue(FormAssetServer.isCached("templates/mobileforms.android.css"));
+        assertTrue(FormAssetServer.isCached("fields/mobileforms.field.date.js"));
+        assertFalse(FormAssetServer.isCached("images/arrow.png"));
+        assertFalse(FormAssetServer.isCached("mobileforms.builder.js"));
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FormDataModelTest {
+
+    @Test
+    public void merge_replacesValuesByRootKey() throws JSONException {
+        FormDataModel model = new FormDataModel();
+        model.replace("{\"name\":\"John\",\"phone\":[{\"type\":\"home\",\"number\":\"1\"}],\"terms\":true}");
+        model.merge("{\"phone\":[{\"type\":\"work\",\"number\":\"2\"}],\"age\":30}");
+
+        assertEquals(4, model.size());
+        assertEquals("John", model.get("name"));
+        JSONArray phone = (JSONArray) model.get("phone");
+        assertEquals(1, phone.length());
+        assertEquals("work", phone.getJSONObject(0).getString("type"));
+        assertEquals(30, model.get("age"));
+        assertEquals(Boolean.TRUE, model.get("terms"));
+    }
+
+    @Test
+    public void merge_nullRemovesKey() throws JSONException {
+        FormDataModel model = new FormDataModel();
+        model.replace("{\"name\":\"John\",\"email\":\"john@example.com\"}");
+        model.merge("{\"email\":null}");
+        assertEquals(1, model.size());
+        assertNull(model.get("email"));
+    }
+
+    @Test
+    public void replace_dropsPreviousValues() throws JSONException {
+        FormDataModel model = new FormDataModel();
+        model.replace("{\"name\":\"John\",\"email\":\"john@example.com\"}");
+        model.replace("{\"name\":\"Ann\"}");
+        assertEquals(1, model.size());
+        assertEquals("Ann", model.get("name"));
+        assertNull(model.get("email"));
+
+        model.replace(null);
+        assertEquals(0, model.size());
+        assertEquals("{}", model.toJson());
+    }
+
+    @Test
+    public void toJson_followsChanges() throws JSONException {
+        FormDataModel model = new FormDataModel();
+        model.replace("{\"name\":\"John\"}");
+        String json = model.toJson();
+        assertSame(json, model.toJson());
+
+        model.merge("{\"name\":\"Ann\"}");
+        assertEquals("Ann", new JSONObject(model.toJson()).getString("name"));
+    }
+
+    @Test
+    public void merge_rejectsNonObjects() throws JSONException {
+        FormDataModel model = new FormDataModel();
+        model.replace("{\"name\":\"John\"}");
+        String[] payloads = {"[1,2]", "\"text\"", "42", "null"};
+        for (String payload : payloads) {
+            try {
+                model.merge(payload);
+                fail("Merged " + payload);
+            } catch (JSONException e) {
+                //Expected, the model is left as it was
+            }
+        }
+        assertEquals("{\"name\":\"John\"}", model.toJson());
+    }
+
+    @Test(expected = JSONException.class)
+    public void replace_rejectsNonObjects() throws JSONException {
+        new FormDataModel().replace("[{\"name\":\"John\"}]");
+    }
+
+}
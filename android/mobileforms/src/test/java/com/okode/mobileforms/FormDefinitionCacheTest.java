@@ -0,0 +1,111 @@
+package com.okode.mobileforms;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+public class FormDefinitionCacheTest {
+
+    private static final String FORM = "{\"id\":\"form\",\"version\":3,\"sections\":[{\"title\":\"Contact\",\"fields\":["
+            + "{\"name\":\"firstName\",\"type\":\"text\",\"label\":\"Name\",\"comment\":\"x\"}]}]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "forms");
+    }
+
+    @Test
+    public void compile_hit() throws JSONException {
+        FormDefinitionCache cache = new FormDefinitionCache(directory);
+        String compiled = cache.compile(FORM);
+        assertEquals(FormDefinition.parse(FORM).toJson(), compiled);
+        assertEquals(1, directory.listFiles().length);
+
+        //Hits in memory do not read the disk
+        directory.listFiles()[0].delete();
+        assertSame(compiled, cache.compile(new String(FORM)));
+        assertSame(compiled, cache.compile(compiled));
+    }
+
+    @Test
+    public void compile_missReadsDisk() throws JSONException, IOException {
+        new FormDefinitionCache(directory).compile(FORM);
+        File file = new File(directory, FormDefinitionCache.hash(FORM) + ".v2.json");
+        assertTrue(file.isFile());
+
+        //A new cache, as after a launch, takes the compiled definition from the disk
+        write(file, "{\"sections\":[]}");
+        assertEquals("{\"sections\":[]}", new FormDefinitionCache(directory).compile(FORM));
+    }
+
+    @Test
+    public void compile_arrayFormat() throws JSONException {
+        String compiled = new FormDefinitionCache(directory).compile("[ {\"type\" : \"text\"} ]");
+        assertEquals("[{\"type\":\"text\"}]", compiled);
+    }
+
+    @Test(expected = JSONException.class)
+    public void compile_invalid() throws JSONException {
+        new FormDefinitionCache(directory).compile("\"form\"");
+    }
+
+    @Test
+    public void compile_trimsDiskCache() throws JSONException {
+        FormDefinitionCache cache = new FormDefinitionCache(directory);
+        String first = null;
+        for (int i = 0; i < 33; i++) {
+            String form = "{\"id\":\"form" + i + "\",\"sections\":[]}";
+            cache.compile(form);
+            File file = new File(directory, FormDefinitionCache.hash(form) + ".v2.json");
+            if (i == 0) {
+                first = file.getName();
+            }
+            if (i < 32) {
+                file.setLastModified(1000000L * (i + 1));
+            }
+        }
+        assertEquals(32, directory.listFiles().length);
+        assertFalse(new File(directory, first).exists());
+    }
+
+    @Test
+    public void parse_shared() throws JSONException {
+        FormDefinitionCache cache = new FormDefinitionCache(directory);
+        FormDefinition definition = cache.parse(FORM);
+        assertSame(definition, cache.parse(new String(FORM)));
+        assertSame(definition, cache.parse(definition.toJson()));
+    }
+
+    @Test
+    public void clear() throws JSONException {
+        FormDefinitionCache cache = new FormDefinitionCache(directory);
+        String compiled = cache.compile(FORM);
+        cache.clear();
+        assertEquals(0, directory.listFiles().length);
+        String recompiled = cache.compile(FORM);
+        assertEquals(compiled, recompiled);
+        assertNotSame(compiled, recompiled);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(text);
+        }
+    }
+
+}
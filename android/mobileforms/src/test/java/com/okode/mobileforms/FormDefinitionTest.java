@@ -0,0 +1,95 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FormDefinitionTest {
+
+    private static final String FORM = "{\"id\":\"form\",\"sections\":["
+            + "{\"title\":\"Contact\",\"fields\":["
+            + "{\"name\":\"firstName\",\"type\":\"text\",\"label\":\"Name\",\"required\":\"true\",\"comment\":\"x\"},"
+            + "{\"type\":\"email\",\"name\":\"email\",\"filter\":\"^[^@]+@[^@]+$\",\"required\":false},"
+            + "{\"type\":\"phoneitem\",\"name\":\"phone[]\",\"namephone\":\"number\",\"required\":1},"
+            + "{\"type\":\"unknown\",\"name\":\"skipped\"},"
+            + "{\"type\":\"select\",\"name\":\"country\",\"optionvalues\":\"es,fr\",\"style\":{\"a\":1}}"
+            + "]},"
+            + "{\"title\":\"Empty\",\"fields\":[]},"
+            + "{\"fields\":[{\"type\":\"checkbox\",\"name\":\"terms\",\"required\":true}]}"
+            + "],\"submit\":\"Accept\",\"version\":3}";
+
+    @Test
+    public void parse_sectionsAndFields() throws JSONException {
+        FormDefinition definition = FormDefinition.parse(FORM);
+        assertEquals("form", definition.getId());
+        assertEquals("Accept", definition.getSubmit());
+        assertEquals(3, definition.getSections().size());
+        assertEquals("Contact", definition.getSections().get(0).getTitle());
+        assertEquals("Empty", definition.getSections().get(1).getTitle());
+        assertTrue(definition.getSections().get(1).getFields().isEmpty());
+        assertNull(definition.getSections().get(2).getTitle());
+        assertEquals(5, definition.getFieldCount());
+        assertEquals(FormDefinition.FieldType.PHONEITEM, definition.getField("phone[]").getType());
+        assertEquals("Name", definition.getField("firstName").getLabel());
+        assertNull(definition.getField("skipped"));
+    }
+
+    @Test
+    public void parse_requiredLikeThePage() throws JSONException {
+        FormDefinition definition = FormDefinition.parse(FORM);
+        assertTrue(definition.getField("firstName").isRequired());
+        assertFalse(definition.getField("email").isRequired());
+        assertTrue(definition.getField("phone[]").isRequired());
+        assertTrue(definition.getField("terms").isRequired());
+        assertFalse(definition.getField("country").isRequired());
+    }
+
+    @Test
+    public void parse_dropsIgnoredAttributes() throws JSONException {
+        FormDefinition.Field field = FormDefinition.parse(FORM).getField("firstName");
+        assertEquals(Arrays.asList("type", "name", "label", "required"),
+                Arrays.asList(field.getAttributes().keySet().toArray()));
+        assertNull(field.getString("comment"));
+        assertNull(FormDefinition.parse(FORM).getField("country").getString("style"));
+    }
+
+    @Test
+    public void toJson_compactAndParseable() throws JSONException {
+        FormDefinition definition = FormDefinition.parse(FORM);
+        String json = definition.toJson();
+        assertTrue(json.length() < FORM.length());
+        assertFalse(json.contains("version"));
+        JSONObject compiled = new JSONObject(json);
+        JSONArray sections = compiled.getJSONArray("sections");
+        assertEquals(3, sections.length());
+        assertEquals(0, sections.getJSONObject(1).getJSONArray("fields").length());
+        assertEquals("text", sections.getJSONObject(0).getJSONArray("fields").getJSONObject(0).getString("type"));
+        assertEquals(json, FormDefinition.parse(json).toJson());
+        assertSame(json, definition.toJson());
+    }
+
+    @Test
+    public void toJson_escapesLineSeparators() throws JSONException {
+        FormDefinition definition = FormDefinition.parse(
+                "{\"sections\":[{\"title\":\"a\u2028b\",\"fields\":[{\"type\":\"text\",\"label\":\"c\u2029d\"}]}]}");
+        assertFalse(definition.toJson().contains("\u2028"));
+        assertFalse(definition.toJson().contains("\u2029"));
+        assertEquals("a\u2028b", FormDefinition.parse(definition.toJson()).getSections().get(0).getTitle());
+    }
+
+    @Test
+    public void parse_submitNull() throws JSONException {
+        assertNull(FormDefinition.parse("{\"sections\":[],\"submit\":null}").getSubmit());
+    }
+
+    @Test(expected = JSONException.class)
+    public void parse_notAnObject() throws JSONException {
+        FormDefinition.parse("[{\"fields\":[]}]");
+    }
+
+}
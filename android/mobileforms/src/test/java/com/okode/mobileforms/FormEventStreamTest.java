@@ -0,0 +1,180 @@
+package com.okode.mobileforms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class FormEventStreamTest {
+
+    private final List<String> delivered = new ArrayList<>();
+    private final List<Runnable> executorTasks = new ArrayList<>();
+    private long now;
+    private Runnable scheduledTask;
+    private long scheduledAt;
+    private FormEventStream stream;
+
+    @Before
+    public void setUp() {
+        stream = new FormEventStream(new FormEventStream.Sink() {
+            @Override
+            public void onEvent(FormEvent event) {
+                delivered.add(event.type + " " + event.element + "=" + event.value);
+            }
+        }, new FormEventStream.Timer() {
+            @Override
+            public long now() {
+                return now;
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduledTask = task;
+                scheduledAt = now + delayMillis;
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduledTask = null;
+            }
+        });
+    }
+
+    @Test
+    public void post_withoutWindowDeliversEveryEvent() {
+        stream.post(change("name", "J"));
+        stream.post(change("name", "Jo"));
+        assertEquals(Arrays.asList("CHANGE name=J", "CHANGE name=Jo"), delivered);
+        assertNull(scheduledTask);
+    }
+
+    @Test
+    public void post_coalescesChangesWithinWindow() {
+        stream.setChangeWindow(300);
+        stream.post(change("name", "J"));
+        advance(100);
+        stream.post(change("name", "Jo"));
+        stream.post(change("email", "j@"));
+        advance(100);
+        stream.post(change("name", "Joe"));
+        assertTrue(delivered.isEmpty());
+
+        advance(100);
+        assertEquals(Arrays.asList("CHANGE name=Joe"), delivered);
+        advance(100);
+        assertEquals(Arrays.asList("CHANGE name=Joe", "CHANGE email=j@"), delivered);
+        assertNull(scheduledTask);
+    }
+
+    @Test
+    public void post_otherEventsDeliverHeldChangesFirst() {
+        stream.setChangeWindow(300);
+        stream.post(new FormEvent(Form.FormEventType.FOCUS_IN, "name", ""));
+        stream.post(change("name", "Jo"));
+        stream.post(new FormEvent(Form.FormEventType.FOCUS_OUT, "name", "Jo"));
+        assertEquals(Arrays.asList("FOCUS_IN name=", "CHANGE name=Jo", "FOCUS_OUT name=Jo"), delivered);
+        assertNull(scheduledTask);
+    }
+
+    @Test
+    public void setChangeWindow_zeroDeliversHeldChanges() {
+        stream.setChangeWindow(300);
+        stream.post(change("name", "Jo"));
+        stream.setChangeWindow(0);
+        assertEquals(Arrays.asList("CHANGE name=Jo"), delivered);
+    }
+
+    @Test
+    public void executor_deliversInBatches() {
+        stream.setExecutor(queueingExecutor());
+        stream.post(change("name", "J"));
+        stream.post(new FormEvent(Form.FormEventType.FOCUS_OUT, "name", "J"));
+        stream.post(change("email", "j"));
+        assertTrue(delivered.isEmpty());
+        assertEquals(1, executorTasks.size());
+
+        executorTasks.remove(0).run();
+        assertEquals(Arrays.asList("CHANGE name=J", "FOCUS_OUT name=J", "CHANGE email=j"), delivered);
+    }
+
+    @Test
+    public void executor_replacesQueuedChangesOfBusyListener() {
+        stream.setExecutor(queueingExecutor());
+        stream.post(change("name", "J"));
+        stream.post(change("email", "j"));
+        stream.post(change("name", "Jo"));
+        stream.post(new FormEvent(Form.FormEventType.FOCUS_OUT, "name", "Jo"));
+        stream.post(change("name", "Joe"));
+        stream.post(change("email", "jo"));
+        executorTasks.remove(0).run();
+        assertEquals(Arrays.asList("CHANGE name=Jo", "CHANGE email=jo", "FOCUS_OUT name=Jo", "CHANGE name=Joe"),
+                delivered);
+        assertTrue(executorTasks.isEmpty());
+    }
+
+    @Test
+    public void executor_newDrainAfterQueueEmpties() {
+        stream.setExecutor(queueingExecutor());
+        stream.post(change("name", "J"));
+        executorTasks.remove(0).run();
+        stream.post(change("name", "Jo"));
+        assertEquals(1, executorTasks.size());
+        executorTasks.remove(0).run();
+        assertEquals(Arrays.asList("CHANGE name=J", "CHANGE name=Jo"), delivered);
+    }
+
+    @Test
+    public void executor_failingListenerDoesNotStopDelivery() {
+        final boolean[] fail = {true};
+        FormEventStream failing = new FormEventStream(new FormEventStream.Sink() {
+            @Override
+            public void onEvent(FormEvent event) {
+                if (fail[0]) {
+                    fail[0] = false;
+                    throw new IllegalStateException();
+                }
+                delivered.add(event.value);
+            }
+        }, null);
+        failing.setExecutor(queueingExecutor());
+        failing.post(change("name", "J"));
+        try {
+            executorTasks.remove(0).run();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        failing.post(change("name", "Jo"));
+        executorTasks.remove(0).run();
+        assertEquals(Arrays.asList("Jo"), delivered);
+    }
+
+    private Executor queueingExecutor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executorTasks.add(command);
+            }
+        };
+    }
+
+    private void advance(long millis) {
+        long target = now + millis;
+        while (scheduledTask != null && scheduledAt <= target) {
+            now = scheduledAt;
+            Runnable task = scheduledTask;
+            scheduledTask = null;
+            task.run();
+        }
+        now = target;
+    }
+
+    private static FormEvent change(String element, String value) {
+        return new FormEvent(Form.FormEventType.CHANGE, element, value);
+    }
+
+}
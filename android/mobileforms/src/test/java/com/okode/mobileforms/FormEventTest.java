@@ -0,0 +1,80 @@
+package com.okode.mobileforms;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FormEventTest {
+
+    @Test
+    public void parse_change() {
+        FormEvent event = FormEvent.parse("mobileforms://event/?type=change&element=firstName&value=John");
+        assertEquals(Form.FormEventType.CHANGE, event.type);
+        assertEquals("firstName", event.element);
+        assertEquals("John", event.value);
+    }
+
+    @Test
+    public void parse_submit() {
+        assertEquals(Form.FormEventType.SUBMIT,
+                FormEvent.parse("mobileforms://event/?type=submit&element=form&value=valid").type);
+        assertEquals(Form.FormEventType.SUBMIT_INVALID,
+                FormEvent.parse("mobileforms://event/?type=submit&element=form&value=invalid").type);
+        assertEquals(Form.FormEventType.OTHER,
+                FormEvent.parse("mobileforms://event/?type=submit&element=form&value=").type);
+    }
+
+    @Test
+    public void parse_allTypes() {
+        assertEquals(Form.FormEventType.FOCUS_IN, FormEvent.parse("mobileforms://event/?type=focus").type);
+        assertEquals(Form.FormEventType.FOCUS_OUT, FormEvent.parse("mobileforms://event/?type=focusout").type);
+        assertEquals(Form.FormEventType.VALIDATE_ERROR, FormEvent.parse("mobileforms://event/?type=validateerror").type);
+        assertEquals(Form.FormEventType.LINK, FormEvent.parse("mobileforms://event/?type=link").type);
+        assertEquals(Form.FormEventType.VALIDITY_CHANGE,
+                FormEvent.parse("mobileforms://event/?type=validitychange&element=form&value=invalid").type);
+        assertEquals(Form.FormEventType.STEP_CHANGE,
+                FormEvent.parse("mobileforms://event/?type=stepchange&element=form&value=2").type);
+        assertEquals(Form.FormEventType.OTHER, FormEvent.parse("mobileforms://event/?type=unknown").type);
+        assertEquals(Form.FormEventType.OTHER, FormEvent.parse("mobileforms://event/").type);
+    }
+
+    @Test
+    public void parse_decodesValues() {
+        FormEvent event = FormEvent.parse("mobileforms://event/?type=change&element=phone%5B%5D&value=Jos%C3%A9+P%20x");
+        assertEquals("phone[]", event.element);
+        assertEquals("Jos\u00e9 P x", event.value);
+    }
+
+    @Test
+    public void parse_keepsMalformedEscapes() {
+        assertEquals("100%", FormEvent.parse("mobileforms://event/?type=change&value=100%").value);
+        assertEquals("%zz1", FormEvent.parse("mobileforms://event/?type=change&value=%zz1").value);
+    }
+
+    @Test
+    public void parse_missingAndEmptyParameters() {
+        FormEvent event = FormEvent.parse("mobileforms://event/?type=change&element=&value");
+        assertEquals("", event.element);
+        assertEquals("", event.value);
+        assertNull(FormEvent.parse("mobileforms://event/?type=change").element);
+    }
+
+    @Test
+    public void parse_ignoresFragment() {
+        assertEquals("a", FormEvent.parse("mobileforms://event/?type=change&value=a#value=b").value);
+    }
+
+    @Test
+    public void parse_firstParameterWins() {
+        assertEquals("a", FormEvent.parse("mobileforms://event/?value=a&type=change&value=b").value);
+    }
+
+    @Test
+    public void parse_otherUrls() {
+        assertNull(FormEvent.parse("file:///android_asset/mobileforms/index.mobileforms.html"));
+        assertNull(FormEvent.parse("mobileforms://events/?type=change"));
+        assertNull(FormEvent.parse("tel:123"));
+        assertNull(FormEvent.parse(null));
+    }
+
+}
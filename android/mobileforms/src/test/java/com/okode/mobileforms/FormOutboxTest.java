@@ -0,0 +1,300 @@
+package com.okode.mobileforms;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class FormOutboxTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<FormOutbox.Batch> uploaded = new ArrayList<>();
+    private final List<Runnable> scheduledTasks = new ArrayList<>();
+    private final List<Long> scheduledAt = new ArrayList<>();
+    private long now;
+    private int failingUploads;
+    private File directory;
+
+    private final FormOutbox.Uploader stubUploader = new FormOutbox.Uploader() {
+        @Override
+        public void upload(FormOutbox.Batch batch) throws IOException {
+            if (failingUploads > 0) {
+                failingUploads--;
+                throw new IOException("Offline");
+            }
+            uploaded.add(batch);
+        }
+    };
+
+    private final Executor directExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final FormOutbox.Scheduler scheduler = new FormOutbox.Scheduler() {
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            scheduledTasks.add(task);
+            scheduledAt.add(now + delayMillis);
+        }
+
+        @Override
+        public void shutdown() {
+            scheduledTasks.clear();
+            scheduledAt.clear();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "outbox");
+    }
+
+    @Test
+    public void enqueue_sendsBatchOnceDelayExpires() throws IOException {
+        FormOutbox outbox = open();
+        outbox.enqueue("{\"name\":\"John\"}");
+        advance(500);
+        outbox.enqueue("{\"name\":\"Ann\"}");
+        advance(1400);
+        assertTrue(uploaded.isEmpty());
+        assertEquals(2, outbox.getPendingCount());
+
+        advance(100);
+        assertEquals(1, uploaded.size());
+        assertEquals(Arrays.asList("{\"name\":\"John\"}", "{\"name\":\"Ann\"}"), uploaded.get(0).getResults());
+        assertEquals(1, uploaded.get(0).getFirstSequence());
+        assertEquals(2, uploaded.get(0).getLastSequence());
+        assertEquals("[{\"name\":\"John\"},{\"name\":\"Ann\"}]", new String(uploaded.get(0).getBody(), "UTF-8"));
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void enqueue_fullBatchesAreSentRightAway() {
+        FormOutbox outbox = open();
+        outbox.setMaxBatchSize(3, 1024);
+        for (int i = 0; i < 7; i++) {
+            outbox.enqueue("{\"i\":" + i + "}");
+        }
+        advance(0);
+        assertEquals(2, uploaded.size());
+        assertEquals(3, uploaded.get(1).size());
+        assertEquals(1, outbox.getPendingCount());
+
+        advance(2000);
+        assertEquals(3, uploaded.size());
+        assertEquals(7, uploaded.get(2).getFirstSequence());
+    }
+
+    @Test
+    public void enqueue_batchesBoundedBySize() {
+        FormOutbox outbox = open();
+        outbox.setMaxBatchSize(50, 20);
+        outbox.enqueue("{\"text\":\"0123456789\"}");
+        outbox.enqueue("{\"a\":1}");
+        outbox.enqueue("{\"b\":2}");
+        outbox.flush();
+        advance(0);
+        assertEquals(2, uploaded.size());
+        assertEquals(1, uploaded.get(0).size());
+        assertEquals(2, uploaded.get(1).size());
+    }
+
+    @Test
+    public void upload_retriedWithBackoff() {
+        FormOutbox outbox = open();
+        outbox.setBackoff(1000, 3000);
+        failingUploads = 3;
+        outbox.enqueue("{}");
+        outbox.flush();
+        advance(0);
+        advance(999);
+        assertTrue(uploaded.isEmpty());
+        advance(1);
+        advance(1999);
+        assertTrue(uploaded.isEmpty());
+        advance(1);
+        advance(2999);
+        assertTrue(uploaded.isEmpty());
+        advance(1);
+        assertEquals(1, uploaded.size());
+    }
+
+    @Test
+    public void flush_skipsBackoff() {
+        FormOutbox outbox = open();
+        failingUploads = 1;
+        outbox.enqueue("{}");
+        outbox.flush();
+        advance(0);
+        assertTrue(uploaded.isEmpty());
+        outbox.flush();
+        advance(0);
+        assertEquals(1, uploaded.size());
+    }
+
+    @Test
+    public void flush_includesResultsBeingWritten() throws Exception {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        FormOutbox outbox = new FormOutbox(directory, stubUploader, writer, scheduler);
+        outbox.enqueue("{\"a\":1}");
+        outbox.flush();
+        awaitWriter(writer);
+        advance(0);
+        assertEquals(1, uploaded.size());
+        assertEquals(Arrays.asList("{\"a\":1}"), uploaded.get(0).getResults());
+
+        //The upload is recorded in the log on the writer thread
+        outbox.close();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, open().getPendingCount());
+    }
+
+    @Test
+    public void open_uploadsResultsOfPreviousRun() {
+        FormOutbox outbox = open();
+        outbox.enqueue("{\"sent\":true}");
+        outbox.flush();
+        advance(0);
+        failingUploads = 1;
+        outbox.enqueue("{\"sent\":false}");
+        outbox.flush();
+        advance(0);
+        outbox.close();
+        assertEquals(1, uploaded.size());
+
+        uploaded.clear();
+        FormOutbox reopened = open();
+        assertEquals(1, reopened.getPendingCount());
+        reopened.enqueue("{\"new\":true}");
+        advance(2000);
+        assertEquals(1, uploaded.size());
+        assertEquals(Arrays.asList("{\"sent\":false}", "{\"new\":true}"), uploaded.get(0).getResults());
+        assertEquals(2, uploaded.get(0).getFirstSequence());
+        assertEquals(3, uploaded.get(0).getLastSequence());
+    }
+
+    @Test
+    public void open_dropsBrokenRecord() throws IOException {
+        FormOutbox outbox = open();
+        outbox.enqueue("{\"a\":1}");
+        outbox.enqueue("{\"b\":2}");
+        outbox.close();
+        File log = new File(directory, "outbox.wal");
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        FormOutbox reopened = open();
+        assertEquals(1, reopened.getPendingCount());
+        reopened.enqueue("{\"c\":3}");
+        reopened.flush();
+        advance(0);
+        assertEquals(Arrays.asList("{\"a\":1}", "{\"c\":3}"), uploaded.get(0).getResults());
+    }
+
+    @Test
+    public void close_twice() throws InterruptedException {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        FormOutbox outbox = new FormOutbox(directory, stubUploader, writer, scheduler);
+        outbox.enqueue("{\"a\":1}");
+        outbox.close();
+        outbox.close();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, open().getPendingCount());
+    }
+
+    @Test
+    public void enqueue_afterClose() throws InterruptedException {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        FormOutbox outbox = new FormOutbox(directory, stubUploader, writer, scheduler);
+        outbox.close();
+        try {
+            outbox.enqueue("{\"a\":1}");
+            fail("Enqueued after close");
+        } catch (IllegalStateException e) {
+            //Expected, the result is not lost silently
+        }
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, open().getPendingCount());
+    }
+
+    @Test
+    public void getBody_compressed() throws IOException {
+        FormOutbox outbox = open();
+        outbox.setCompressed(true);
+        outbox.enqueue("{\"name\":\"John\"}");
+        outbox.flush();
+        advance(0);
+        assertTrue(uploaded.get(0).isCompressed());
+        assertEquals("[{\"name\":\"John\"}]", gunzip(uploaded.get(0).getBody()));
+    }
+
+    private FormOutbox open() {
+        return new FormOutbox(directory, stubUploader, directExecutor, scheduler);
+    }
+
+    private static void awaitWriter(ExecutorService writer) throws Exception {
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private void advance(long millis) {
+        long target = now + millis;
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < scheduledAt.size(); i++) {
+                if (scheduledAt.get(i) <= target && (next < 0 || scheduledAt.get(i) < scheduledAt.get(next))) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = Math.max(now, scheduledAt.remove(next));
+            scheduledTasks.remove(next).run();
+        }
+        now = target;
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+}
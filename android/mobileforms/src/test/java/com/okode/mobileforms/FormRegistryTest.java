@@ -0,0 +1,188 @@
+package com.okode.mobileforms;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FormRegistryTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    //Prefetch tasks, run by runTasks(), and the clock of the scheduler
+    private final List<Runnable> tasks = new ArrayList<>();
+    private long now;
+    private boolean shutdown;
+    private final FormRegistry.Scheduler scheduler = new FormRegistry.Scheduler() {
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            assertFalse(shutdown);
+            tasks.add(task);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+    };
+
+    @Test
+    public void prefetch_compilesDefinitions() throws Exception {
+        FakeAssets assets = new FakeAssets();
+        assets.files.put("contact.json", "{ \"id\" : \"contact\", \"sections\" : [], \"version\" : 3 }");
+        assets.files.put("invalid.json", "{\"sections\":");
+        assets.files.put("custom.css", "body{}");
+        FormRegistry registry = registry(assets, 1024 * 1024);
+
+        registry.prefetch();
+        waitForPrefetch(registry);
+        assertEquals(1, registry.getFormCount());
+        assertEquals("{\"id\":\"contact\",\"sections\":[]}", registry.get("contact"));
+        assertEquals(2 * ("contact".length() + registry.get("contact").length()), registry.getMemorySize());
+        assertNull(registry.get("invalid"));
+        assertNull(registry.get("custom"));
+    }
+
+    @Test
+    public void prefetch_scanTime() throws Exception {
+        FakeAssets assets = new FakeAssets();
+        assets.listMillis = 50;
+        assets.files.put("a.json", form("a"));
+        assets.files.put("b.json", form("b"));
+        FormRegistry registry = registry(assets, 1024 * 1024);
+        assertEquals(-1, registry.getScanTimeMillis());
+        assertFalse(registry.isPrefetched());
+
+        now = 1000;
+        registry.prefetch();
+        registry.prefetch();
+        assertEquals(1, tasks.size());
+        //The listing task starts a task for each definition
+        tasks.remove(0).run();
+        assertEquals(2, tasks.size());
+        tasks.remove(0).run();
+        assertFalse(registry.isPrefetched());
+        assertFalse(shutdown);
+        now += 20;
+        waitForPrefetch(registry);
+        assertEquals(70, registry.getScanTimeMillis());
+    }
+
+    @Test
+    public void prefetch_emptyDirectory() throws Exception {
+        FormRegistry registry = registry(new FakeAssets(), 1024 * 1024);
+
+        registry.prefetch();
+        waitForPrefetch(registry);
+        assertEquals(0, registry.getScanTimeMillis());
+        assertEquals(0, registry.getFormCount());
+    }
+
+    @Test
+    public void prefetch_boundedBySize() throws Exception {
+        FakeAssets assets = new FakeAssets();
+        for (String name : new String[]{"a", "b", "c"}) {
+            assets.files.put(name + ".json", form(name));
+        }
+        int entrySize = 2 * (1 + form("a").length());
+        FormRegistry registry = registry(assets, 2 * entrySize + 1);
+
+        registry.prefetch();
+        waitForPrefetch(registry);
+        assertEquals(2, registry.getFormCount());
+        assertEquals(2 * entrySize, registry.getMemorySize());
+    }
+
+    @Test
+    public void setMaxSize_dropsLeastRecentlyUsed() throws Exception {
+        FakeAssets assets = new FakeAssets();
+        for (String name : new String[]{"a", "b", "c"}) {
+            assets.files.put(name + ".json", form(name));
+        }
+        int entrySize = 2 * (1 + form("a").length());
+        FormRegistry registry = registry(assets, 1024 * 1024);
+        registry.prefetch();
+        waitForPrefetch(registry);
+        assertEquals(3, registry.getFormCount());
+
+        registry.get("a");
+        registry.get("b");
+        registry.setMaxSize(2 * entrySize);
+        assertEquals(2 * entrySize, registry.getMaxSize());
+        assertNull(registry.get("c"));
+        assertNotNull(registry.get("a"));
+        assertNotNull(registry.get("b"));
+
+        registry.onTrimMemory(FormRegistry.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(1, registry.getFormCount());
+        assertNotNull(registry.get("b"));
+
+        registry.onLowMemory();
+        assertEquals(0, registry.getFormCount());
+        assertEquals(0, registry.getMemorySize());
+    }
+
+    private FormRegistry registry(FakeAssets assets, int maxSize) throws IOException {
+        return new FormRegistry(assets, new FormDefinitionCache(folder.newFolder()), maxSize, scheduler);
+    }
+
+    private static String form(String id) {
+        return "{\"id\":\"" + id + "\",\"sections\":[{\"fields\":[{\"type\":\"text\",\"name\":\"name\"}]}]}";
+    }
+
+    /**
+     * Runs the prefetch tasks, and the tasks they start, until it is done.
+     */
+    private void waitForPrefetch(FormRegistry registry) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        assertTrue(registry.isPrefetched());
+        assertTrue(shutdown);
+    }
+
+    /**
+     * Assets 'forms' directory, listing it takes listMillis of the scheduler clock.
+     */
+    private final class FakeAssets implements FormRegistry.Assets {
+
+        private final Map<String, String> files = new LinkedHashMap<>();
+        private long listMillis;
+
+        @Override
+        public String[] list(String path) throws IOException {
+            assertEquals(Form.FORMJSON_DIRECTORY, path);
+            now += listMillis;
+            return files.keySet().toArray(new String[files.size()]);
+        }
+
+        @Override
+        public InputStream open(String path) throws IOException {
+            String text = files.get(path.substring(Form.FORMJSON_DIRECTORY.length() + 1));
+            if (text == null) {
+                throw new FileNotFoundException(path);
+            }
+            return new ByteArrayInputStream(text.getBytes(UTF8));
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.okode.mobileforms;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FormScriptsTest {
+
+    @Test
+    public void initCommands() {
+        assertEquals("setJsonForm({\"id\":\"f\"})", FormScripts.setJsonForm("{\"id\":\"f\"}"));
+        assertEquals("setJsonPopulateData({\"a\":1})", FormScripts.setJsonPopulateData("{\"a\":1}"));
+        assertEquals("setDataSync(42)", FormScripts.setDataSync(42));
+        assertEquals("setRenderSections(3)", FormScripts.setRenderSections(3));
+        assertEquals("setStep(2)", FormScripts.setStep(2));
+        assertEquals("showStep(1)", FormScripts.showStep(1));
+        assertEquals("populateWithData(null)", FormScripts.populateWithData(null));
+    }
+
+    @Test
+    public void postResult() {
+        assertEquals("MobileFormsBridge.postResult(7, getFormData())",
+                FormScripts.postResult(7, FormScripts.JS_EXPR_FORM_DATA));
+    }
+
+    @Test
+    public void addCSSFileSuffix() {
+        assertEquals("\", true)", FormScripts.addCSSFileSuffix(true));
+        assertEquals("\", false)", FormScripts.addCSSFileSuffix(false));
+    }
+
+    @Test
+    public void appendPayload() {
+        assertEquals("appendPayload(3, \"setJsonForm({\\\"a\\\":1})\")",
+                FormScripts.appendPayload(3, "setJsonForm(", "{\"a\":1}", 0, 7, ")"));
+        assertEquals("appendPayload(0, \"b\\nc\")", FormScripts.appendPayload(0, "", "ab\ncd", 1, 4, ""));
+        assertEquals("runPayload(3)", FormScripts.runPayload(3));
+    }
+
+    @Test
+    public void chunkEnd_keepsSurrogatePairs() {
+        String text = "ab\uD83D\uDE00cd";
+        assertEquals(2, FormScripts.chunkEnd(text, 0, 3));
+        assertEquals(4, FormScripts.chunkEnd(text, 0, 4));
+        assertEquals(6, FormScripts.chunkEnd(text, 4, 3));
+    }
+
+    @Test
+    public void chunkEnd_chunksCoverText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append(i % 7 == 0 ? "\uD83D\uDE00" : "x");
+        }
+        StringBuilder joined = new StringBuilder();
+        int start = 0;
+        while (start < text.length()) {
+            int end = FormScripts.chunkEnd(text.toString(), start, 5);
+            assertTrue(end > start && end - start <= 5);
+            assertFalse(Character.isHighSurrogate(text.charAt(end - 1)));
+            joined.append(text, start, end);
+            start = end;
+        }
+        assertEquals(text.toString(), joined.toString());
+    }
+
+    @Test
+    public void join() {
+        assertEquals("try{init();}catch(e){console.error(e);}\ntry{a();}catch(e){console.error(e);}\n",
+                FormScripts.join(Arrays.asList("init()", "a()")));
+        assertEquals("", FormScripts.join(Collections.<String>emptyList()));
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.okode.mobileforms;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FormStateStoreTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private FormStateStore store;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "state");
+        store = new FormStateStore(directory);
+    }
+
+    @Test
+    public void put_inline() {
+        String reference = store.edit("form").put("data", "{\"name\":\"John\"}");
+        assertEquals("i:{\"name\":\"John\"}", reference);
+        assertEquals("{\"name\":\"John\"}", store.peek(reference));
+        assertEquals("{\"name\":\"John\"}", new FormStateStore(directory).read(reference));
+        assertNull(store.edit("form").put("data", null));
+        assertNull(store.read(null));
+    }
+
+    @Test
+    public void put_shared() throws Exception {
+        String blob = blob('a');
+        String shared = store.share(blob);
+        assertSame(blob, shared);
+        String hash = FormDefinitionCache.hash(blob);
+        assertTrue(new File(directory, hash + ".blob").isFile());
+
+        //Blobs equal to a shared one, not only the shared instance, are referenced by hash
+        FormStateStore.Editor editor = store.edit("form");
+        String reference = editor.put("definition", new String(blob));
+        assertEquals("s:" + hash, reference);
+        editor.commit();
+        waitForIO();
+
+        assertEquals(blob, new FormStateStore(directory).read(reference));
+        assertEquals(hash + "\n", text(new File(directory, "form.refs")));
+        assertFalse(new File(directory, "form.definition.state").exists());
+    }
+
+    @Test
+    public void put_keyed() throws Exception {
+        String blob = blob('b');
+        FormStateStore.Editor editor = store.edit("form");
+        String reference = editor.put("data", blob);
+        ArrayList<String> references = editor.putAll("css", Arrays.asList("body{}", blob('c')));
+        editor.commit();
+        waitForIO();
+
+        assertEquals("k:form.data", reference);
+        assertEquals(Arrays.asList("i:body{}", "k:form.css1"), references);
+        FormStateStore restored = new FormStateStore(directory);
+        assertEquals(blob, restored.read(reference));
+        assertEquals(blob('c'), restored.read(references.get(1)));
+        assertEquals("", text(new File(directory, "form.refs")));
+    }
+
+    @Test
+    public void read_missingBlob() {
+        assertNull(store.read("k:gone.data"));
+        assertNull(store.read("s:" + FormDefinitionCache.hash(blob('d'))));
+    }
+
+    @Test
+    public void remove() throws Exception {
+        FormStateStore.Editor editor = store.edit("form");
+        String reference = editor.put("data", blob('e'));
+        editor.commit();
+        store.edit("other").commit();
+        waitForIO();
+
+        store.remove("form");
+        waitForIO();
+        assertFalse(new File(directory, "form.data.state").exists());
+        assertFalse(new File(directory, "form.refs").exists());
+        assertTrue(new File(directory, "other.refs").exists());
+        assertNull(new FormStateStore(directory).read(reference));
+    }
+
+    @Test
+    public void collectGarbage_oldStates() throws Exception {
+        String blob = blob('f');
+        store.share(blob);
+        for (String key : new String[]{"fresh", "old"}) {
+            FormStateStore.Editor editor = store.edit(key);
+            editor.put("definition", blob);
+            editor.put("data", blob('g'));
+            editor.commit();
+        }
+        waitForIO();
+        long now = System.currentTimeMillis();
+        new File(directory, "fresh.refs").setLastModified(now - 6 * DAY);
+        new File(directory, "old.refs").setLastModified(now - 8 * DAY);
+
+        store.collectGarbage();
+        assertTrue(new File(directory, "fresh.refs").exists());
+        assertTrue(new File(directory, "fresh.data.state").exists());
+        assertFalse(new File(directory, "old.refs").exists());
+        assertFalse(new File(directory, "old.data.state").exists());
+        assertTrue(new File(directory, FormDefinitionCache.hash(blob) + ".blob").exists());
+    }
+
+    @Test
+    public void collectGarbage_unreferencedBlobs() throws Exception {
+        String referenced = blob('h');
+        String recent = blob('i');
+        String unreferenced = blob('j');
+        FormStateStore.Editor editor = store.edit("form");
+        editor.put("definition", store.share(referenced));
+        editor.commit();
+        store.share(recent);
+        store.share(unreferenced);
+        waitForIO();
+        long now = System.currentTimeMillis();
+        File referencedFile = new File(directory, FormDefinitionCache.hash(referenced) + ".blob");
+        File recentFile = new File(directory, FormDefinitionCache.hash(recent) + ".blob");
+        File unreferencedFile = new File(directory, FormDefinitionCache.hash(unreferenced) + ".blob");
+        referencedFile.setLastModified(now - 2 * DAY);
+        recentFile.setLastModified(now - HOUR / 2);
+        unreferencedFile.setLastModified(now - 2 * HOUR);
+
+        store.collectGarbage();
+        assertTrue(referencedFile.exists());
+        assertTrue(recentFile.exists());
+        assertFalse(unreferencedFile.exists());
+    }
+
+    /**
+     * Waits for the files written in background so far, BackgroundIO runs the tasks in order.
+     */
+    private static void waitForIO() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        BackgroundIO.execute(new BackgroundIO.Task<Void>() {
+            @Override
+            public Void run() {
+                latch.countDown();
+                return null;
+            }
+        }, null);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static String blob(char c) {
+        char[] chars = new char[2048];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String text(File file) throws IOException {
+        return AssetText.read(new FileInputStream(file));
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.okode.mobileforms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FormStepsTest {
+
+    private final List<String> calls = new ArrayList<>();
+    //State of the step shown, as Form keeps it
+    private String shownForm;
+    private String shownData;
+    private FormSteps.Host host;
+    private FormSteps steps;
+
+    @Before
+    public void setUp() {
+        host = new FormSteps.Host() {
+            @Override
+            public void store(FormSteps.Step step) {
+                step.jsonForm = shownForm;
+                step.jsonPopulateData = shownData;
+            }
+
+            @Override
+            public void restore(FormSteps.Step step) {
+                shownForm = step.jsonForm;
+                shownData = step.jsonPopulateData;
+            }
+
+            @Override
+            public void leave(int index, FormSteps.Step step) {
+                calls.add("leave " + index);
+            }
+
+            @Override
+            public void show(int index) {
+                calls.add("show " + index);
+            }
+
+            @Override
+            public void build(int index, int previous, FormSteps.Step step) {
+                calls.add("build " + index + " from " + previous);
+            }
+        };
+        steps = new FormSteps(host, Arrays.asList("a", "b", "c"));
+        shownForm = "a";
+    }
+
+    @Test
+    public void goTo_beforeLoadSwapsStepShown() {
+        shownData = "dataA";
+        steps.goTo(2, false);
+        assertEquals(2, steps.getCurrent());
+        assertEquals(2, steps.getRequested());
+        assertEquals("c", shownForm);
+        assertNull(shownData);
+        steps.goTo(0, false);
+        assertEquals("a", shownForm);
+        assertEquals("dataA", shownData);
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void goTo_buildsStepOnceThenShowsIt() {
+        steps.reset();
+        steps.goTo(1, true);
+        steps.goTo(1, true);
+        assertEquals(Arrays.asList("leave 0", "build 1 from 0"), calls);
+        //The page still shows the first step until it shows the new one
+        assertEquals(0, steps.getCurrent());
+        assertEquals(1, steps.getRequested());
+        assertTrue(steps.onCompiled(1, 0, true));
+        steps.select(1);
+        calls.clear();
+        steps.goTo(0, true);
+        steps.goTo(1, true);
+        assertEquals(Arrays.asList("leave 1", "show 0", "leave 0", "show 1"), calls);
+    }
+
+    @Test
+    public void goTo_whileCompilingDoesNotBuildAgain() {
+        steps.reset();
+        steps.goTo(1, true);
+        steps.goTo(2, true);
+        steps.goTo(1, true);
+        assertEquals(Arrays.asList("leave 0", "build 1 from 0", "leave 1", "build 2 from 1", "leave 2"), calls);
+        //The step asked for first is not sent to the page once compiled
+        assertFalse(steps.onCompiled(2, 1, true));
+        assertTrue(steps.onCompiled(1, 0, true));
+    }
+
+    @Test
+    public void onCompiled_failureGoesBackToPreviousStep() {
+        steps.reset();
+        steps.goTo(1, true);
+        assertFalse(steps.onCompiled(1, 0, false));
+        assertEquals(0, steps.getRequested());
+        assertTrue(steps.hasNext());
+        assertFalse(steps.hasPrevious());
+    }
+
+    @Test
+    public void setPopulateData_onlyBeforeBuilt() {
+        assertTrue(steps.setPopulateData(1, "{\"x\":1}"));
+        steps.reset();
+        steps.goTo(1, true);
+        steps.onCompiled(1, 0, true);
+        assertFalse(steps.setPopulateData(1, "{\"x\":2}"));
+        assertEquals(Arrays.asList("a", "b", "c"), steps.getForms());
+        assertEquals(Arrays.asList(null, "{\"x\":1}", null), steps.getData());
+    }
+
+    @Test
+    public void reset_keepsOnlyStepShownBuilt() {
+        steps.goTo(1, false);
+        steps.reset();
+        steps.goTo(0, true);
+        steps.goTo(1, true);
+        assertEquals(Arrays.asList("leave 1", "build 0 from 1", "leave 0", "show 1"), calls);
+    }
+
+    @Test
+    public void restore_keepsStepShownAndData() {
+        FormSteps restored = FormSteps.restore(host, Arrays.asList("a", "b"), Arrays.asList("d0", "d1"), 1);
+        assertNotNull(restored);
+        assertEquals(1, restored.getCurrent());
+        assertEquals(1, restored.getRequested());
+        assertEquals(Arrays.asList("d0", "d1"), restored.getData());
+        assertNull(FormSteps.restore(host, Arrays.asList("a", "b"), null, 2));
+        assertNull(FormSteps.restore(host, null, null, 0));
+    }
+
+    @Test
+    public void find_byDataSyncToken() {
+        final List<FormSteps.Step> built = new ArrayList<>();
+        steps = new FormSteps(new FormSteps.Host() {
+            @Override
+            public void store(FormSteps.Step step) {
+            }
+
+            @Override
+            public void restore(FormSteps.Step step) {
+            }
+
+            @Override
+            public void leave(int index, FormSteps.Step step) {
+            }
+
+            @Override
+            public void show(int index) {
+            }
+
+            @Override
+            public void build(int index, int previous, FormSteps.Step step) {
+                step.dataSyncToken = 7;
+                built.add(step);
+            }
+        }, Arrays.asList("a", "b"));
+        steps.reset();
+        assertNull(steps.find(7));
+        steps.goTo(1, true);
+        assertSame(built.get(0), steps.find(7));
+        assertFalse(steps.isCurrent(built.get(0)));
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.okode.mobileforms;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FormValidatorTest {
+
+    private static final String FORM = "{\"id\":\"form\",\"sections\":[{\"title\":\"Contact\",\"fields\":["
+            + "{\"type\":\"text\",\"name\":\"firstName\",\"required\":\"true\"},"
+            + "{\"type\":\"email\",\"name\":\"email\",\"filter\":\"^[^@]+@[^@]+$\",\"error\":\"Wrong email\"},"
+            + "{\"type\":\"number\",\"name\":\"age\",\"min\":\"18\",\"max\":\"99\"},"
+            + "{\"type\":\"date\",\"name\":\"start\",\"min\":\"2016-01-01\",\"max\":\"2016-12-31\"},"
+            + "{\"type\":\"time\",\"name\":\"hour\",\"min\":\"08:00\",\"max\":\"20:00\"},"
+            + "{\"type\":\"textarea\",\"name\":\"remarks\",\"maxlength\":\"5\",\"filter\":\"\"},"
+            + "{\"type\":\"text\",\"name\":\"alias[]\",\"filter\":\"^[a-z]+$\"},"
+            + "{\"type\":\"phoneitem\",\"name\":\"phone[]\",\"namephone\":\"number\",\"required\":1},"
+            + "{\"type\":\"checkbox\",\"name\":\"terms\",\"required\":\"true\"},"
+            + "{\"type\":\"hidden\",\"name\":\"token\",\"filter\":\"^x$\"}"
+            + "]}],\"submit\":\"Accept\"}";
+
+    private static final String VALID_DATA = "{\"firstName\":\"John\",\"email\":\"john@example.com\",\"age\":\"30\","
+            + "\"start\":\"2016-06-10\",\"hour\":\"10:30\",\"remarks\":\"ok\",\"alias\":[\"jo\",\"johnny\"],"
+            + "\"phone\":[{\"type\":\"work\",\"number\":\"600000000\"}],\"token\":\"anything\"}";
+
+    @Test
+    public void validate_validData() throws JSONException {
+        FormValidator.Result result = new FormValidator(FORM).validate(VALID_DATA);
+        assertTrue(result.toJson(), result.isValid());
+        JSONObject json = new JSONObject(result.toJson());
+        assertTrue(json.isNull("requiredErrors"));
+        assertTrue(json.isNull("validationErrors"));
+    }
+
+    @Test
+    public void validate_requiredFields() throws JSONException {
+        FormValidator.Result result = new FormValidator(FORM).validate(
+                with("firstName", "").put("phone", new JSONArray("[{\"number\":\"1\"},{\"number\":\"\"}]")));
+        assertEquals(Arrays.asList("firstName", "phone[][number]"), result.getRequiredErrors());
+        assertTrue(result.getValidationErrors().isEmpty());
+
+        JSONObject missing = new JSONObject(VALID_DATA);
+        missing.remove("firstName");
+        missing.remove("phone");
+        assertEquals(Arrays.asList("firstName", "phone[][number]"),
+                new FormValidator(FORM).validate(missing).getRequiredErrors());
+    }
+
+    @Test
+    public void validate_filters() throws JSONException {
+        FormValidator validator = new FormValidator(FORM);
+        FormValidator.Result result = validator.validate(with("email", "john.example.com"));
+        assertEquals(Collections.singletonMap("email", "Wrong email"), result.getValidationErrors());
+        JSONObject error = new JSONObject(result.toJson()).getJSONArray("validationErrors").getJSONObject(0);
+        assertEquals("email", error.getString("element"));
+        assertEquals("Wrong email", error.getString("message"));
+        assertFalse(validator.validate(with("alias", new JSONArray("[\"jo\",\"J0\"]"))).isValid());
+        //Hidden fields have no validator in the page
+        assertTrue(validator.validate(with("token", "y")).isValid());
+    }
+
+    @Test
+    public void validate_emptyOptionalValuesAreNotChecked() throws JSONException {
+        assertTrue(new FormValidator(FORM).validate(with("email", "").put("age", "").put("start", "")).isValid());
+    }
+
+    @Test
+    public void validate_numberLimits() throws JSONException {
+        FormValidator validator = new FormValidator(FORM);
+        assertFalse(validator.validate(with("age", "17")).isValid());
+        assertFalse(validator.validate(with("age", "100")).isValid());
+        assertTrue(validator.validate(with("age", "99.9")).isValid());
+        assertTrue(validator.validate(with("age", 18)).isValid());
+        //parseInt() gives NaN, which is neither above nor below the limits
+        assertTrue(validator.validate(with("age", "abc")).isValid());
+    }
+
+    @Test
+    public void validate_dateLimits() throws JSONException {
+        FormValidator validator = new FormValidator(FORM);
+        assertFalse(validator.validate(with("start", "2015-12-31")).isValid());
+        assertFalse(validator.validate(with("start", "2017-01-01")).isValid());
+        assertFalse(validator.validate(with("start", "2016-02-30")).isValid());
+        assertFalse(validator.validate(with("start", "10/06/2016")).isValid());
+        assertTrue(validator.validate(with("start", "2016-2-29")).isValid());
+    }
+
+    @Test
+    public void validate_timeLimits() throws JSONException {
+        FormValidator validator = new FormValidator(FORM);
+        assertFalse(validator.validate(with("hour", "07:59")).isValid());
+        assertFalse(validator.validate(with("hour", "20:01")).isValid());
+        assertFalse(validator.validate(with("hour", "25:00")).isValid());
+        assertTrue(validator.validate(with("hour", "20:00")).isValid());
+    }
+
+    @Test
+    public void validate_maxLength() throws JSONException {
+        assertFalse(new FormValidator(FORM).validate(with("remarks", "too long")).isValid());
+    }
+
+    @Test
+    public void validate_map() throws JSONException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("firstName", "John");
+        data.put("phone", Collections.singletonList(Collections.singletonMap("number", "600000000")));
+        data.put("age", 12);
+        FormValidator.Result result = new FormValidator(FORM).validate(data);
+        assertTrue(result.getRequiredErrors().isEmpty());
+        assertEquals(Collections.singleton("age"), result.getValidationErrors().keySet());
+    }
+
+    @Test
+    public void validate_optionSourceOnlyRequired() throws JSONException {
+        FormValidator validator = new FormValidator("{\"sections\":[{\"fields\":[{\"type\":\"select\","
+                + "\"name\":\"city\",\"optionsource\":\"cities\",\"filter\":\"^x$\",\"required\":1}]}]}");
+        assertTrue(validator.validate("{\"city\":\"mad\"}").isValid());
+        assertEquals(Arrays.asList("city"), validator.validate("{\"city\":\"\"}").getRequiredErrors());
+    }
+
+    @Test
+    public void getPattern_sharedAndLenient() {
+        assertSame(FormValidator.getPattern("^[0-9]+$"), FormValidator.getPattern("^[0-9]+$"));
+        assertTrue(FormValidator.getPattern("[unclosed").matcher("anything").find());
+    }
+
+    @Test
+    public void parseInt_likeJavaScript() {
+        assertEquals(12, FormValidator.parseInt(" 12px", Double.NaN), 0);
+        assertEquals(-3, FormValidator.parseInt("-3.9", Double.NaN), 0);
+        assertTrue(Double.isNaN(FormValidator.parseInt("px", Double.NaN)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void constructor_invalidDefinition() throws JSONException {
+        new FormValidator("[]");
+    }
+
+    private static JSONObject with(String name, Object value) throws JSONException {
+        return new JSONObject(VALID_DATA).put(name, value);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.okode.mobileforms;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SortedOptionSourceTest {
+
+    private final SortedOptionSource cities = SortedOptionSource.fromPipes(
+            "mad|bcn|vlc|sev|avi|mal",
+            "Madrid|Barcelona|Valencia|Sevilla|\u00c1vila|M\u00e1laga");
+
+    @Test
+    public void query_emptyPrefixListsAllByLabel() {
+        OptionSource.Page page = cities.query("", 0, 10);
+        assertEquals(6, page.total);
+        assertEquals(Arrays.asList("\u00c1vila", "Barcelona", "Madrid", "M\u00e1laga", "Sevilla", "Valencia"),
+                page.labels);
+        assertEquals(Arrays.asList("avi", "bcn", "mad", "mal", "sev", "vlc"), page.values);
+    }
+
+    @Test
+    public void query_prefixIgnoresCaseAndAccents() {
+        assertEquals(Arrays.asList("mad", "mal"), cities.query("MA", 0, 10).values);
+        assertEquals(Arrays.asList("mal"), cities.query("m\u00e1l", 0, 10).values);
+        assertEquals(Arrays.asList("avi"), cities.query("av", 0, 10).values);
+        assertEquals(0, cities.query("x", 0, 10).total);
+    }
+
+    @Test
+    public void query_pagesWithinMatches() {
+        List<String> values = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            values.add(String.valueOf(i));
+            labels.add(String.format("City %05d", i));
+        }
+        SortedOptionSource source = new SortedOptionSource(values, labels);
+        OptionSource.Page page = source.query("city 012", 50, 30);
+        assertEquals(100, page.total);
+        assertEquals(30, page.values.size());
+        assertEquals("1250", page.values.get(0));
+        assertEquals("City 01279", page.labels.get(29));
+
+        page = source.query("city 012", 90, 30);
+        assertEquals(10, page.values.size());
+        assertTrue(source.query("city 012", 200, 30).values.isEmpty());
+    }
+
+    @Test
+    public void fromPipes_missingLabelsShowValues() {
+        SortedOptionSource source = SortedOptionSource.fromPipes("a|b|c", "Zeta");
+        assertEquals(Arrays.asList("b", "c", "a"), source.query("", 0, 10).values);
+        assertEquals("Zeta", source.getLabel("a"));
+        assertEquals("b", source.getLabel("b"));
+        assertNull(source.getLabel("d"));
+        assertEquals(3, source.size());
+    }
+
+    @Test
+    public void page_toJson() {
+        assertEquals("{\"total\":2,\"values\":[\"mad\",\"mal\"],\"labels\":[\"Madrid\",\"M\u00e1laga\"]}",
+                cities.query("m", 0, 2).toJson());
+    }
+
+}
@@ -0,0 +1,157 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of DATE fields, with selects where input[type="date"] is not supported.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+    var createElementValidator = builder.helpers.createElementValidator;
+
+    /**
+     * Create date element
+     * 
+     * @param {Object} config
+     * @returns {Object}
+     */
+    function createDateElm(config) {
+        var input = $('<input></input>');
+
+        input.attr('type', config.type);
+        input.attr('dateformat', config.dateformat);
+
+        if (config.name) {
+            input.attr('name', config.name);
+            input.attr('id', config.name);
+        }
+
+        if (config.value) {
+            input.attr('value', config.value);
+        }
+
+        if (config.textalign) {
+            input.css('textAlign', config.textalign);
+        }
+
+        if (config.max) {
+            input.attr('max', config.max);
+        }
+
+        if (config.min) {
+            input.attr('min', config.min);
+        }
+
+        if (config.required == 1 || config.required == 'true') {
+            input.prop('required', true);
+        }
+        
+        createElementValidator(input, config);
+
+        if (!Modernizr.inputtypes.date 
+                || (Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
+            // browser not supports input[type="date"]
+            var element = $('<span></span>').addClass('datePicker');
+
+            var daySelect = $('<select></select>').addClass('dd');
+            daySelect.append('<option value="DD">DD</option>');
+            for (var i = 1; i <= 31; i++) {
+                val = i < 10 ? "0" + i : i;
+                daySelect.append('<option value="' + val + '">' + val + '</option>');
+            }
+            var monthSelect = $('<select></select>').addClass('mm');
+            monthSelect.append('<option value="MM">MM</option>');
+            for (var i = 1; i <= 12; i++) {
+                val = i < 10 ? "0" + i : i;
+                monthSelect.append('<option value="' + val + '">' + val + '</option>');
+            }
+            var yearSelect = $('<select></select>').addClass('yyyy');
+            var currentYear = new Date().getFullYear();
+            
+            var yearsDiff = 100;
+            if (config.yearsDiff) {
+                yearsDiff = parseInt(config.yearsDiff, 10);
+            }
+            
+            for (var i = (currentYear + yearsDiff); i >= (currentYear - yearsDiff); i--) {
+                if (new Date().getFullYear() == i) {
+                    yearSelect.append('<option value="' + i + '" selected>' + i + '</option>');
+                } else {
+                    yearSelect.append('<option value="' + i + '">' + i + '</option>');
+                }
+            }
+
+            $([daySelect, monthSelect, yearSelect]).each(function() {
+                $(this).change(function() {
+                    var dd = $(this).parent().children('.dd').val();
+                    var mm = $(this).parent().children('.mm').val();
+                    var yyyy = $(this).parent().children('.yyyy').val();
+                    var dateString = yyyy + '-' + mm + '-' + dd;
+                    if (Utils.isValidDate(dateString)) {
+                        $(this).parent().children('input').val(dateString);
+                    } else {
+                        if (parseInt(dd,10) > 0 
+                                && parseInt(mm,10) > 0 && parseInt(yyyy,10) > 0) {
+                            $(this).parent().children('.mm').val('');
+                        }
+                        $(this).parent().children('input').val('');
+                    }
+                    $(this).parent().children('input').trigger('input');
+                });
+            })
+            
+            if(!config.dateformat) {
+                config.dateformat = "dd/mm/yyyy";
+            }
+            var dateformat = config.dateformat.replace(/[-/.]/g, "").toLowerCase();
+
+            switch (dateformat) {
+                case 'ddmmyyyy':
+                    element.append(daySelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(monthSelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(yearSelect);
+                    break;
+                case 'mmddyyyy':
+                    element.append(monthSelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(daySelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(yearSelect);
+                    break;
+                case 'yyyymmdd':
+                default:
+                    element.append(yearSelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(monthSelect);
+                    element.append('<span class="separator">/</span>');
+                    element.append(daySelect);
+            }
+            
+            // fill combos with populate data
+            $(input).on('input',function() {
+                var val = $(this).val();
+                var dd = val.substring(8,10);
+                var mm = val.substring(5,7);
+                var yyyy = val.substring(0,4);
+                var date = new Date(parseInt(yyyy,10), parseInt(mm,10)-1, parseInt(dd,10));
+                // valid date
+                if (date.getFullYear() == parseInt(yyyy,10) && 
+                        date.getMonth() + 1 == parseInt(mm,10) && 
+                        date.getDate() == parseInt(dd,10)) {
+                    $(this).siblings('select.dd').val(dd);
+                    $(this).siblings('select.mm').val(mm);
+                    $(this).siblings('select.yyyy').val(yyyy);
+                }
+            });
+
+            element.append(input);
+
+            return element;
+        } else {
+            return input;
+        }
+    }
+
+    builder.fields.date = createDateElm;
+
+})(jQuery);
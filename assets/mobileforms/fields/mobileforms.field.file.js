@@ -0,0 +1,32 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of FILE fields.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+
+    /**
+     * Create FILE element
+     * 
+     * @param {Object} config returns {Object}
+     */
+    function createFileElm(config) {
+        var input = $('<input></input>').attr('type', 'file');
+
+        // .. field attributes
+        if (config.name) {
+            input.attr('name', config.name);
+            input.attr('id', config.name);
+        }
+
+        if (config.maxlength) {
+            input.attr('size', config.maxlength);
+        }
+
+        return input;
+    }
+
+    builder.fields.file = createFileElm;
+
+})(jQuery);
@@ -0,0 +1,193 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of SELECT and RADIO fields with an 'optionsource': a search box whose options are
+    // asked to the native OptionSource of that name a page at a time, so only the listed ones are in the DOM.
+    // The value is kept in a hidden input named as the field. Without a native bridge the list is empty.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+    var updateValidity = builder.helpers.updateValidity;
+    var sendEvent = builder.helpers.sendEvent;
+
+    // options asked at a time, pixels to the end of the list that ask for the next page,
+    // and milliseconds without typing before the options of the search are asked
+    var PAGE_SIZE = 50;
+    var SCROLL_MARGIN = 100;
+    var SEARCH_DELAY = 150;
+
+    var EMPTY_PAGE = { total : 0, values : [], labels : [] };
+
+    function nativeBridge() {
+        return window.MobileFormsBridge && window.MobileFormsBridge.queryOptions ? window.MobileFormsBridge : null;
+    }
+
+    function queryOptions(source, prefix, offset) {
+        var bridge = nativeBridge();
+        var page = bridge ? bridge.queryOptions(source, prefix, offset, PAGE_SIZE) : null;
+        return page ? JSON.parse(page) : EMPTY_PAGE;
+    }
+
+    function getOptionLabel(source, value) {
+        var bridge = nativeBridge();
+        var label = bridge && value ? bridge.getOptionLabel(source, value) : null;
+        return label != null ? label : value;
+    }
+
+    /**
+     * Create OPTIONSOURCE elements
+     *
+     * @param {Object} config
+     * @returns {Object}
+     */
+    function createOptionSourceElm(config) {
+        var div = $('<div></div>').addClass('optionSource');
+        // the hidden input is checked by updateValidity, the generic validator does not know this element
+        div.data('ignoreValidation', true);
+
+        var input = $('<input></input>').attr('type', 'hidden');
+
+        if (config.name) {
+            input.attr('id', config.name);
+            input.attr('name', config.name);
+        }
+
+        if (config.value) {
+            input.attr('value', config.value);
+        }
+
+        if (config.required == 1 || config.required == 'true') {
+            input.prop('required', true);
+        }
+
+        var search = $('<input></input>').attr({
+            type : 'search',
+            autocomplete : 'off'
+        }).addClass('optionSearch');
+
+        if (config.placeholder) {
+            search.attr('placeholder', config.placeholder);
+        }
+
+        search.val(getOptionLabel(config.optionsource, config.value));
+        search.data('valueInput', input[0]);
+
+        var list = $('<ul></ul>').addClass('optionList').hide();
+
+        div.append(input);
+        div.append(search);
+        div.append(list);
+
+        // options listed for the search, and number of options matching it
+        var prefix = '';
+        var loaded = 0;
+        var total = 0;
+        var searchTimer = null;
+
+        function loadPage() {
+            var page = queryOptions(config.optionsource, prefix, loaded);
+            var items = [];
+            for (var i = 0; i < page.values.length; i++) {
+                var item = $('<li></li>').text(page.labels[i]).attr('data-value', page.values[i]);
+                if (page.values[i] == input.val()) {
+                    item.addClass('selected');
+                }
+                items.push(item[0]);
+            }
+            list.append(items);
+            loaded += page.values.length;
+            // a source that ends before its total must not be asked again
+            total = page.values.length > 0 ? page.total : loaded;
+        }
+
+        function openList(text) {
+            clearTimeout(searchTimer);
+            prefix = text;
+            loaded = 0;
+            total = 0;
+            list.empty().show().scrollTop(0);
+            loadPage();
+        }
+
+        function closeList() {
+            clearTimeout(searchTimer);
+            list.hide().empty();
+            loaded = 0;
+            total = 0;
+        }
+
+        function select(value, label) {
+            closeList();
+            search.val(label);
+            if (value != input.val()) {
+                input.val(value).trigger('change');
+                sendEvent('change', config.name, value);
+            }
+            updateValidity(input);
+        }
+
+        search.on('focus', function() {
+            sendEvent('focus', config.name, input.val());
+            openList('');
+            this.select();
+        });
+
+        search.on('input', function() {
+            clearTimeout(searchTimer);
+            searchTimer = setTimeout(function() {
+                openList(search.val());
+            }, SEARCH_DELAY);
+        });
+
+        search.on('keydown', function(event) {
+            // enter picks the first option listed instead of submitting the form
+            if (event.keyCode == 13) {
+                event.preventDefault();
+                var first = list.children('li').first();
+                if (first.length) {
+                    select(first.attr('data-value'), first.text());
+                    search.blur();
+                }
+            }
+        });
+
+        search.on('focusout', function() {
+            // typing does not change the value, clearing the search does
+            if (search.val() == '') {
+                select('', '');
+            } else {
+                closeList();
+                search.val(getOptionLabel(config.optionsource, input.val()));
+            }
+            sendEvent('focusout', config.name, input.val());
+        });
+
+        list.on('scroll', function() {
+            if (loaded < total && this.scrollTop + this.clientHeight >= this.scrollHeight - SCROLL_MARGIN) {
+                loadPage();
+            }
+        });
+
+        // the search keeps the focus while an option is touched
+        list.on('mousedown', 'li', function(event) {
+            event.preventDefault();
+        });
+
+        list.on('click', 'li', function() {
+            select($(this).attr('data-value'), $(this).text());
+            search.blur();
+        });
+
+        // values set by populate or reset
+        input.on('change', function() {
+            if (!search.is(':focus')) {
+                search.val(getOptionLabel(config.optionsource, input.val()));
+            }
+        });
+
+        return div;
+    }
+
+    builder.fields.optionsource = createOptionSourceElm;
+
+})(jQuery);
@@ -0,0 +1,135 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of PHONEITEM fields, a phone type select with its phone input.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+    var createElementValidator = builder.helpers.createElementValidator;
+    var updateValidity = builder.helpers.updateValidity;
+    var forgetValidity = builder.helpers.forgetValidity;
+
+    /**
+     * Create phoneitem elements
+     * 
+     * @param {Object} config
+     * @returns {Object}
+     */
+    function createPhoneItemElm(config) {
+        var item = $('<select></select>');
+        item.addClass('phoneitem');
+        item.data('ignoreValidation', true);
+ 
+        if(!config.phonetypevalues) { config.phonetypevalues = 'null'; }
+        if(!config.phonetypelabels) { config.phonetypelabels = ''; }
+ 
+        var optValues = config.phonetypevalues.split('|');
+        var optLabels = config.phonetypelabels.split('|');
+
+        for (var i = 0; i < optValues.length; i++) {
+            var value = optValues[i];
+            var label = (typeof optLabels[i] != 'undefined') ? optLabels[i] : optValues[i];
+            
+            var option = $('<option value="' + value + '">' + label + '</option>');
+            if (value == config.value) {
+                option.prop('selected', true);
+            }
+            var nametype = config.nametype ? config.nametype : 'type';
+            item.attr('name', config.name + '[' + nametype + ']');
+            item.attr('id', config.name + '[' + nametype + ']');
+            item.append(option);
+        }
+        
+        var input = $('<input></input>');
+        input.addClass('phoneitem');
+
+        // .. field attributes
+        if (config.type) {
+            input.attr('type', 'tel');
+        }
+
+        if (config.name) {
+            var namephone = config.namephone ? config.namephone : 'type';
+            input.attr('name', config.name + '[' + namephone + ']');
+            input.attr('id', config.name + '[' + namephone + ']');
+        }
+
+        if (config.value) {
+            input.attr('value', config.value);
+        }
+
+        if (config.placeholder) {
+            input.attr('placeholder', config.placeholder);
+        }
+
+        if (config.maxlength) {
+            input.attr('maxlength', config.maxlength);
+        }
+
+        if (config.max) {
+            input.attr('max', config.max);
+        }
+
+        if (config.min) {
+            input.attr('min', config.min);
+        }
+
+        if (config.required == 1 || config.required == 'true') {
+            input.prop('required', true);
+        }
+
+        item.after(input);
+        
+        if (config.name && config.name.indexOf('[]') > 0) {
+            if (!config.multiple) {
+                var div = $('<div class="inputContainer"></div>');
+                var button = $('<a>+</a>');
+                button.addClass('add');
+                button.on('click', function() {
+                    addPhoneItemMultipleElem(config, div);
+                });
+                div.append(button);
+                createElementValidator(item, config)
+                div.append(item);
+                div.append($('<div></div>').addClass('clearFix'));
+                return div;
+            } else {
+                return item
+            }
+        }
+
+        return item;
+    }
+
+    /**
+     * Create multiple phone item element (on the fly)
+     * 
+     * @param {Object} config
+     * @param {Object} div
+     */
+    function addPhoneItemMultipleElem(config, div) {
+        config.multiple = true;
+        var input = createPhoneItemElm(config);
+
+        var button = $('<a>-</a>');
+        button.addClass('delete');
+        button.on('click', function() {
+            forgetValidity(input);
+            input.next('p.error_mesg').remove();
+            input.next('.clearFix').remove();
+            input.remove();
+            button.remove();
+        });
+        createElementValidator(input, config)
+        div.append(button);
+        div.append(input);
+        div.append($('<div></div>').addClass('clearFix'));
+        updateValidity(input);
+        if(Utils) { 
+            Utils.tabIndexFix();
+        }
+    }
+
+    builder.fields.phoneitem = createPhoneItemElm;
+
+})(jQuery);
@@ -0,0 +1,89 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of RANGE fields, a number input where input[type="range"] is not supported.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+
+    /**
+     * Create RANGE element
+     * @param {Object} config
+     * @returns {Object}
+     */
+    function createRangeElm(config) {
+        var input = $('<input></input>');
+
+        if (Modernizr.inputtypes.range && 
+                !(Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
+            var input = $('<input></input>');
+
+            // .. field attributes
+            if (config.type) {
+                input.attr('type', config.type);
+            }
+
+            if (config.name) {
+                input.attr('id', config.name);
+                input.attr('name', config.name);
+            }
+
+            if (config.value) {
+                input.attr('value', config.value);
+            } else {
+                input.attr('value', config.min ? config.min : '0');
+            }
+
+            if (config.max) {
+                input.attr('max', config.max);
+            }
+
+            if (config.min) {
+                input.attr('min', config.min);
+            }
+
+            if (config.step) {
+                input.attr('step', config.step);
+            }
+
+            var rangeValue = $('<div></div>');
+            rangeValue.html(config.value ? config.value : '');
+            rangeValue.addClass('rangeValue');
+            input.after(rangeValue);
+            
+            // 'input' event works better than 'change' for this 
+            input.on('input', function() { 
+                var id = $(this).attr('id');
+                $('#' + id + ' + .rangeValue').html($(this).val());
+            });
+
+        } else {
+            // browser not supports input[type="range"]
+            input.attr('type', 'number');
+
+            if (config.name) {
+                input.attr('id', config.name);
+                input.attr('name', config.name);
+            }
+
+            if (config.value) {
+                input.attr('value', config.value);
+            } else {
+                input.attr('value', config.min ? config.min : '0');
+            }
+
+            if (config.max) {
+                input.attr('max', config.max);
+            }
+
+            if (config.min) {
+                input.attr('min', config.min);
+            }
+        }
+
+        return input;
+    }
+
+    builder.fields.range = createRangeElm;
+
+})(jQuery);
@@ -0,0 +1,108 @@
+(function($) {
+
+    // ---------------------------------------------------------------------------------------------
+    // Builder chunk of TIME fields, with selects where input[type="time"] is not supported.
+    // Loaded only by the forms that have them, see MobileFormsBuilder.fields
+
+    var builder = $.fn.MobileFormsBuilder;
+    var createElementValidator = builder.helpers.createElementValidator;
+
+    /**
+     * Create time element
+     * 
+     * @param {Object}
+     *            config
+     * @returns {Object}
+     */
+    function createTimeElm(config) {
+        var input = $('<input></input>');
+
+        input.attr('type', config.type);
+
+        if (config.name) {
+            input.attr('name', config.name);
+            input.attr('id', config.name);
+        }
+
+        if (config.value) {
+            input.attr('value', config.value);
+        }
+
+        if (config.textalign) {
+            input.css('textAlign', config.textalign);
+        }
+
+        if (config.max) {
+            input.attr('max', config.max);
+        }
+
+        if (config.min) {
+            input.attr('min', config.min);
+        }
+
+        if (config.required == 1 || config.required == 'true') {
+            input.prop('required', true);
+        }
+        
+        createElementValidator(input, config);
+
+        if (!Modernizr.inputtypes.time || 
+                (Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
+            // browser not supports input[type="time"]
+            var element = $('<span></span>').addClass('timePicker');
+
+            var hourSelect = $('<select></select>').addClass('HH');
+            hourSelect.append('<option value="HH">HH</option>');
+            for (var i = 0; i <= 23; i++) {
+                val = i < 10 ? "0" + i : i;
+                hourSelect.append('<option value="' + val + '">' + val + '</option>');
+            }
+            var minuteSelect = $('<select></select>').addClass('MM');
+            minuteSelect.append('<option value="MM">MM</option>');
+            for (var i = 0; i <= 59; i++) {
+                val = i < 10 ? "0" + i : i;
+                minuteSelect.append('<option value="' + val + '">' + val + '</option>');
+            }
+
+            $([hourSelect, minuteSelect]).each(function() {
+                $(this).change(function() {
+                    var HH = $(this).parent().children('.HH').val();
+                    var MM = $(this).parent().children('.MM').val();
+                    if (parseInt(HH, 10) >= 0 && parseInt(MM, 10) >= 0) {
+                        var time = HH + ':' + MM;
+                        $(this).parent().children('input').val(time);
+                    } else {
+                        $(this).parent().children('input').val("");
+                    }
+                    $(this).parent().children('input').trigger('input');
+                });
+            })
+            
+            element.append(hourSelect);
+            element.append('<span class="separator">:</span>');
+            element.append(minuteSelect);
+
+            // fill combos with populate data
+            $(input).on('input',function() {
+                var val = $(this).val();
+                var HH = val.substring(0,2)
+                var MM = val.substring(3,5)
+                // valid hour
+                if (parseInt(HH,10) >= 0 && parseInt(HH,10) <= 23 &&
+                    parseInt(MM,10) >= 0 && parseInt(MM,10) <= 59) {
+                    $(this).siblings('select.HH').val(HH);
+                    $(this).siblings('select.MM').val(MM);
+                }
+            });
+
+            element.append(input);
+
+            return element;
+        } else {
+            return input;
+        }
+    }
+
+    builder.fields.time = createTimeElm;
+
+})(jQuery);
@@ -27,8 +27,9 @@
                         container : webform
                     });
                 }
-                setButtonState(webform);
+                rebuildValidity(webform);
                 readyCallback(webform);
+                startProgressiveBuild(webform);
                 return webform;
             });
         },
@@ -42,7 +43,39 @@
                 }
             });
         },
+        // builds the sections that are still pending, see renderSections
+        "buildAll" : function() {
+            return this.each(function() {
+                var webform = $(this).data().container;
+                if (webform) {
+                    buildSections(webform);
+                }
+            });
+        },
+        // true if every section of the form has been built
+        "isBuilt" : function() {
+            var webform = this.first().data().container;
+            return webform ? !hasPendingSections(webform) : false;
+        },
+        // recounts the invalid fields, after changing many values at once (populate)
+        "refreshValidity" : function() {
+            return this.each(function() {
+                var webform = $(this).data().container;
+                if (webform) {
+                    rebuildValidity(webform);
+                }
+            });
+        },
+        // true if no field is invalid or missing, answered from the validity index
+        "isValid" : function() {
+            var webform = this.first().data().container;
+            if (webform) {
+                buildSections(webform);
+            }
+            return webform ? getValidity(webform).invalid == 0 : false;
+        },
         "destroy" : function() {
+            $(window).off('.mobileformsSections');
             return this.each(function() {
                 $(this).removeData();
             });
@@ -58,6 +91,19 @@
         }
     };
 
+    // Builders of the field types that live in their own chunk (fields/mobileforms.field.<type>.js), by type.
+    // A chunk registers its builder here when it is loaded, and uses the helpers to validate its elements.
+    var fieldBuilders = {};
+    $.fn.MobileFormsBuilder.fields = fieldBuilders;
+    $.fn.MobileFormsBuilder.helpers = {
+        createElementValidator : createElementValidator,
+        updateValidity : updateValidity,
+        forgetValidity : forgetValidity,
+        sendEvent : function(event, element, value) {
+            eventListener(event, element, value);
+        }
+    };
+
     // ---------------------------------------------------------------------------------------------
     // Form builder
 
@@ -104,29 +150,24 @@
             }
         }
 
-        // create form field elements
+        // create form field elements, the sections after the first renderSections are built later
         if (config.fields) {
             var data = (config.fields.sections) ? config.fields.sections : new Array();
+            var pending = [];
             for (var j = 0; j < data.length; j++) {
-                var sectionFields = data[j].fields;
-                if (sectionFields.length > 1 || (typeof sectionFields[0].type !== 'undefined' 
-                        && typeof sectionFields[0].type !== 'name')) {
-                    var fields = $('<fieldset></fieldset>').addClass('field_group' + j);
-                }
-                if (typeof data[j].title !== 'undefined') {
-                    fields.append('<legend>' + data[j].title + '</legend>');
-                }
-                for (var k = 0; k < sectionFields.length; k++) {
-                    if (typeof sectionFields[k].type !== 'undefined' 
-                            && typeof sectionFields[k].type !== 'name') {
-                        fields.append(createField(form, sectionFields[k]));
-                    }
+                if (config.renderSections > 0 && j >= config.renderSections) {
+                    pending.push({ index : j, section : data[j] });
+                } else {
+                    form.append(createSection(form, data[j], j));
                 }
                 if (typeof config.fields.submit !== 'undefined') {
                     submitBtn = true;
                     submitBtnText = config.fields.submit;
                 }
-                form.append(fields);
+            }
+            if (pending.length > 0) {
+                $.data(form[0], 'pendingSections', pending);
+                form.append($('<div></div>').addClass('pendingSections'));
             }
         }
 
@@ -165,6 +206,128 @@
         return form;
     }
 
+    /**
+     * Create the fieldset of a section
+     * 
+     * @param {Object} form
+     * @param {Object} section
+     * @param {Number} index
+     * @returns {Object}
+     */
+    function createSection(form, section, index) {
+        var sectionFields = section.fields ? section.fields : [];
+        var fields;
+        // sections without fields are kept empty, so the field_groupN classes match the definition
+        if (sectionFields.length != 1 || (typeof sectionFields[0].type !== 'undefined' 
+                && typeof sectionFields[0].type !== 'name')) {
+            fields = $('<fieldset></fieldset>').addClass('field_group' + index);
+        }
+        if (typeof section.title !== 'undefined') {
+            fields.append('<legend>' + section.title + '</legend>');
+        }
+        for (var k = 0; k < sectionFields.length; k++) {
+            if (typeof sectionFields[k].type !== 'undefined' 
+                    && typeof sectionFields[k].type !== 'name') {
+                fields.append(createField(form, sectionFields[k]));
+            }
+        }
+        return fields;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Progressive rendering: the sections that are not built yet are built one per frame once the
+    // form is shown, right away when the user scrolls or moves close to them, and all at once when
+    // the whole form is needed (submit, validity, errors, data). Each built section is announced
+    // with a 'sectionbuilt' event on the form, so its values can be populated.
+
+    function hasPendingSections(form) {
+        var pending = $.data(form[0], 'pendingSections');
+        return pending !== undefined && pending.length > 0;
+    }
+
+    /**
+     * Build the next pending sections
+     * @param {Object} form
+     * @param {Number} count sections to build, all of them if undefined
+     */
+    function buildSections(form, count) {
+        var pending = $.data(form[0], 'pendingSections');
+        var marker = form.children('.pendingSections');
+        for (var i = 0; pending && pending.length > 0 && (count === undefined || i < count); i++) {
+            var next = pending.shift();
+            var fieldset = createSection(form, next.section, next.index);
+            marker.before(fieldset);
+            form.trigger('sectionbuilt', [ fieldset ]);
+            // the validity of the new fields is added to the index, it is notified once the form is complete
+            updateValidity(fieldset);
+        }
+        if (pending && pending.length == 0) {
+            $.removeData(form[0], 'pendingSections');
+            marker.remove();
+            stopProgressiveBuild(form);
+            notifyValidity(form, getValidity(form));
+            form.trigger('sectionsbuilt');
+        }
+    }
+
+    /**
+     * Build the pending sections close to the visible area, or the next one if the user is not close to them
+     * @param {Object} form
+     * @param {Boolean} idle
+     */
+    function buildVisibleSections(form, idle) {
+        var marker = form.children('.pendingSections');
+        var limit = $(window).scrollTop() + 2 * $(window).height();
+        var built = 0;
+        while (hasPendingSections(form) && marker.offset().top < limit) {
+            buildSections(form, 1);
+            built++;
+        }
+        if (idle && built == 0) {
+            buildSections(form, 1);
+        }
+    }
+
+    function startProgressiveBuild(form) {
+        if (!hasPendingSections(form)) {
+            return;
+        }
+        $(window).on('scroll.mobileformsSections', function() {
+            buildVisibleSections(form, false);
+        });
+        // moving to a field of the last built section builds the next one
+        form.on('focusin.mobileformsSections', function(event) {
+            var last = form.children('.pendingSections').prev('fieldset');
+            if (last.length && $.contains(last[0], event.target)) {
+                buildSections(form, 1);
+            }
+        });
+        scheduleProgressiveBuild(form);
+    }
+
+    // one section per frame, so the form keeps answering to the user while it is built
+    function scheduleProgressiveBuild(form) {
+        var nextFrame = window.requestAnimationFrame ? function(callback) {
+            window.requestAnimationFrame(function() {
+                setTimeout(callback, 0);
+            });
+        } : function(callback) {
+            setTimeout(callback, 16);
+        };
+        nextFrame(function() {
+            // a removed form has no pending sections, its data is gone
+            if (hasPendingSections(form)) {
+                buildVisibleSections(form, true);
+                scheduleProgressiveBuild(form);
+            }
+        });
+    }
+
+    function stopProgressiveBuild(form) {
+        $(window).off('.mobileformsSections');
+        form.off('.mobileformsSections');
+    }
+
     // ---------------------------------------------------------------------------------------------
     // Fields builder
 
@@ -215,32 +378,24 @@
             elm = createInputElm(config);
             break;
 
-        case 'date':
-            elm = createDateElm(config);
-            break;
-
-        case 'time':
-            elm = createTimeElm(config);
-            break;
-
-        case 'file':
-            elm = createFileElm(config);
-            break;
-
         case 'textarea':
             elm = createTextAreaElm(config);
             break;
 
-        case 'range':
-            elm = createRangeElm(config);
-            break;
-
         case 'select':
-            elm = createSelectElm(config);
-            break;
-
         case 'radio':
-            elm = createRadioElm(config);
+            // options of a native OptionSource, built by their chunk, see fields/
+            if (config.optionsource) {
+                if (!fieldBuilders.hasOwnProperty('optionsource')) {
+                    console.log('MobileForms error: Option source fields not loaded : ' + config.name);
+                    return;
+                }
+                elm = fieldBuilders.optionsource(config);
+            } else if (config.type == 'select') {
+                elm = createSelectElm(config);
+            } else {
+                elm = createRadioElm(config);
+            }
             break;
 
         case 'checkbox':
@@ -248,18 +403,18 @@
             break;
             
         // specials
-        
-        case 'phoneitem':
-            elm = createPhoneItemElm(config);
-            break;
             
         case 'link':
             elm = createLinkElm(config);
             break;
 
+        // date, time, file, range and phoneitem are built by their chunks, see fields/
         default:
-            console.log('MobileForms error: Invalid or missing field type : ' + config.type);
-            return;
+            if (!fieldBuilders.hasOwnProperty(config.type)) {
+                console.log('MobileForms error: Invalid, missing or not loaded field type : ' + config.type);
+                return;
+            }
+            elm = fieldBuilders[config.type](config);
         }
         
         // events
@@ -292,7 +447,7 @@
             createElementValidator(elm, config);
         } else {
             elm.on('focusout', function() {
-                setButtonState($('form'));
+                updateValidity(this);
             });
         }
 
@@ -418,6 +573,7 @@
         var button = $('<a>-</a>');
         button.addClass('delete');
         button.on('click', function() {
+            forgetValidity(input);
             input.next('p.error_mesg').remove();
             input.next('.clearFix').remove();
             input.remove();
@@ -427,273 +583,12 @@
         div.append(button);
         div.append(input);
         div.append($('<div></div>').addClass('clearFix'));
+        updateValidity(input);
         if(Utils) { 
             Utils.tabIndexFix();
         }
     }
 
-    /**
-     * Create date element
-     * 
-     * @param {Object} config
-     * @returns {Object}
-     */
-    function createDateElm(config) {
-        var input = $('<input></input>');
-
-        input.attr('type', config.type);
-        input.attr('dateformat', config.dateformat);
-
-        if (config.name) {
-            input.attr('name', config.name);
-            input.attr('id', config.name);
-        }
-
-        if (config.value) {
-            input.attr('value', config.value);
-        }
-
-        if (config.textalign) {
-            input.css('textAlign', config.textalign);
-        }
-
-        if (config.max) {
-            input.attr('max', config.max);
-        }
-
-        if (config.min) {
-            input.attr('min', config.min);
-        }
-
-        if (config.required == 1 || config.required == 'true') {
-            input.prop('required', true);
-        }
-        
-        createElementValidator(input, config);
-
-        if (!Modernizr.inputtypes.date 
-                || (Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
-            // browser not supports input[type="date"]
-            var element = $('<span></span>').addClass('datePicker');
-
-            var daySelect = $('<select></select>').addClass('dd');
-            daySelect.append('<option value="DD">DD</option>');
-            for (var i = 1; i <= 31; i++) {
-                val = i < 10 ? "0" + i : i;
-                daySelect.append('<option value="' + val + '">' + val + '</option>');
-            }
-            var monthSelect = $('<select></select>').addClass('mm');
-            monthSelect.append('<option value="MM">MM</option>');
-            for (var i = 1; i <= 12; i++) {
-                val = i < 10 ? "0" + i : i;
-                monthSelect.append('<option value="' + val + '">' + val + '</option>');
-            }
-            var yearSelect = $('<select></select>').addClass('yyyy');
-            var currentYear = new Date().getFullYear();
-            
-            var yearsDiff = 100;
-            if (config.yearsDiff) {
-                yearsDiff = parseInt(config.yearsDiff, 10);
-            }
-            
-            for (var i = (currentYear + yearsDiff); i >= (currentYear - yearsDiff); i--) {
-                if (new Date().getFullYear() == i) {
-                    yearSelect.append('<option value="' + i + '" selected>' + i + '</option>');
-                } else {
-                    yearSelect.append('<option value="' + i + '">' + i + '</option>');
-                }
-            }
-
-            $([daySelect, monthSelect, yearSelect]).each(function() {
-                $(this).change(function() {
-                    var dd = $(this).parent().children('.dd').val();
-                    var mm = $(this).parent().children('.mm').val();
-                    var yyyy = $(this).parent().children('.yyyy').val();
-                    var dateString = yyyy + '-' + mm + '-' + dd;
-                    if (Utils.isValidDate(dateString)) {
-                        $(this).parent().children('input').val(dateString);
-                    } else {
-                        if (parseInt(dd,10) > 0 
-                                && parseInt(mm,10) > 0 && parseInt(yyyy,10) > 0) {
-                            $(this).parent().children('.mm').val('');
-                        }
-                        $(this).parent().children('input').val('');
-                    }
-                    $(this).parent().children('input').trigger('input');
-                });
-            })
-            
-            if(!config.dateformat) {
-                config.dateformat = "dd/mm/yyyy";
-            }
-            var dateformat = config.dateformat.replace(/[-/.]/g, "").toLowerCase();
-
-            switch (dateformat) {
-                case 'ddmmyyyy':
-                    element.append(daySelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(monthSelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(yearSelect);
-                    break;
-                case 'mmddyyyy':
-                    element.append(monthSelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(daySelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(yearSelect);
-                    break;
-                case 'yyyymmdd':
-                default:
-                    element.append(yearSelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(monthSelect);
-                    element.append('<span class="separator">/</span>');
-                    element.append(daySelect);
-            }
-            
-            // fill combos with populate data
-            $(input).on('input',function() {
-                var val = $(this).val();
-                var dd = val.substring(8,10);
-                var mm = val.substring(5,7);
-                var yyyy = val.substring(0,4);
-                var date = new Date(parseInt(yyyy,10), parseInt(mm,10)-1, parseInt(dd,10));
-                // valid date
-                if (date.getFullYear() == parseInt(yyyy,10) && 
-                        date.getMonth() + 1 == parseInt(mm,10) && 
-                        date.getDate() == parseInt(dd,10)) {
-                    $(this).siblings('select.dd').val(dd);
-                    $(this).siblings('select.mm').val(mm);
-                    $(this).siblings('select.yyyy').val(yyyy);
-                }
-            });
-
-            element.append(input);
-
-            return element;
-        } else {
-            return input;
-        }
-    }
-
-    /**
-     * Create time element
-     * 
-     * @param {Object}
-     *            config
-     * @returns {Object}
-     */
-    function createTimeElm(config) {
-        var input = $('<input></input>');
-
-        input.attr('type', config.type);
-
-        if (config.name) {
-            input.attr('name', config.name);
-            input.attr('id', config.name);
-        }
-
-        if (config.value) {
-            input.attr('value', config.value);
-        }
-
-        if (config.textalign) {
-            input.css('textAlign', config.textalign);
-        }
-
-        if (config.max) {
-            input.attr('max', config.max);
-        }
-
-        if (config.min) {
-            input.attr('min', config.min);
-        }
-
-        if (config.required == 1 || config.required == 'true') {
-            input.prop('required', true);
-        }
-        
-        createElementValidator(input, config);
-
-        if (!Modernizr.inputtypes.time || 
-                (Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
-            // browser not supports input[type="time"]
-            var element = $('<span></span>').addClass('timePicker');
-
-            var hourSelect = $('<select></select>').addClass('HH');
-            hourSelect.append('<option value="HH">HH</option>');
-            for (var i = 0; i <= 23; i++) {
-                val = i < 10 ? "0" + i : i;
-                hourSelect.append('<option value="' + val + '">' + val + '</option>');
-            }
-            var minuteSelect = $('<select></select>').addClass('MM');
-            minuteSelect.append('<option value="MM">MM</option>');
-            for (var i = 0; i <= 59; i++) {
-                val = i < 10 ? "0" + i : i;
-                minuteSelect.append('<option value="' + val + '">' + val + '</option>');
-            }
-
-            $([hourSelect, minuteSelect]).each(function() {
-                $(this).change(function() {
-                    var HH = $(this).parent().children('.HH').val();
-                    var MM = $(this).parent().children('.MM').val();
-                    if (parseInt(HH, 10) >= 0 && parseInt(MM, 10) >= 0) {
-                        var time = HH + ':' + MM;
-                        $(this).parent().children('input').val(time);
-                    } else {
-                        $(this).parent().children('input').val("");
-                    }
-                    $(this).parent().children('input').trigger('input');
-                });
-            })
-            
-            element.append(hourSelect);
-            element.append('<span class="separator">:</span>');
-            element.append(minuteSelect);
-
-            // fill combos with populate data
-            $(input).on('input',function() {
-                var val = $(this).val();
-                var HH = val.substring(0,2)
-                var MM = val.substring(3,5)
-                // valid hour
-                if (parseInt(HH,10) >= 0 && parseInt(HH,10) <= 23 &&
-                    parseInt(MM,10) >= 0 && parseInt(MM,10) <= 59) {
-                    $(this).siblings('select.HH').val(HH);
-                    $(this).siblings('select.MM').val(MM);
-                }
-            });
-
-            element.append(input);
-
-            return element;
-        } else {
-            return input;
-        }
-    }
-
-    /**
-     * Create FILE element
-     * 
-     * @param {Object} config returns {Object}
-     */
-    function createFileElm(config) {
-        var input = $('<input></input>').attr('type', 'file');
-
-        // .. field attributes
-        if (config.name) {
-            input.attr('name', config.name);
-            input.attr('id', config.name);
-        }
-
-        if (config.maxlength) {
-            input.attr('size', config.maxlength);
-        }
-
-        return input;
-    }
-
     /**
      * Create select select elements
      * 
@@ -850,203 +745,6 @@
         return textarea;
     }
 
-    /**
-     * Create RANGE element
-     * @param {Object} config
-     * @returns {Object}
-     */
-    function createRangeElm(config) {
-        var input = $('<input></input>');
-
-        if (Modernizr.inputtypes.range && 
-                !(Utils.isAndroid() && Utils.androidVersion() < 4.4)) {
-            var input = $('<input></input>');
-
-            // .. field attributes
-            if (config.type) {
-                input.attr('type', config.type);
-            }
-
-            if (config.name) {
-                input.attr('id', config.name);
-                input.attr('name', config.name);
-            }
-
-            if (config.value) {
-                input.attr('value', config.value);
-            } else {
-                input.attr('value', config.min ? config.min : '0');
-            }
-
-            if (config.max) {
-                input.attr('max', config.max);
-            }
-
-            if (config.min) {
-                input.attr('min', config.min);
-            }
-
-            if (config.step) {
-                input.attr('step', config.step);
-            }
-
-            var rangeValue = $('<div></div>');
-            rangeValue.html(config.value ? config.value : '');
-            rangeValue.addClass('rangeValue');
-            input.after(rangeValue);
-            
-            // 'input' event works better than 'change' for this 
-            input.on('input', function() { 
-                var id = $(this).attr('id');
-                $('#' + id + ' + .rangeValue').html($(this).val());
-            });
-
-        } else {
-            // browser not supports input[type="range"]
-            input.attr('type', 'number');
-
-            if (config.name) {
-                input.attr('id', config.name);
-                input.attr('name', config.name);
-            }
-
-            if (config.value) {
-                input.attr('value', config.value);
-            } else {
-                input.attr('value', config.min ? config.min : '0');
-            }
-
-            if (config.max) {
-                input.attr('max', config.max);
-            }
-
-            if (config.min) {
-                input.attr('min', config.min);
-            }
-        }
-
-        return input;
-    }
-    
-    /**
-     * Create phoneitem elements
-     * 
-     * @param {Object} config
-     * @returns {Object}
-     */
-    function createPhoneItemElm(config) {
-        var item = $('<select></select>');
-        item.addClass('phoneitem');
-        item.data('ignoreValidation', true);
- 
-        if(!config.phonetypevalues) { config.phonetypevalues = 'null'; }
-        if(!config.phonetypelabels) { config.phonetypelabels = ''; }
- 
-        var optValues = config.phonetypevalues.split('|');
-        var optLabels = config.phonetypelabels.split('|');
-
-        for (var i = 0; i < optValues.length; i++) {
-            var value = optValues[i];
-            var label = (typeof optLabels[i] != 'undefined') ? optLabels[i] : optValues[i];
-            
-            var option = $('<option value="' + value + '">' + label + '</option>');
-            if (value == config.value) {
-                option.prop('selected', true);
-            }
-            var nametype = config.nametype ? config.nametype : 'type';
-            item.attr('name', config.name + '[' + nametype + ']');
-            item.attr('id', config.name + '[' + nametype + ']');
-            item.append(option);
-        }
-        
-        var input = $('<input></input>');
-        input.addClass('phoneitem');
-
-        // .. field attributes
-        if (config.type) {
-            input.attr('type', 'tel');
-        }
-
-        if (config.name) {
-            var namephone = config.namephone ? config.namephone : 'type';
-            input.attr('name', config.name + '[' + namephone + ']');
-            input.attr('id', config.name + '[' + namephone + ']');
-        }
-
-        if (config.value) {
-            input.attr('value', config.value);
-        }
-
-        if (config.placeholder) {
-            input.attr('placeholder', config.placeholder);
-        }
-
-        if (config.maxlength) {
-            input.attr('maxlength', config.maxlength);
-        }
-
-        if (config.max) {
-            input.attr('max', config.max);
-        }
-
-        if (config.min) {
-            input.attr('min', config.min);
-        }
-
-        if (config.required == 1 || config.required == 'true') {
-            input.prop('required', true);
-        }
-
-        item.after(input);
-        
-        if (config.name && config.name.indexOf('[]') > 0) {
-            if (!config.multiple) {
-                var div = $('<div class="inputContainer"></div>');
-                var button = $('<a>+</a>');
-                button.addClass('add');
-                button.on('click', function() {
-                    addPhoneItemMultipleElem(config, div);
-                });
-                div.append(button);
-                createElementValidator(item, config)
-                div.append(item);
-                div.append($('<div></div>').addClass('clearFix'));
-                return div;
-            } else {
-                return item
-            }
-        }
-
-        return item;
-    }
-
-    /**
-     * Create multiple phone item element (on the fly)
-     * 
-     * @param {Object} config
-     * @param {Object} div
-     */
-    function addPhoneItemMultipleElem(config, div) {
-        config.multiple = true;
-        var input = createPhoneItemElm(config);
-
-        var button = $('<a>-</a>');
-        button.addClass('delete');
-        button.on('click', function() {
-            input.next('p.error_mesg').remove();
-            input.next('.clearFix').remove();
-            input.remove();
-            button.remove();
-        });
-        createElementValidator(input, config)
-        div.append(button);
-        div.append(input);
-        div.append($('<div></div>').addClass('clearFix'));
-        if(Utils) { 
-            Utils.tabIndexFix();
-        }
-    }
-    
     /**
      * Create link elements
      * 
@@ -1095,13 +793,14 @@
             regex : config.filter,
             mesg : config.error,
             required : config.required,
+            type : config.type,
             error : false
         });
 
         // attach field events
         elm.on('focusout', function() {
             validateField(this);
-            setButtonState($('form'));
+            updateValidity(this);
         });
         elm.on('keyup', function(event) {
             // tab key
@@ -1114,7 +813,7 @@
                     validateField(this);
                 }
             }
-            setButtonState($('form'));
+            updateValidity(this);
         });
     }
 
@@ -1157,6 +856,59 @@
             return;
         }
 
+        var match = checkValue(elm, value, regex, required);
+
+        if(match === false) {
+            eventListener('validateerror', $this.attr('name'), value);
+        }
+
+        // toggle the error message visibility
+        if (match === false && error === false) {
+            $this.addClass('error_input');
+
+            $this.siblings('label').addClass('errorLabel');
+            
+            if(elm.type == 'time' || elm.type == 'date') {
+                $this.siblings('select').addClass('error_input');
+            }
+            
+            $this.addClass('error_on').data('error', true);
+            
+            if(mesg && mesg != '') {
+                var p = $('<p>' + mesg + '</p>').addClass('error_mesg');
+    
+                $this.after(p);
+    
+                p.fadeIn('slow');
+            }           
+        } else {
+            if ((match === true && error === true)) {
+                $this.removeClass('error_input');
+                $this.siblings('.errorLabel').removeClass('errorLabel');
+                if(elm.type == 'time' || elm.type == 'date') {
+                    $this.siblings('.error_input').removeClass('error_input');
+                }
+                var p = $this.next('p.error_mesg');
+                $this.data('error', false);
+                p.fadeOut('slow', function() {
+                    $this.removeClass('error_on');
+                    p.remove();
+                });
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check the form element value against its regex, min and max
+     * @param {Object} elm
+     * @param {String} value
+     * @param {String} regex
+     * @param {String} required
+     * @returns {Boolean} false if the value is not valid, null if the element is not checked
+     */
+    function checkValue(elm, value, regex, required) {
         var search = new RegExp(regex), 
             match = null;
         
@@ -1170,7 +922,8 @@
         }
                 
         if(match !== false) {
-            switch (elm.type) {
+            // the type of the field, number inputs are switched to text while they are not focused
+            switch ($(elm).data('type') || elm.type) {
                 case 'range':
                 case 'number':
                     if(elm.max && value && value != "") {
@@ -1227,7 +980,7 @@
                             }
                         }
                         if(elm.max) {
-                            if(new Date(value) < new Date(elm.min)) {
+                            if(new Date(value) > new Date(elm.max)) {
                                 match = false;
                                 break;
                             }
@@ -1237,48 +990,12 @@
             }
         }
 
-        if(match === false) {
-            eventListener('validateerror', $this.attr('name'), value);
-        }
-
-        // toggle the error message visibility
-        if (match === false && error === false) {
-            $this.addClass('error_input');
-
-            $this.siblings('label').addClass('errorLabel');
-            
-            if(elm.type == 'time' || elm.type == 'date') {
-                $this.siblings('select').addClass('error_input');
-            }
-            
-            $this.addClass('error_on').data('error', true);
-            
-            if(mesg && mesg != '') {
-                var p = $('<p>' + mesg + '</p>').addClass('error_mesg');
-    
-                $this.after(p);
-    
-                p.fadeIn('slow');
-            }           
-        } else {
-            if ((match === true && error === true)) {
-                $this.removeClass('error_input');
-                $this.siblings('.errorLabel').removeClass('errorLabel');
-                if(elm.type == 'time' || elm.type == 'date') {
-                    $this.siblings('.error_input').removeClass('error_input');
-                }
-                var p = $this.next('p.error_mesg');
-                $this.data('error', false);
-                p.fadeOut('slow', function() {
-                    $this.removeClass('error_on');
-                    p.remove();
-                });
-            }
-        }
-
-        return true;
+        return match;
     }
 
+    // ---------------------------------------------------------------------------------------------
+    // Validity index: the number of invalid or missing required fields of each form, updated field by field
+
     /**
      * Enable/Disable submit button
      * @param {Object} form
@@ -1288,7 +1005,7 @@
         if (!button)
             return;
 
-        if (errorsExist(form)) {
+        if (getValidity(form).invalid > 0) {
             //button.prop('disabled', true);
             button.addClass('disabled');
         } else {
@@ -1298,26 +1015,118 @@
     }
 
     /**
-     * Return true if form errors exist
+     * Return true if form errors exist. Every field is checked again, values may have been set by code
      * @param {Object} form
      * @returns {Boolean}
      */
     function errorsExist(form) {
-        var fields = form[0].elements;
+        buildSections(form);
+        return rebuildValidity(form).invalid > 0;
+    }
 
-        for (var i = 0; i < fields.length; i++) {
-            var elm = fields[i];
+    /**
+     * Return the validity index of the form, building it the first time
+     * @param {Object} form
+     * @returns {Object} { invalid : count of invalid fields, valid : last validity notified }
+     */
+    function getValidity(form) {
+        var validity = $.data(form[0], 'validity');
+        return validity ? validity : rebuildValidity(form);
+    }
 
-            // supported elements
-            if (!/INPUT|SELECT|TEXTAREA/.test(elm.nodeName)) {
-                continue;
+    /**
+     * Count the invalid fields of the whole form
+     * @param {Object} form
+     * @returns {Object}
+     */
+    function rebuildValidity(form) {
+        var validity = $.data(form[0], 'validity');
+        if (!validity) {
+            validity = $.data(form[0], 'validity', { invalid : 0, valid : null });
+        }
+        var fields = form[0].elements;
+        var invalid = 0;
+        for (var i = 0; i < fields.length; i++) {
+            var fieldInvalid = isInvalid(fields[i]);
+            $.data(fields[i], 'invalid', fieldInvalid);
+            if (fieldInvalid) {
+                invalid++;
             }
+        }
+        validity.invalid = invalid;
+        notifyValidity(form, validity);
+        return validity;
+    }
 
-            // do errors exist?
-            if ((elm.required && !elm.value) || $(elm).data('error')) {
-                return true;
-            }
+    /**
+     * Update the index with the fields of an element (an input or a container of inputs) that may have changed
+     * @param {Object} target
+     */
+    function updateValidity(target) {
+        var fields = $(target).is(':input') ? $(target) : $(target).find(':input');
+        fields.each(function() {
+            setFieldValidity(this, isInvalid(this));
+        });
+    }
+
+    /**
+     * Remove the fields of an element that is going to be removed from the index
+     * @param {Object} target
+     */
+    function forgetValidity(target) {
+        var fields = $(target).is(':input') ? $(target) : $(target).find(':input');
+        fields.each(function() {
+            setFieldValidity(this, false);
+        });
+    }
+
+    function setFieldValidity(elm, invalid) {
+        var validity = elm.form ? $.data(elm.form, 'validity') : null;
+        if (!validity || ($.data(elm, 'invalid') === true) == invalid) {
+            return;
+        }
+        $.data(elm, 'invalid', invalid);
+        validity.invalid += invalid ? 1 : -1;
+        notifyValidity($(elm.form), validity);
+    }
+
+    /**
+     * Update the submit button and send a validitychange event when the validity of the whole form flips
+     * @param {Object} form
+     * @param {Object} validity
+     */
+    function notifyValidity(form, validity) {
+        // the validity of the whole form is not known until all its sections are built
+        if (hasPendingSections(form)) {
+            return;
+        }
+        var valid = validity.invalid == 0;
+        if (validity.valid !== valid) {
+            validity.valid = valid;
+            setButtonState(form);
+            eventListener('validitychange', 'form', valid ? 'valid' : 'invalid');
+        }
+    }
+
+    /**
+     * Return true if the element blocks the form submit: required and empty, or with a value its validator rejects
+     * @param {Object} elm
+     * @returns {Boolean}
+     */
+    function isInvalid(elm) {
+        // supported elements
+        if (!/INPUT|SELECT|TEXTAREA/.test(elm.nodeName)) {
+            return false;
+        }
+        if (elm.required && !elm.value) {
+            return true;
+        }
+        var $this = $(elm);
+        // only elements with a validator are checked, see createElementValidator
+        if (!elm.value || $this.data('error') === undefined || $this.data('ignoreValidation') == true) {
+            return false;
         }
+        return checkValue(elm, elm.value, $this.data('regex'), $this.data('required')) === false;
     }
     
 })(jQuery);
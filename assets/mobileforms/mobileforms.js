@@ -10,9 +10,23 @@ function MobileForms(params) {
     var jsonPopulateData = null;
     var eventCallback = null;
     var successCallback = null;
+    var syncCallback = null;
+    var metricsCallback = null;
+    var renderSections = 0;
     var isMobile = false;
+    // last populate data, for the sections built later (see renderSections)
+    var populatedData = null;
+    // delta sync state
+    var dirtyKeys = {};
+    var fullSyncPending = false;
+    var syncTimer = null;
+    var SYNC_DELAY = 100;
+    // metrics state
+    var buildStart = null;
+    var fieldCount = -1;
     //
     var init = function(params) {
+        var initStart = Utils.now();
         // params
         if(params) {
             readOnly = params.readOnly ? params.readOnly : readOnly;
@@ -22,16 +36,29 @@ function MobileForms(params) {
             jsonPopulateData = params.jsonPopulateData ? params.jsonPopulateData : null;
             eventCallback = params.eventCallback ? params.eventCallback : null;
             successCallback = params.successCallback ? params.successCallback : null;
+            syncCallback = params.syncCallback ? params.syncCallback : null;
+            metricsCallback = params.metricsCallback ? params.metricsCallback : null;
+            renderSections = params.renderSections ? params.renderSections : 0;
             isMobile = params.isMobile ? true : false;
         }
         if(jsonForm == null) {
             $.error('MobileForms error: jsonForm is null');
         }
         // Build form fields, validators, ...
+        buildStart = Utils.now();
         $(formContainer).MobileFormsBuilder({
             id : formId,
-            fields : jsonForm
+            fields : jsonForm,
+            renderSections : renderSections
         }, formReadyCallback, submitFormCallback, eventManager);
+        reportMetric('ready', Utils.now() - initStart, -1);
+    };
+
+    // Sends the duration of a phase (build | populate | ready) to the metricsCallback, if any
+    var reportMetric = function(phase, duration, payloadSize) {
+        if(metricsCallback != null) {
+            metricsCallback(phase, duration, fieldCount, payloadSize);
+        }
     };
 
 
@@ -51,6 +78,7 @@ function MobileForms(params) {
     // getFormData (current values without validation)
     
     this.getFormData = function() {
+        $(formContainer).MobileFormsBuilder('buildAll');
         return $('#'+formId).serializeJSON();
     };
     
@@ -59,6 +87,7 @@ function MobileForms(params) {
     // setReadOnly
     
     this.setReadOnly = function(val) {
+        $(formContainer).MobileFormsBuilder('buildAll');
         if(val === true || val == "true" || val == "True" || val == "TRUE") {
             setReadOnlyForm();
         } else {
@@ -72,7 +101,29 @@ function MobileForms(params) {
     
     this.populateWithData = function(data) {
         if(data != "JSON_POPULATE_DATA") {
-            $('#'+formId).MobileFormsPopulator(data);
+            var populateStart = Utils.now();
+            var changedNames = null;
+            populatedData = data;
+            $('#'+formId).MobileFormsPopulator(data, {
+                changed: function(names) {
+                    changedNames = names;
+                }
+            });
+            $(formContainer).MobileFormsBuilder('refreshValidity');
+            if(metricsCallback != null) {
+                reportMetric('populate', Utils.now() - populateStart,
+                    typeof data == 'string' ? data.length : JSON.stringify(data).length);
+            }
+            if(changedNames == null) {
+                // the form was reset as a whole, so every value may have changed
+                scheduleSync(true);
+            } else {
+                // only the fields that changed are sent back
+                for(var i = 0; i < changedNames.length; i++) {
+                    dirtyKeys[rootKey(changedNames[i])] = true;
+                }
+                scheduleSync(false);
+            }
         }
     };
 
@@ -81,9 +132,8 @@ function MobileForms(params) {
     // isFormValid
     
     this.isFormValid = function() {
-        $(':input').change().blur();
-        var submitDisabled = $('input[type="submit"]').hasClass('disabled');
-        return !submitDisabled;
+        // the builder keeps the count of invalid fields up to date, see validitychange events
+        return $(formContainer).MobileFormsBuilder('isValid');
     };
 
     // ---------------------------------------------------------------------------------------------
@@ -91,6 +141,7 @@ function MobileForms(params) {
     // getFormErrors
     
     this.getFormErrors = function() {      
+        $(formContainer).MobileFormsBuilder('buildAll');
         $(':focus').blur();
         var requiredErrs = null;
         var validationErrs = null;
@@ -124,10 +175,56 @@ function MobileForms(params) {
     
     
 
+    // ---------------------------------------------------------------------------------------------
+    // PUBLIC
+    // isReadOnly
+
+    this.isReadOnly = function() {
+        return readOnly;
+    };
+
+    // ---------------------------------------------------------------------------------------------
+    // PUBLIC
+    // leaveStep (multi-step pages): builds the pending sections and syncs the pending changes right away,
+    // so the form can be taken out of the page without losing anything
+
+    this.leaveStep = function() {
+        $(formContainer).MobileFormsBuilder('buildAll');
+        $(':focus').blur();
+        if(syncTimer != null) {
+            clearTimeout(syncTimer);
+            sync();
+        }
+    };
+
+    // ---------------------------------------------------------------------------------------------
+    // PUBLIC
+    // sendEvent (event, element, value), sent like the events of the fields
+
+    this.sendEvent = function(event, element, value) {
+        eventManager(event, element, value);
+    };
+
+    // ---------------------------------------------------------------------------------------------
+    // PUBLIC
+    // destroy: stops syncing, the form is going to be removed
+
+    this.destroy = function() {
+        if(syncTimer != null) {
+            clearTimeout(syncTimer);
+            syncTimer = null;
+        }
+        syncCallback = null;
+    };
+
+
+
+
+
     // ---------------------------------------------------------------------------------------------
     // eventManager
 
-    eventManager = function(event, element, value) {
+    var eventManager = function(event, element, value) {
         if(isMobile) {
             var eventUrl = 'event/?type=' + event + '&element=' + element + '&value=' + value;
             
@@ -151,10 +248,92 @@ function MobileForms(params) {
 
 
 
+    // ---------------------------------------------------------------------------------------------
+    // Delta sync: tracks the fields changed by the user and sends only their values to syncCallback.
+    // Values are grouped by root key, the same keys used by getFormData (e.g. 'phone' for 'phone[][type]').
+
+    var rootKey = function(name) {
+        return name.replace(/\[.*$/, '');
+    };
+
+    var startDataSync = function(form) {
+        if(syncCallback == null) {
+            return;
+        }
+        form.on('input change', ':input', function() {
+            if(this.name) {
+                dirtyKeys[rootKey(this.name)] = true;
+                scheduleSync(false);
+            }
+        });
+        // delete buttons of multiple inputs remove the input in their own click handler, capture the name before
+        form[0].addEventListener('click', function(event) {
+            if($(event.target).is('.delete')) {
+                $(event.target).parent().find(':input[name]').each(function() {
+                    dirtyKeys[rootKey(this.name)] = true;
+                });
+                scheduleSync(false);
+            }
+        }, true);
+        scheduleSync(true);
+    };
+
+    var scheduleSync = function(full) {
+        if(syncCallback == null) {
+            return;
+        }
+        fullSyncPending = fullSyncPending || full;
+        if(syncTimer == null) {
+            syncTimer = setTimeout(sync, SYNC_DELAY);
+        }
+    };
+
+    var sync = function() {
+        syncTimer = null;
+        // the values of the sections not built yet are not in the page, the sync waits for them
+        if(!$(formContainer).MobileFormsBuilder('isBuilt')) {
+            syncTimer = setTimeout(sync, SYNC_DELAY);
+            return;
+        }
+        var form = $('#'+formId);
+        if(fullSyncPending) {
+            fullSyncPending = false;
+            dirtyKeys = {};
+            syncCallback(form.serializeJSON(), true);
+            return;
+        }
+        var delta = {};
+        var changed = false;
+        // the fields of all the dirty keys are collected in a single pass over the form
+        var fields = $(form[0].elements).filter(function() {
+            return this.name && dirtyKeys.hasOwnProperty(rootKey(this.name));
+        });
+        var data = new FormSerializer($, form).addPairs(fields.serializeArray()).serialize();
+        for(var key in dirtyKeys) {
+            delta[key] = data.hasOwnProperty(key) ? data[key] : null;
+            changed = true;
+        }
+        dirtyKeys = {};
+        if(changed) {
+            syncCallback(JSON.stringify(delta), false);
+        }
+    };
+
     // ---------------------------------------------------------------------------------------------
     // formReadyCallback
     
-    formReadyCallback = function(form) {
+    var formReadyCallback = function(form) {
+        // sections built later get the populate data and their tab order
+        form.on('sectionbuilt', function(event, fieldset) {
+            if(populatedData != null) {
+                form.MobileFormsPopulator(populatedData, { within : fieldset[0] });
+            }
+            Utils.tabIndexUpdate();
+        });
+        if(metricsCallback != null) {
+            fieldCount = form.find(':input[name]').length;
+            reportMetric('build', Utils.now() - buildStart, -1);
+        }
         if(jsonPopulateData != null) {
             // Populate form data
             self.populateWithData(jsonPopulateData);
@@ -190,12 +369,14 @@ function MobileForms(params) {
                 });
             });
         }
+        // Start tracking changes (when a syncCallback is set)
+        startDataSync(form);
     };
 
     // ---------------------------------------------------------------------------------------------
     // submitFormCallback
     
-    submitFormCallback = function(form) {
+    var submitFormCallback = function(form) {
         jsonResult = form.serializeJSON();
         if(successCallback) {
             successCallback(jsonResult);
@@ -205,7 +386,7 @@ function MobileForms(params) {
     // ---------------------------------------------------------------------------------------------
     // setReadOnlyForm
     
-    setReadOnlyForm = function() {
+    var setReadOnlyForm = function() {
         if(jsonPopulateData != null) {
             $("form, form input, form select, form textarea").blur();
             $('form, form input, form select, form textarea').each(function() {
@@ -226,7 +407,9 @@ function MobileForms(params) {
                 }
             });
             $(':input').not(':hidden').each(function() {
-                if (!$(this).attr('json-populated')) {
+                // inputs that only show the value of another one (see fields/) take its populated mark
+                var valueInput = $(this).data('valueInput');
+                if (!$(this).attr('json-populated') && !(valueInput && $(valueInput).attr('json-populated'))) {
                     $(this).parent('div').addClass('readOnlyModeHidden')
                         .css('display', 'none');
                 }
@@ -290,7 +473,7 @@ function MobileForms(params) {
     // ---------------------------------------------------------------------------------------------
     // setEditableForm
     
-    setEditableForm = function() {
+    var setEditableForm = function() {
         $('form, form input, form select, form textarea').each(function() {
             if ($(this).hasClass('readOnlyMode')) {
                 $(this).removeClass('readOnlyMode').attr('disabled', false);
@@ -186,6 +186,161 @@ jQuery.fn.MobileFormsPopulator = function(obj, options) {
         jQuery('[name="' + name + '"]').attr('json-populated', true);
     }
 
+    // ---------------------------------------------------------------------------------------------
+    // indexed population: the elements of the form are indexed by name once, and reused until
+    // inputs are added or removed. Every element gets its value or its default (as form.reset() does),
+    // and events are only triggered once all the values are set, and only on the elements that changed.
+
+    function getIndex(form) {
+        var index = jQuery.data(form, 'populateIndex');
+        if (index && index.length == form.elements.length) {
+            return index;
+        }
+        index = { length : form.elements.length, byName : {} };
+        for (var i = 0; i < form.elements.length; i++) {
+            var element = form.elements[i];
+            if (element.name) {
+                (index.byName[element.name] = index.byName[element.name] || []).push(element);
+            }
+        }
+        jQuery.data(form, 'populateIndex', index);
+        return index;
+    }
+
+    // inputs and selects with several values are multiple fields, their inputs are created with the add button
+    function isMultiple(element, value) {
+        return value != undefined && value.constructor == Array && value.length > 1
+                && element.type != 'checkbox' && element.type != 'radio' && element.type != 'select-multiple';
+    }
+
+    // sets the value or the default of an element, returns true if it changed
+    function applyValue(element, value) {
+        var populated = value !== undefined;
+        var values = populated && value.constructor == Array ? value : [ value ];
+        var changed = false;
+        switch (element.type) {
+        case 'radio':
+        case 'checkbox':
+            var checked = element.defaultChecked;
+            if (populated) {
+                checked = element.type == 'radio' ? element.value != '' && value.toString() == element.value
+                        : checked;
+                for (var j = 0; j < values.length; j++) {
+                    checked = checked || element.value == values[j];
+                }
+            }
+            changed = element.checked != checked;
+            element.checked = checked;
+            break;
+        case 'select-multiple':
+            for (var i = 0; i < element.options.length; i++) {
+                var option = element.options[i];
+                var selected = option.defaultSelected;
+                for (var j = 0; populated && j < values.length; j++) {
+                    selected = selected || option.value == values[j];
+                }
+                changed = changed || option.selected != selected;
+                option.selected = selected;
+            }
+            break;
+        case 'button':
+        case 'submit':
+            break;
+        case 'select-one':
+            var previous = element.value;
+            if (populated) {
+                element.value = value.toString() || value;
+            } else {
+                var selectedIndex = 0;
+                for (var i = 0; i < element.options.length; i++) {
+                    if (element.options[i].defaultSelected) {
+                        selectedIndex = i;
+                    }
+                }
+                element.selectedIndex = element.options.length ? selectedIndex : -1;
+            }
+            changed = element.value != previous;
+            break;
+        default:
+            var target = populated ? (value == null ? '' : value.toString()) : element.defaultValue;
+            if (element.value != target) {
+                try {
+                    element.value = target;
+                } catch(err) {
+                    // file inputs only accept an empty value
+                    return false;
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // only the elements inside within (a section built later) are populated, when it is set
+    function contained(elements, within) {
+        var result = [];
+        for (var e = 0; e < elements.length; e++) {
+            if (jQuery.contains(within, elements[e])) {
+                result.push(elements[e]);
+            }
+        }
+        return result;
+    }
+
+    function populateFormIndexed(form, arr, within) {
+        var index = getIndex(form);
+        var changedNames = [];
+        var changedElements = [];
+        var multiples = [];
+        for (var name in index.byName) {
+            var elements = within ? contained(index.byName[name], within) : index.byName[name];
+            if (elements.length == 0) {
+                continue;
+            }
+            var value = arr.hasOwnProperty(name) ? arr[name] : undefined;
+            if (isMultiple(elements[0], value)) {
+                multiples.push(name);
+                continue;
+            }
+            var nameChanged = false;
+            for (var e = 0; e < elements.length; e++) {
+                if (applyValue(elements[e], value)) {
+                    nameChanged = true;
+                    // as in populateFormElement, events are only triggered on populated inputs and selects
+                    if (value !== undefined && elements[e].type != 'radio' && elements[e].type != 'checkbox'
+                            && elements[e].type != 'select-multiple') {
+                        changedElements.push(elements[e]);
+                    }
+                }
+                if (value !== undefined) {
+                    elements[e].setAttribute('json-populated', true);
+                }
+            }
+            if (nameChanged) {
+                changedNames.push(name);
+            }
+        }
+        // values without a named input are set on the element with that id, as populateFormElement does
+        for (var name in arr) {
+            if (!within && !index.byName.hasOwnProperty(getElementName(name))) {
+                populateFormElement(form, name, arr[name]);
+            }
+        }
+        // multiple fields add their inputs one by one, they are populated as before
+        for (var i = 0; i < multiples.length; i++) {
+            var elements = within ? contained(index.byName[multiples[i]], within) : index.byName[multiples[i]];
+            for (var e = 0; e < elements.length; e++) {
+                applyValue(elements[e], undefined);
+            }
+            populateFormElement(form, multiples[i], arr[multiples[i]]);
+            changedNames.push(multiples[i]);
+        }
+        for (var i = 0; i < changedElements.length; i++) {
+            jQuery(changedElements[i]).trigger('change').trigger('input');
+        }
+        return changedNames;
+    }
+
     // ---------------------------------------------------------------------------------------------
     // options & setup
 
@@ -200,6 +355,9 @@ jQuery.fn.MobileFormsPopulator = function(obj, options) {
         phpIndices : false,
         resetForm : true,
         identifier : 'id',
+        indexed : true,
+        within : null,
+        changed : null,
         debug : false
     }, options);
 
@@ -227,6 +385,16 @@ jQuery.fn.MobileFormsPopulator = function(obj, options) {
     this.each(function() {
         // variables
         var tagName = this.tagName.toLowerCase();
+
+        // indexed population resets the form itself, element by element
+        if (tagName == 'form' && options.indexed && options.resetForm && !options.debug) {
+            var changedNames = populateFormIndexed(this, arr, options.within);
+            if (options.changed) {
+                options.changed(changedNames);
+            }
+            return;
+        }
+
         var method = tagName == 'form' ? populateFormElement : populateElement;
 
         // reset form?
@@ -39,20 +39,29 @@ Utils.isWindowsPhone = function() {
     return match ? true : false;
 };
 
+Utils.now = function() { // milliseconds, high resolution when available
+    return window.performance && performance.now ? performance.now() : new Date().getTime();
+};
+
 Utils.isValidDate = function(date) { // yyyy-mm-dd
     var bits = date.split('-');
     var d = new Date(bits[0], bits[1] - 1, bits[2]);
     return d && (d.getMonth() + 1) == bits[1] && d.getDate() == Number(bits[2]);
 }
 
-Utils.tabIndexFix = function() {
+Utils.tabIndexUpdate = function() {
     $(":input").removeAttr('tabindex');
     $(":input").each(function(i) {
         $(this).attr('tabindex', i + 1);
     });
+}
+
+Utils.tabIndexFix = function() {
+    Utils.tabIndexUpdate();
     var tabindex = 1; // start tabindex || 150 is last tabindex
 
-    $(document).keypress(function(event) {
+    // bound once, forms built later in the same page share it
+    $(document).off('keypress.tabIndex').on('keypress.tabIndex', function(event) {
         var keycode = (event.keyCode ? event.keyCode : event.which);
         if (keycode == '13') { // onEnter
             tabindex++;